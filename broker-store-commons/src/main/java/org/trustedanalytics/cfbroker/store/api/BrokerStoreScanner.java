@@ -0,0 +1,29 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.cfbroker.store.api;
+
+import java.io.IOException;
+import java.util.function.BiConsumer;
+
+/**
+ * Bulk reader of all objects kept by a {@link BrokerStore}. Implementations are free to load records
+ * in parallel, so the consumer may be invoked concurrently from several threads.
+ */
+@FunctionalInterface
+public interface BrokerStoreScanner<T> {
+
+    void scan(BiConsumer<Location, T> consumer) throws IOException;
+}
@@ -0,0 +1,165 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.cfbroker.store.cache;
+
+import org.trustedanalytics.cfbroker.store.api.Location;
+
+import java.util.Optional;
+import java.util.function.Predicate;
+
+/**
+ * Key of a cached object. Instance and binding ids are usually GUIDs; when the id and the parent
+ * id are in canonical form (lowercase, with hyphens), each is held as two longs instead of a
+ * 36-character string. Other locations are held as they are.
+ */
+abstract class CacheKey {
+
+    private static final int GUID_LENGTH = 36;
+
+    static CacheKey of(Location location) {
+        String id = location.getId();
+        Optional<String> parentId = location.getParentId();
+        if (!isGuid(id) || parentId.isPresent() && !isGuid(parentId.get())) {
+            return new LocationKey(location);
+        }
+        if (!parentId.isPresent()) {
+            return new GuidKey(mostSignificantBits(id), leastSignificantBits(id), 0, 0, false);
+        }
+        String parent = parentId.get();
+        return new GuidKey(mostSignificantBits(id), leastSignificantBits(id),
+            mostSignificantBits(parent), leastSignificantBits(parent), true);
+    }
+
+    /**
+     * Matches keys of objects whose parent has the given id.
+     */
+    static Predicate<CacheKey> childrenOf(String parentId) {
+        if (!isGuid(parentId)) {
+            return key -> key instanceof LocationKey && ((LocationKey) key).isChildOf(parentId);
+        }
+        long most = mostSignificantBits(parentId);
+        long least = leastSignificantBits(parentId);
+        return key -> key instanceof GuidKey
+            ? ((GuidKey) key).isChildOf(most, least)
+            : ((LocationKey) key).isChildOf(parentId);
+    }
+
+    private static boolean isGuid(String value) {
+        if (value == null || value.length() != GUID_LENGTH) {
+            return false;
+        }
+        for (int i = 0; i < GUID_LENGTH; i++) {
+            char c = value.charAt(i);
+            boolean valid = i == 8 || i == 13 || i == 18 || i == 23
+                ? c == '-'
+                : c >= '0' && c <= '9' || c >= 'a' && c <= 'f';
+            if (!valid) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static long mostSignificantBits(String guid) {
+        return hex(guid, 0, 8) << 32 | hex(guid, 9, 13) << 16 | hex(guid, 14, 18);
+    }
+
+    private static long leastSignificantBits(String guid) {
+        return hex(guid, 19, 23) << 48 | hex(guid, 24, 36);
+    }
+
+    private static long hex(String value, int from, int to) {
+        long result = 0;
+        for (int i = from; i < to; i++) {
+            result = result << 4 | Character.digit(value.charAt(i), 16);
+        }
+        return result;
+    }
+
+    private static final class GuidKey extends CacheKey {
+
+        private final long idMost;
+
+        private final long idLeast;
+
+        private final long parentMost;
+
+        private final long parentLeast;
+
+        private final boolean hasParent;
+
+        private GuidKey(long idMost, long idLeast, long parentMost, long parentLeast,
+            boolean hasParent) {
+
+            this.idMost = idMost;
+            this.idLeast = idLeast;
+            this.parentMost = parentMost;
+            this.parentLeast = parentLeast;
+            this.hasParent = hasParent;
+        }
+
+        private boolean isChildOf(long most, long least) {
+            return hasParent && parentMost == most && parentLeast == least;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof GuidKey)) {
+                return false;
+            }
+            GuidKey other = (GuidKey) o;
+            return idMost == other.idMost && idLeast == other.idLeast
+                && parentMost == other.parentMost && parentLeast == other.parentLeast
+                && hasParent == other.hasParent;
+        }
+
+        @Override
+        public int hashCode() {
+            long hash = idMost ^ idLeast;
+            if (hasParent) {
+                hash = 31 * hash + (parentMost ^ parentLeast);
+            }
+            return (int) (hash >>> 32 ^ hash);
+        }
+    }
+
+    private static final class LocationKey extends CacheKey {
+
+        private final Location location;
+
+        private LocationKey(Location location) {
+            this.location = location;
+        }
+
+        private boolean isChildOf(String parentId) {
+            return location.getParentId().map(parentId::equals).orElse(false);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return this == o
+                || o instanceof LocationKey && location.equals(((LocationKey) o).location);
+        }
+
+        @Override
+        public int hashCode() {
+            return location.hashCode();
+        }
+    }
+}
@@ -0,0 +1,108 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.cfbroker.store.cache;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.trustedanalytics.cfbroker.store.api.BrokerStoreScanner;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Populates {@link CachingBrokerStore} with all records returned by {@link BrokerStoreScanner} at
+ * startup. The warmer reports readiness once the scan is finished or the deadline has passed,
+ * whatever comes first. Records loaded after the deadline are still put into the cache. Once
+ * anything is invalidated during the scan, scanned records are no longer cached, as they could
+ * have been read before the change; they are loaded on first read instead.
+ */
+public class CacheWarmer<T> {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CacheWarmer.class);
+
+    private final CachingBrokerStore<T> cache;
+
+    private final BrokerStoreScanner<T> scanner;
+
+    private final long deadlineMillis;
+
+    private final CountDownLatch ready = new CountDownLatch(1);
+
+    private final AtomicInteger loaded = new AtomicInteger();
+
+    private ScheduledExecutorService executor;
+
+    public CacheWarmer(CachingBrokerStore<T> cache, BrokerStoreScanner<T> scanner, long deadline,
+        TimeUnit unit) {
+
+        this.cache = cache;
+        this.scanner = scanner;
+        this.deadlineMillis = unit.toMillis(deadline);
+    }
+
+    public synchronized void start() {
+        if (executor != null) {
+            return;
+        }
+        executor = Executors.newScheduledThreadPool(2, runnable -> {
+            Thread thread = new Thread(runnable, "broker-store-cache-warmer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.schedule(this::deadlinePassed, deadlineMillis, TimeUnit.MILLISECONDS);
+        executor.execute(this::warmUp);
+    }
+
+    public boolean isReady() {
+        return ready.getCount() == 0;
+    }
+
+    public boolean awaitReady(long timeout, TimeUnit unit) throws InterruptedException {
+        return ready.await(timeout, unit);
+    }
+
+    public int getLoadedCount() {
+        return loaded.get();
+    }
+
+    private void warmUp() {
+        long start = System.currentTimeMillis();
+        long epoch = cache.invalidationEpoch();
+        try {
+            scanner.scan((location, t) -> {
+                cache.preload(location, t, epoch);
+                loaded.incrementAndGet();
+            });
+            LOGGER.info("Cache warm-up finished, {} objects loaded in {} ms", loaded.get(),
+                System.currentTimeMillis() - start);
+        } catch (Exception e) {
+            LOGGER.error("Cache warm-up failed after loading " + loaded.get() + " objects", e);
+        } finally {
+            ready.countDown();
+            executor.shutdownNow();
+        }
+    }
+
+    private void deadlinePassed() {
+        if (!isReady()) {
+            LOGGER.warn("Cache warm-up deadline passed, {} objects loaded so far", loaded.get());
+            ready.countDown();
+        }
+    }
+}
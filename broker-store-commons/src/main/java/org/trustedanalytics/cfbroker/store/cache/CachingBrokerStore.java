@@ -0,0 +1,255 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.cfbroker.store.cache;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.trustedanalytics.cfbroker.store.api.BrokerStore;
+import org.trustedanalytics.cfbroker.store.api.Location;
+
+import java.io.IOException;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Read-through, write-through cache in front of another {@link BrokerStore}. Only objects that
+ * exist in the underlying store are cached, misses always go to the delegate.
+ *
+ * Entries can be held under a lease (see {@link CachingBrokerStoreBuilder}). Reads within a valid
+ * lease never touch the delegate; when other broker replicas share the backing store, the lease
+ * bounds how long a change made by another replica can stay unnoticed if its invalidation gets lost.
+ * Leased entries read after a configured fraction of the lease are reloaded in the background,
+ * callers keep getting the current value until the reload finishes.
+ */
+public class CachingBrokerStore<T> implements BrokerStore<T>, InvalidationListener {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CachingBrokerStore.class);
+
+    private static final long NO_EXPIRATION = Long.MAX_VALUE;
+
+    private final BrokerStore<T> delegate;
+
+    private final long leaseNanos;
+
+    private final double refreshAheadFraction;
+
+    private final double jitterFraction;
+
+    private final Executor refreshExecutor;
+
+    private final LongSupplier clock;
+
+    private final ConcurrentMap<CacheKey, CacheEntry<T>> cache = new ConcurrentHashMap<>();
+
+    /**
+     * Incremented on every invalidation. Values loaded while it changed aren't cached, because they
+     * could have been read before the change the invalidation was about.
+     */
+    private final AtomicLong invalidations = new AtomicLong();
+
+    private InvalidationSource invalidationSource;
+
+    public CachingBrokerStore(BrokerStore<T> delegate) {
+        this(delegate, NO_EXPIRATION, System::nanoTime);
+    }
+
+    CachingBrokerStore(BrokerStore<T> delegate, long leaseNanos, LongSupplier clock) {
+        this(delegate, leaseNanos, 1, 0, null, clock);
+    }
+
+    CachingBrokerStore(BrokerStore<T> delegate, long leaseNanos, double refreshAheadFraction,
+        double jitterFraction, Executor refreshExecutor, LongSupplier clock) {
+
+        this.delegate = delegate;
+        this.leaseNanos = leaseNanos;
+        this.refreshAheadFraction = refreshAheadFraction;
+        this.jitterFraction = jitterFraction;
+        this.refreshExecutor = refreshExecutor;
+        this.clock = clock;
+    }
+
+    @Override
+    public Optional<T> getById(Location location) throws IOException {
+        CacheKey key = CacheKey.of(location);
+        CacheEntry<T> entry = cache.get(key);
+        long now = clock.getAsLong();
+        if (entry != null && entry.isValid(now)) {
+            if (refreshExecutor != null && entry.needsRefresh(now) && entry.startRefresh()) {
+                scheduleRefresh(location, entry);
+            }
+            return Optional.of(entry.value);
+        }
+        long epoch = invalidations.get();
+        Optional<T> loaded = delegate.getById(location);
+        if (loaded.isPresent()) {
+            cacheIfNotInvalidated(key, loaded.get(), epoch);
+        } else if (entry != null) {
+            cache.remove(key, entry);
+        }
+        return loaded;
+    }
+
+    @Override
+    public void save(Location location, T t) throws IOException {
+        long epoch = invalidations.get();
+        delegate.save(location, t);
+        cacheIfNotInvalidated(CacheKey.of(location), t, epoch);
+    }
+
+    @Override
+    public Optional<T> deleteById(Location location) throws IOException {
+        invalidate(location);
+        try {
+            return delegate.deleteById(location);
+        } finally {
+            invalidate(location);
+        }
+    }
+
+    @Override
+    public void invalidate(Location location) {
+        invalidations.incrementAndGet();
+        cache.remove(CacheKey.of(location));
+    }
+
+    @Override
+    public void invalidateChildren(String parentId) {
+        invalidations.incrementAndGet();
+        cache.keySet().removeIf(CacheKey.childrenOf(parentId));
+    }
+
+    @Override
+    public void invalidateAll() {
+        invalidations.incrementAndGet();
+        cache.clear();
+    }
+
+    public int size() {
+        return cache.size();
+    }
+
+    public void destroy() {
+        if (invalidationSource != null) {
+            try {
+                invalidationSource.close();
+            } catch (IOException e) {
+                LOGGER.warn("Error while closing invalidation source", e);
+            }
+        }
+    }
+
+    void subscribe(InvalidationSource source) throws IOException {
+        this.invalidationSource = source;
+        source.start(this);
+    }
+
+    long invalidationEpoch() {
+        return invalidations.get();
+    }
+
+    /**
+     * Puts object loaded in bulk into the cache, unless a fresher value has already been cached by
+     * a regular read or write, or there was an invalidation since the epoch read before the bulk
+     * load started, so the object could have been changed or deleted meanwhile.
+     */
+    void preload(Location location, T t, long epoch) {
+        cache.computeIfAbsent(CacheKey.of(location),
+            key -> invalidations.get() == epoch ? newEntry(t) : null);
+    }
+
+    private void scheduleRefresh(Location location, CacheEntry<T> entry) {
+        try {
+            refreshExecutor.execute(() -> refresh(location, entry));
+        } catch (RejectedExecutionException e) {
+            LOGGER.debug("Refresh of {} rejected", location.getPath());
+            entry.refreshing.set(false);
+        }
+    }
+
+    private void refresh(Location location, CacheEntry<T> entry) {
+        long epoch = invalidations.get();
+        try {
+            Optional<T> loaded = delegate.getById(location);
+            CacheKey key = CacheKey.of(location);
+            if (loaded.isPresent()) {
+                cache.computeIfPresent(key, (k, current) ->
+                    current == entry && invalidations.get() == epoch ? newEntry(loaded.get()) : current);
+            } else {
+                cache.remove(key, entry);
+            }
+        } catch (IOException | RuntimeException e) {
+            LOGGER.warn("Unable to refresh " + location.getPath(), e);
+            entry.refreshing.set(false);
+        }
+    }
+
+    /**
+     * Caches the value, unless there was an invalidation since the epoch was read. The entry cached
+     * before is dropped then, because it may be older than the change just made or loaded.
+     */
+    private void cacheIfNotInvalidated(CacheKey key, T t, long epoch) {
+        cache.compute(key,
+            (k, current) -> invalidations.get() == epoch ? newEntry(t) : null);
+    }
+
+    private CacheEntry<T> newEntry(T t) {
+        if (leaseNanos == NO_EXPIRATION) {
+            return new CacheEntry<>(t, NO_EXPIRATION, NO_EXPIRATION);
+        }
+        long now = clock.getAsLong();
+        long lease = leaseNanos;
+        if (jitterFraction > 0) {
+            lease -= (long) (leaseNanos * jitterFraction * ThreadLocalRandom.current().nextDouble());
+        }
+        return new CacheEntry<>(t, now + lease, now + (long) (lease * refreshAheadFraction));
+    }
+
+    private static final class CacheEntry<T> {
+
+        private final T value;
+
+        private final long expiresAt;
+
+        private final long refreshAt;
+
+        private final AtomicBoolean refreshing = new AtomicBoolean();
+
+        private CacheEntry(T value, long expiresAt, long refreshAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+            this.refreshAt = refreshAt;
+        }
+
+        private boolean isValid(long now) {
+            return expiresAt == NO_EXPIRATION || now - expiresAt < 0;
+        }
+
+        private boolean needsRefresh(long now) {
+            return refreshAt != NO_EXPIRATION && now - refreshAt >= 0;
+        }
+
+        private boolean startRefresh() {
+            return refreshing.compareAndSet(false, true);
+        }
+    }
+}
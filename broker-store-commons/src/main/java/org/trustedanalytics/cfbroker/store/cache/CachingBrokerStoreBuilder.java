@@ -0,0 +1,92 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.cfbroker.store.cache;
+
+import com.google.common.base.Preconditions;
+import org.trustedanalytics.cfbroker.store.api.BrokerStore;
+
+import java.io.IOException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+public class CachingBrokerStoreBuilder<T> {
+
+    private final BrokerStore<T> delegate;
+    private long leaseNanos = Long.MAX_VALUE;
+    private InvalidationSource invalidationSource;
+    private double refreshAheadFraction = 1;
+    private Executor refreshExecutor;
+    private double jitterFraction;
+
+    public CachingBrokerStoreBuilder(BrokerStore<T> delegate) {
+        this.delegate = delegate;
+    }
+
+    /**
+     * Limits time for which cached entry is served without asking the delegate. Required when
+     * several broker replicas share the backing store.
+     */
+    public CachingBrokerStoreBuilder<T> withLease(long duration, TimeUnit unit) {
+        Preconditions.checkArgument(duration > 0, "Lease duration must be positive");
+        this.leaseNanos = unit.toNanos(duration);
+        return this;
+    }
+
+    /**
+     * Makes the cache coherent with changes done by other broker replicas. Entries are dropped as
+     * soon as the source reports they were changed in the backing store.
+     */
+    public CachingBrokerStoreBuilder<T> withInvalidationSource(InvalidationSource source) {
+        this.invalidationSource = source;
+        return this;
+    }
+
+    /**
+     * Reloads entry in the background when it is read after the given fraction of its lease has
+     * passed, so that hot entries don't expire and callers don't wait for the delegate.
+     */
+    public CachingBrokerStoreBuilder<T> withRefreshAhead(double fraction, Executor executor) {
+        Preconditions.checkArgument(fraction > 0 && fraction < 1,
+            "Refresh-ahead fraction must be between 0 and 1");
+        this.refreshAheadFraction = fraction;
+        this.refreshExecutor = executor;
+        return this;
+    }
+
+    /**
+     * Shortens lease of every entry by a random part of the given fraction, so that entries loaded
+     * together don't expire together.
+     */
+    public CachingBrokerStoreBuilder<T> withJitter(double fraction) {
+        Preconditions.checkArgument(fraction >= 0 && fraction < 1,
+            "Jitter fraction must be between 0 and 1");
+        this.jitterFraction = fraction;
+        return this;
+    }
+
+    public CachingBrokerStore<T> build() throws IOException {
+        Preconditions.checkState(invalidationSource == null || leaseNanos != Long.MAX_VALUE,
+            "Coherent cache requires lease duration");
+        Preconditions.checkState(refreshExecutor == null || leaseNanos != Long.MAX_VALUE,
+            "Refresh-ahead requires lease duration");
+        CachingBrokerStore<T> store = new CachingBrokerStore<>(delegate, leaseNanos,
+            refreshAheadFraction, jitterFraction, refreshExecutor, System::nanoTime);
+        if (invalidationSource != null) {
+            store.subscribe(invalidationSource);
+        }
+        return store;
+    }
+}
@@ -0,0 +1,33 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.cfbroker.store.cache;
+
+import org.trustedanalytics.cfbroker.store.api.Location;
+
+public interface InvalidationListener {
+
+    void invalidate(Location location);
+
+    /**
+     * Invalidates all locations having given parent, used when whole subtree was removed at once.
+     */
+    void invalidateChildren(String parentId);
+
+    /**
+     * Invalidates everything, used when changes could have been missed, e.g. after connection loss.
+     */
+    void invalidateAll();
+}
@@ -0,0 +1,28 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.cfbroker.store.cache;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Notifies about objects changed in the backing store by other broker replicas. Close stops
+ * notifications.
+ */
+public interface InvalidationSource extends Closeable {
+
+    void start(InvalidationListener listener) throws IOException;
+}
@@ -0,0 +1,46 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.cfbroker.store.encryption;
+
+import javax.crypto.SecretKey;
+
+/**
+ * Data encryption key together with its form encrypted by the key encryption service. Only the
+ * encrypted form is stored, next to the data.
+ */
+public class DataKey {
+
+    private final SecretKey key;
+
+    private final byte[] encryptedKey;
+
+    public DataKey(SecretKey key, byte[] encryptedKey) {
+        this.key = key;
+        this.encryptedKey = encryptedKey.clone();
+    }
+
+    public SecretKey getKey() {
+        return key;
+    }
+
+    public byte[] getEncryptedKey() {
+        return encryptedKey.clone();
+    }
+
+    byte[] encryptedKey() {
+        return encryptedKey;
+    }
+}
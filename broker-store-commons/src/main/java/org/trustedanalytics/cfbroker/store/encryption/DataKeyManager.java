@@ -0,0 +1,122 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.cfbroker.store.encryption;
+
+import com.google.common.base.Preconditions;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import javax.crypto.SecretKey;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Hands out data keys so that the key encryption service is called only when the current key is
+ * rotated or a record encrypted with an unknown key is read. Current key is rotated after given
+ * period or number of uses, whichever comes first; decrypted keys are kept in a bounded cache.
+ */
+public class DataKeyManager {
+
+    /**
+     * Limit of encryptions with one key and random 96-bit IVs recommended for AES-GCM is 2^32,
+     * stay well below it.
+     */
+    static final long MAX_USES = 1L << 30;
+
+    private static final int DECRYPTED_KEYS_LIMIT = 1000;
+
+    private final KeyEncryptionService service;
+
+    private final long rotationNanos;
+
+    private final LongSupplier clock;
+
+    private final Cache<ByteBuffer, SecretKey> decryptedKeys =
+        CacheBuilder.newBuilder().maximumSize(DECRYPTED_KEYS_LIMIT).build();
+
+    private volatile CurrentKey current;
+
+    public DataKeyManager(KeyEncryptionService service, long rotationPeriod, TimeUnit unit) {
+        this(service, unit.toNanos(rotationPeriod), System::nanoTime);
+    }
+
+    DataKeyManager(KeyEncryptionService service, long rotationNanos, LongSupplier clock) {
+        Preconditions.checkArgument(rotationNanos > 0, "Rotation period must be positive");
+        this.service = service;
+        this.rotationNanos = rotationNanos;
+        this.clock = clock;
+    }
+
+    /**
+     * Returns key to encrypt a new record with.
+     */
+    public DataKey currentKey() throws IOException {
+        CurrentKey key = current;
+        if (key == null || !key.use(clock.getAsLong())) {
+            key = rotate();
+        }
+        return key.dataKey;
+    }
+
+    /**
+     * Returns key that a record was encrypted with.
+     */
+    public SecretKey decryptKey(byte[] encryptedKey) throws IOException {
+        try {
+            return decryptedKeys.get(ByteBuffer.wrap(encryptedKey.clone()),
+                () -> service.decryptDataKey(encryptedKey));
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof IOException
+                ? (IOException) e.getCause() : new IOException(e.getCause());
+        }
+    }
+
+    private synchronized CurrentKey rotate() throws IOException {
+        CurrentKey key = current;
+        long now = clock.getAsLong();
+        if (key != null && key.use(now)) {
+            return key;
+        }
+        DataKey dataKey = service.generateDataKey();
+        decryptedKeys.put(ByteBuffer.wrap(dataKey.getEncryptedKey()), dataKey.getKey());
+        key = new CurrentKey(dataKey, now + rotationNanos);
+        key.use(now);
+        current = key;
+        return key;
+    }
+
+    private static final class CurrentKey {
+
+        private final DataKey dataKey;
+
+        private final long expiresAt;
+
+        private final AtomicLong uses = new AtomicLong();
+
+        private CurrentKey(DataKey dataKey, long expiresAt) {
+            this.dataKey = dataKey;
+            this.expiresAt = expiresAt;
+        }
+
+        private boolean use(long now) {
+            return now - expiresAt < 0 && uses.incrementAndGet() <= MAX_USES;
+        }
+    }
+}
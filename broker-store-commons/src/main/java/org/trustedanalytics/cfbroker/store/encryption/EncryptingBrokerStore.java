@@ -0,0 +1,177 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.cfbroker.store.encryption;
+
+import org.trustedanalytics.cfbroker.store.api.BrokerStore;
+import org.trustedanalytics.cfbroker.store.api.Location;
+import org.trustedanalytics.cfbroker.store.serialization.PayloadFormat;
+import org.trustedanalytics.cfbroker.store.serialization.RepositoryDeserializer;
+import org.trustedanalytics.cfbroker.store.serialization.RepositorySerializer;
+
+import javax.crypto.Cipher;
+import javax.crypto.NoSuchPaddingException;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Optional;
+
+/**
+ * Encrypts objects with AES-GCM before passing them to a store of raw payloads, e.g.
+ * {@code new ZookeeperStore<byte[]>(client, t -> t, t -> t)}. Path of the location is
+ * authenticated along with the payload, so a record copied to another location can't be read.
+ *
+ * Encrypted payload consists of {@link PayloadFormat#AES_GCM} tag, 2-byte length of the encrypted
+ * data key, the encrypted data key, 12-byte IV and ciphertext with 16-byte authentication tag.
+ * Payloads without the tag are rejected, so that a record can't be downgraded by replacing it with
+ * plaintext. To migrate a store holding plain records, create it with plaintext allowed until all
+ * records have been rewritten, e.g. by
+ * {@link org.trustedanalytics.cfbroker.store.migration.RecordRewriter}.
+ */
+public class EncryptingBrokerStore<T> implements BrokerStore<T> {
+
+    private static final int IV_LENGTH = 12;
+
+    private static final int TAG_BITS = 128;
+
+    private static final int MAX_ENCRYPTED_KEY_LENGTH = 0xFFFF;
+
+    private static final ThreadLocal<Cipher> ciphers = ThreadLocal.withInitial(() -> {
+        try {
+            return Cipher.getInstance("AES/GCM/NoPadding");
+        } catch (NoSuchAlgorithmException | NoSuchPaddingException e) {
+            throw new IllegalStateException("AES/GCM is not available", e);
+        }
+    });
+
+    private final BrokerStore<byte[]> delegate;
+
+    private final RepositorySerializer<T> serializer;
+
+    private final RepositoryDeserializer<T> deserializer;
+
+    private final DataKeyManager keyManager;
+
+    private final boolean plaintextAllowed;
+
+    private final SecureRandom random = new SecureRandom();
+
+    public EncryptingBrokerStore(BrokerStore<byte[]> delegate, RepositorySerializer<T> serializer,
+        RepositoryDeserializer<T> deserializer, DataKeyManager keyManager) {
+
+        this(delegate, serializer, deserializer, keyManager, false);
+    }
+
+    /**
+     * @param plaintextAllowed - whether payloads without encryption tag are read as plain, meant
+     *                         only for migration of existing records
+     */
+    public EncryptingBrokerStore(BrokerStore<byte[]> delegate, RepositorySerializer<T> serializer,
+        RepositoryDeserializer<T> deserializer, DataKeyManager keyManager,
+        boolean plaintextAllowed) {
+
+        this.delegate = delegate;
+        this.serializer = serializer;
+        this.deserializer = deserializer;
+        this.keyManager = keyManager;
+        this.plaintextAllowed = plaintextAllowed;
+    }
+
+    @Override
+    public Optional<T> getById(Location location) throws IOException {
+        Optional<byte[]> payload = delegate.getById(location);
+        return payload.isPresent()
+            ? Optional.ofNullable(deserializer.deserialize(decrypt(location, payload.get())))
+            : Optional.empty();
+    }
+
+    @Override
+    public void save(Location location, T t) throws IOException {
+        delegate.save(location, encrypt(location, serializer.serialize(t)));
+    }
+
+    @Override
+    public Optional<T> deleteById(Location location) throws IOException {
+        Optional<byte[]> payload = delegate.deleteById(location);
+        return payload.isPresent()
+            ? Optional.ofNullable(deserializer.deserialize(decrypt(location, payload.get())))
+            : Optional.empty();
+    }
+
+    byte[] encrypt(Location location, byte[] plaintext) throws IOException {
+        DataKey dataKey = keyManager.currentKey();
+        byte[] encryptedKey = dataKey.encryptedKey();
+        if (encryptedKey.length > MAX_ENCRYPTED_KEY_LENGTH) {
+            throw new IOException("Encrypted data key is too long");
+        }
+        int headerLength = 3 + encryptedKey.length;
+        Cipher cipher = ciphers.get();
+        try {
+            byte[] iv = new byte[IV_LENGTH];
+            random.nextBytes(iv);
+            cipher.init(Cipher.ENCRYPT_MODE, dataKey.getKey(), new GCMParameterSpec(TAG_BITS, iv));
+
+            byte[] out = new byte[headerLength + IV_LENGTH + cipher.getOutputSize(plaintext.length)];
+            out[0] = PayloadFormat.AES_GCM;
+            out[1] = (byte) (encryptedKey.length >>> 8);
+            out[2] = (byte) encryptedKey.length;
+            System.arraycopy(encryptedKey, 0, out, 3, encryptedKey.length);
+            System.arraycopy(iv, 0, out, headerLength, IV_LENGTH);
+
+            cipher.updateAAD(out, 0, headerLength);
+            cipher.updateAAD(location.getPath().getBytes(StandardCharsets.UTF_8));
+            cipher.doFinal(plaintext, 0, plaintext.length, out, headerLength + IV_LENGTH);
+            return out;
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Unable to encrypt " + location.getPath(), e);
+        }
+    }
+
+    byte[] decrypt(Location location, byte[] payload) throws IOException {
+        if (!PayloadFormat.isTagged(payload, PayloadFormat.AES_GCM)) {
+            if (plaintextAllowed) {
+                return payload;
+            }
+            throw new IOException("Record " + location.getPath() + " is not encrypted");
+        }
+        if (payload.length < 3) {
+            throw new IOException("Truncated encrypted payload");
+        }
+        int keyLength = (payload[1] & 0xFF) << 8 | (payload[2] & 0xFF);
+        int headerLength = 3 + keyLength;
+        if (payload.length < headerLength + IV_LENGTH + TAG_BITS / 8) {
+            throw new IOException("Truncated encrypted payload");
+        }
+        byte[] encryptedKey = new byte[keyLength];
+        System.arraycopy(payload, 3, encryptedKey, 0, keyLength);
+        SecretKey key = keyManager.decryptKey(encryptedKey);
+
+        Cipher cipher = ciphers.get();
+        try {
+            cipher.init(Cipher.DECRYPT_MODE, key,
+                new GCMParameterSpec(TAG_BITS, payload, headerLength, IV_LENGTH));
+            cipher.updateAAD(payload, 0, headerLength);
+            cipher.updateAAD(location.getPath().getBytes(StandardCharsets.UTF_8));
+            int offset = headerLength + IV_LENGTH;
+            return cipher.doFinal(payload, offset, payload.length - offset);
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Unable to decrypt " + location.getPath(), e);
+        }
+    }
+}
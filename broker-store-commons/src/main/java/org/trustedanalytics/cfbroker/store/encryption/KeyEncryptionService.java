@@ -0,0 +1,29 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.cfbroker.store.encryption;
+
+import javax.crypto.SecretKey;
+import java.io.IOException;
+
+/**
+ * Service holding master key, e.g. a KMS, that issues data keys and decrypts them.
+ */
+public interface KeyEncryptionService {
+
+    DataKey generateDataKey() throws IOException;
+
+    SecretKey decryptDataKey(byte[] encryptedKey) throws IOException;
+}
@@ -0,0 +1,79 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.cfbroker.store.encryption;
+
+import javax.crypto.Cipher;
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+
+/**
+ * Key encryption service with master key held in memory. Data keys are AES-256 keys encrypted with
+ * the master key using AES-GCM.
+ */
+public class LocalKeyEncryptionService implements KeyEncryptionService {
+
+    private static final int IV_LENGTH = 12;
+
+    private static final int TAG_BITS = 128;
+
+    private final SecretKey masterKey;
+
+    private final SecureRandom random = new SecureRandom();
+
+    public LocalKeyEncryptionService(byte[] masterKey) {
+        this.masterKey = new SecretKeySpec(masterKey, "AES");
+    }
+
+    @Override
+    public DataKey generateDataKey() throws IOException {
+        try {
+            KeyGenerator generator = KeyGenerator.getInstance("AES");
+            generator.init(256, random);
+            SecretKey key = generator.generateKey();
+
+            byte[] iv = new byte[IV_LENGTH];
+            random.nextBytes(iv);
+            Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+            cipher.init(Cipher.ENCRYPT_MODE, masterKey, new GCMParameterSpec(TAG_BITS, iv));
+            byte[] encrypted = cipher.doFinal(key.getEncoded());
+
+            byte[] encryptedKey = Arrays.copyOf(iv, IV_LENGTH + encrypted.length);
+            System.arraycopy(encrypted, 0, encryptedKey, IV_LENGTH, encrypted.length);
+            return new DataKey(key, encryptedKey);
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Unable to generate data key", e);
+        }
+    }
+
+    @Override
+    public SecretKey decryptDataKey(byte[] encryptedKey) throws IOException {
+        try {
+            Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+            cipher.init(Cipher.DECRYPT_MODE, masterKey,
+                new GCMParameterSpec(TAG_BITS, encryptedKey, 0, IV_LENGTH));
+            byte[] key = cipher.doFinal(encryptedKey, IV_LENGTH, encryptedKey.length - IV_LENGTH);
+            return new SecretKeySpec(key, "AES");
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Unable to decrypt data key", e);
+        }
+    }
+}
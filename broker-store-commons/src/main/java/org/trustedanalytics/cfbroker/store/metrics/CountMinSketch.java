@@ -0,0 +1,86 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.cfbroker.store.metrics;
+
+import com.google.common.base.Preconditions;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Count-min sketch: approximate per-key counters in fixed memory. Estimates never undercount,
+ * they may overcount by keys colliding in all rows. Safe for concurrent use.
+ */
+public class CountMinSketch {
+
+    private final int depth;
+
+    private final int mask;
+
+    private final AtomicLongArray counters;
+
+    /**
+     * @param width number of counters per row, rounded up to a power of two
+     * @param depth number of rows, i.e. independent hash functions
+     */
+    public CountMinSketch(int width, int depth) {
+        Preconditions.checkArgument(width > 0 && width <= 1 << 24, "Width must be in (0, 2^24]");
+        Preconditions.checkArgument(depth > 0 && depth <= 16, "Depth must be in (0, 16]");
+        int rowSize = width == 1 ? 1 : Integer.highestOneBit(width - 1) << 1;
+        this.depth = depth;
+        this.mask = rowSize - 1;
+        this.counters = new AtomicLongArray(rowSize * depth);
+    }
+
+    /**
+     * Increments counters of the key and returns its new estimated count.
+     */
+    public long add(Object key) {
+        int hash = spread(key.hashCode());
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < depth; row++) {
+            estimate = Math.min(estimate, counters.incrementAndGet(index(hash, row)));
+        }
+        return estimate;
+    }
+
+    public long estimate(Object key) {
+        int hash = spread(key.hashCode());
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < depth; row++) {
+            estimate = Math.min(estimate, counters.get(index(hash, row)));
+        }
+        return estimate;
+    }
+
+    /**
+     * Halves all counters, so that old traffic weighs less than recent traffic.
+     */
+    public void decay() {
+        for (int i = 0; i < counters.length(); i++) {
+            counters.getAndUpdate(i, count -> count >>> 1);
+        }
+    }
+
+    private int index(int hash, int row) {
+        int secondHash = (hash >>> 16) | 1;
+        return row * (mask + 1) + ((hash + row * secondHash) & mask);
+    }
+
+    private static int spread(int hash) {
+        int h = hash * 0x9E3779B9;
+        return h ^ (h >>> 15);
+    }
+}
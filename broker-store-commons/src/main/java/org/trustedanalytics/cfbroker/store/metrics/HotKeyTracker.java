@@ -0,0 +1,101 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.cfbroker.store.metrics;
+
+import com.google.common.base.Preconditions;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tracks approximately most frequent keys. Every key is counted in a {@link CountMinSketch}, only
+ * keys whose estimate exceeds the smallest of the current top ones take a lock. Counts are halved
+ * on {@link #decay()}, so the top reflects recent traffic.
+ */
+public class HotKeyTracker<K> {
+
+    private final CountMinSketch sketch;
+
+    private final int size;
+
+    private final ConcurrentMap<K, Long> top = new ConcurrentHashMap<>();
+
+    private volatile long minimum;
+
+    public HotKeyTracker(int size, int width, int depth) {
+        Preconditions.checkArgument(size > 0, "Size must be positive");
+        this.sketch = new CountMinSketch(width, depth);
+        this.size = size;
+    }
+
+    public void add(K key) {
+        long estimate = sketch.add(key);
+        if (top.replace(key, estimate) != null) {
+            return;
+        }
+        if (estimate > minimum || top.size() < size) {
+            promote(key, estimate);
+        }
+    }
+
+    /**
+     * Returns tracked keys with their estimated counts, the most frequent first.
+     */
+    public Map<K, Long> getTopKeys() {
+        List<Map.Entry<K, Long>> entries = new ArrayList<>(top.entrySet());
+        Collections.sort(entries, (a, b) -> Long.compare(b.getValue(), a.getValue()));
+        Map<K, Long> result = new LinkedHashMap<>();
+        entries.forEach(entry -> result.put(entry.getKey(), entry.getValue()));
+        return result;
+    }
+
+    public synchronized void decay() {
+        sketch.decay();
+        top.replaceAll((key, count) -> count >>> 1);
+        minimum = minimum >>> 1;
+    }
+
+    public ScheduledFuture<?> scheduleDecay(ScheduledExecutorService executor, long period,
+        TimeUnit unit) {
+        return executor.scheduleAtFixedRate(this::decay, period, period, unit);
+    }
+
+    private synchronized void promote(K key, long estimate) {
+        top.put(key, estimate);
+        if (top.size() > size) {
+            K coldest = null;
+            long coldestCount = Long.MAX_VALUE;
+            for (Map.Entry<K, Long> entry : top.entrySet()) {
+                if (entry.getValue() < coldestCount) {
+                    coldest = entry.getKey();
+                    coldestCount = entry.getValue();
+                }
+            }
+            top.remove(coldest);
+        }
+        if (top.size() >= size) {
+            minimum = Collections.min(top.values());
+        }
+    }
+}
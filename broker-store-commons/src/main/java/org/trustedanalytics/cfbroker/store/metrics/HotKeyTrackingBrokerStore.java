@@ -0,0 +1,70 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.cfbroker.store.metrics;
+
+import org.trustedanalytics.cfbroker.store.api.BrokerStore;
+import org.trustedanalytics.cfbroker.store.api.Location;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Counts reads and writes (saves and deletes) of every location passed to the delegate and
+ * reports the most frequent ones.
+ */
+public class HotKeyTrackingBrokerStore<T> implements BrokerStore<T> {
+
+    private final BrokerStore<T> delegate;
+
+    private final HotKeyTracker<Location> reads;
+
+    private final HotKeyTracker<Location> writes;
+
+    public HotKeyTrackingBrokerStore(BrokerStore<T> delegate, HotKeyTracker<Location> reads,
+        HotKeyTracker<Location> writes) {
+
+        this.delegate = delegate;
+        this.reads = reads;
+        this.writes = writes;
+    }
+
+    @Override
+    public Optional<T> getById(Location location) throws IOException {
+        reads.add(location);
+        return delegate.getById(location);
+    }
+
+    @Override
+    public void save(Location location, T t) throws IOException {
+        writes.add(location);
+        delegate.save(location, t);
+    }
+
+    @Override
+    public Optional<T> deleteById(Location location) throws IOException {
+        writes.add(location);
+        return delegate.deleteById(location);
+    }
+
+    public Map<Location, Long> getMostRead() {
+        return reads.getTopKeys();
+    }
+
+    public Map<Location, Long> getMostWritten() {
+        return writes.getTopKeys();
+    }
+}
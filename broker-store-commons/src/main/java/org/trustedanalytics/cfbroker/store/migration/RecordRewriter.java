@@ -0,0 +1,123 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.cfbroker.store.migration;
+
+import com.google.common.base.Preconditions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.trustedanalytics.cfbroker.store.api.BrokerStore;
+import org.trustedanalytics.cfbroker.store.api.BrokerStoreScanner;
+import org.trustedanalytics.cfbroker.store.api.Location;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Saves back, at a limited rate, records that the scanner reports. Meant to be used with a scanner
+ * built on {@link org.trustedanalytics.cfbroker.store.serialization.VersionedSerDeFactory#getOutdatedDeserializer},
+ * which reports only records of older schema versions, so that they drain without a bulk rewrite.
+ *
+ * Every record is read again through the store right before it is saved, which keeps the window
+ * for overwriting a concurrent change short. Backends don't offer conditional writes, so the
+ * window can't be closed completely.
+ */
+public class RecordRewriter<T> {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(RecordRewriter.class);
+
+    private final BrokerStoreScanner<T> scanner;
+
+    private final BrokerStore<T> store;
+
+    private final long intervalNanos;
+
+    private final AtomicLong nextSlot = new AtomicLong();
+
+    private final AtomicInteger rewritten = new AtomicInteger();
+
+    private final CountDownLatch finished = new CountDownLatch(1);
+
+    private Thread thread;
+
+    public RecordRewriter(BrokerStoreScanner<T> scanner, BrokerStore<T> store,
+        int recordsPerSecond) {
+
+        Preconditions.checkArgument(recordsPerSecond > 0, "Rate must be positive");
+        this.scanner = scanner;
+        this.store = store;
+        this.intervalNanos = TimeUnit.SECONDS.toNanos(1) / recordsPerSecond;
+    }
+
+    public synchronized void start() {
+        if (thread != null) {
+            return;
+        }
+        thread = new Thread(this::rewriteAll, "broker-store-record-rewriter");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public boolean isFinished() {
+        return finished.getCount() == 0;
+    }
+
+    public boolean awaitFinished(long timeout, TimeUnit unit) throws InterruptedException {
+        return finished.await(timeout, unit);
+    }
+
+    public int getRewrittenCount() {
+        return rewritten.get();
+    }
+
+    void rewriteAll() {
+        try {
+            scanner.scan((location, t) -> {
+                if (t != null) {
+                    rewrite(location);
+                }
+            });
+            LOGGER.info("Rewriting finished, {} records saved", rewritten.get());
+        } catch (IOException | UncheckedIOException e) {
+            LOGGER.error("Rewriting failed after saving " + rewritten.get() + " records", e);
+        } finally {
+            finished.countDown();
+        }
+    }
+
+    private void rewrite(Location location) {
+        long now = System.nanoTime();
+        long slot = nextSlot.updateAndGet(previous -> Math.max(previous, now) + intervalNanos)
+            - intervalNanos;
+        for (long delay = slot - now; delay > 0; delay = slot - System.nanoTime()) {
+            LockSupport.parkNanos(delay);
+        }
+        try {
+            Optional<T> current = store.getById(location);
+            if (current.isPresent()) {
+                store.save(location, current.get());
+                rewritten.incrementAndGet();
+            }
+        } catch (IOException e) {
+            LOGGER.warn("Unable to rewrite " + location.getPath(), e);
+        }
+    }
+}
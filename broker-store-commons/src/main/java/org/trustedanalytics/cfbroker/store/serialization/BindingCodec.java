@@ -0,0 +1,164 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.cfbroker.store.serialization;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import org.cloudfoundry.community.servicebroker.model.ServiceInstanceBinding;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.UnaryOperator;
+
+/**
+ * Only credentials and syslog drain url are part of the JSON form. Credentials may hold strings,
+ * numbers, booleans, lists and maps of these; other values are left to Jackson.
+ */
+class BindingCodec implements ModelCodec<ServiceInstanceBinding> {
+
+    private final UnaryOperator<String> interner;
+
+    BindingCodec(UnaryOperator<String> interner) {
+        this.interner = interner;
+    }
+
+    @Override
+    public boolean write(ServiceInstanceBinding binding, JsonGenerator generator)
+        throws IOException {
+        if (!isPlain(binding.getCredentials())) {
+            return false;
+        }
+        generator.writeStartObject();
+        generator.writeFieldName("credentials");
+        writeValue(binding.getCredentials(), generator);
+        generator.writeStringField("syslog_drain_url", binding.getSyslogDrainUrl());
+        generator.writeEndObject();
+        return true;
+    }
+
+    @Override
+    public ServiceInstanceBinding read(JsonParser parser) throws IOException {
+        if (parser.nextToken() != JsonToken.START_OBJECT) {
+            return null;
+        }
+        Map<String, Object> credentials = null;
+        String syslogDrainUrl = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.getCurrentName();
+            JsonToken token = parser.nextToken();
+            if ("credentials".equals(name) && token == JsonToken.START_OBJECT) {
+                credentials = readObject(parser);
+            } else if ("syslog_drain_url".equals(name) && token == JsonToken.VALUE_STRING) {
+                syslogDrainUrl = interner.apply(parser.getText());
+            } else if (token != JsonToken.VALUE_NULL) {
+                return null;
+            }
+        }
+        return new ServiceInstanceBinding(null, null, credentials, syslogDrainUrl, null);
+    }
+
+    private static boolean isPlain(Object value) {
+        if (value == null || value instanceof String || value instanceof Boolean) {
+            return true;
+        }
+        if (value instanceof Number) {
+            double number = ((Number) value).doubleValue();
+            return !Double.isNaN(number) && !Double.isInfinite(number);
+        }
+        if (value instanceof Map) {
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                if (!(entry.getKey() instanceof String) || !isPlain(entry.getValue())) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        if (value instanceof List) {
+            for (Object element : (List<?>) value) {
+                if (!isPlain(element)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    private static void writeValue(Object value, JsonGenerator generator) throws IOException {
+        if (value == null) {
+            generator.writeNull();
+        } else if (value instanceof String) {
+            generator.writeString((String) value);
+        } else if (value instanceof Boolean) {
+            generator.writeBoolean((Boolean) value);
+        } else if (value instanceof Number) {
+            generator.writeNumber(value.toString());
+        } else if (value instanceof Map) {
+            generator.writeStartObject();
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                generator.writeFieldName((String) entry.getKey());
+                writeValue(entry.getValue(), generator);
+            }
+            generator.writeEndObject();
+        } else {
+            generator.writeStartArray();
+            for (Object element : (List<?>) value) {
+                writeValue(element, generator);
+            }
+            generator.writeEndArray();
+        }
+    }
+
+    private static Object readValue(JsonParser parser) throws IOException {
+        switch (parser.getCurrentToken()) {
+            case START_OBJECT:
+                return readObject(parser);
+            case START_ARRAY:
+                List<Object> list = new ArrayList<>();
+                while (parser.nextToken() != JsonToken.END_ARRAY) {
+                    list.add(readValue(parser));
+                }
+                return list;
+            case VALUE_STRING:
+                return parser.getText();
+            case VALUE_NUMBER_INT:
+            case VALUE_NUMBER_FLOAT:
+                return parser.getNumberValue();
+            case VALUE_TRUE:
+                return Boolean.TRUE;
+            case VALUE_FALSE:
+                return Boolean.FALSE;
+            case VALUE_NULL:
+                return null;
+            default:
+                throw new IOException("Unexpected token " + parser.getCurrentToken());
+        }
+    }
+
+    private static Map<String, Object> readObject(JsonParser parser) throws IOException {
+        Map<String, Object> map = new LinkedHashMap<>();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.getCurrentName();
+            parser.nextToken();
+            map.put(name, readValue(parser));
+        }
+        return map;
+    }
+}
@@ -0,0 +1,79 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.cfbroker.store.serialization;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import org.cloudfoundry.community.servicebroker.model.CreateServiceInstanceBindingRequest;
+
+import java.io.IOException;
+import java.util.function.UnaryOperator;
+
+/**
+ * Binding and instance ids aren't part of the JSON form, they come from the location.
+ */
+class BindingRequestCodec implements ModelCodec<CreateServiceInstanceBindingRequest> {
+
+    private final UnaryOperator<String> interner;
+
+    BindingRequestCodec(UnaryOperator<String> interner) {
+        this.interner = interner;
+    }
+
+    @Override
+    public boolean write(CreateServiceInstanceBindingRequest request, JsonGenerator generator)
+        throws IOException {
+        generator.writeStartObject();
+        generator.writeStringField("service_id", request.getServiceDefinitionId());
+        generator.writeStringField("plan_id", request.getPlanId());
+        generator.writeStringField("app_guid", request.getAppGuid());
+        generator.writeEndObject();
+        return true;
+    }
+
+    @Override
+    public CreateServiceInstanceBindingRequest read(JsonParser parser) throws IOException {
+        if (parser.nextToken() != JsonToken.START_OBJECT) {
+            return null;
+        }
+        String serviceId = null;
+        String planId = null;
+        String appGuid = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.getCurrentName();
+            JsonToken token = parser.nextToken();
+            if (token != JsonToken.VALUE_STRING && token != JsonToken.VALUE_NULL) {
+                return null;
+            }
+            String value = token == JsonToken.VALUE_NULL ? null : parser.getText();
+            switch (name) {
+                case "service_id":
+                    serviceId = interner.apply(value);
+                    break;
+                case "plan_id":
+                    planId = interner.apply(value);
+                    break;
+                case "app_guid":
+                    appGuid = interner.apply(value);
+                    break;
+                default:
+                    return null;
+            }
+        }
+        return new CreateServiceInstanceBindingRequest(serviceId, planId, appGuid);
+    }
+}
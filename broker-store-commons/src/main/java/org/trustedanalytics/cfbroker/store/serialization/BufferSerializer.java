@@ -0,0 +1,31 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.cfbroker.store.serialization;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Serializer that may write into a buffer reused between calls. Returned buffer is read-only and
+ * valid only until the next serialization on the same thread, so it has to be consumed (sent or
+ * copied) right away.
+ */
+@FunctionalInterface
+public interface BufferSerializer<T> {
+
+    ByteBuffer serialize(T t) throws IOException;
+
+}
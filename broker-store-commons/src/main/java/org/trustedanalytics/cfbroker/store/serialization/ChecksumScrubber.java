@@ -0,0 +1,91 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.cfbroker.store.serialization;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.trustedanalytics.cfbroker.store.api.BrokerStoreScanner;
+import org.trustedanalytics.cfbroker.store.api.Location;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Verifies checksums of all records in a store without deserializing them. Records are read by
+ * the scanner of the store, created with raw deserializer ({@code t -> t}); scanners of HDFS and
+ * ZooKeeper stores read records in parallel and checksums are verified on their threads.
+ */
+public class ChecksumScrubber {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ChecksumScrubber.class);
+
+    private final Crc32cCodec codec = new Crc32cCodec();
+
+    public Result scrub(BrokerStoreScanner<byte[]> scanner) throws IOException {
+        AtomicInteger verified = new AtomicInteger();
+        AtomicInteger unprotected = new AtomicInteger();
+        List<Location> damaged = Collections.synchronizedList(new ArrayList<>());
+        scanner.scan((location, payload) -> {
+            try {
+                if (codec.verify(payload)) {
+                    verified.incrementAndGet();
+                } else {
+                    unprotected.incrementAndGet();
+                }
+            } catch (IOException e) {
+                LOGGER.warn("Damaged record at " + location.getPath() + ": " + e.getMessage());
+                damaged.add(location);
+            }
+        });
+        return new Result(verified.get(), unprotected.get(), new ArrayList<>(damaged));
+    }
+
+    public static class Result {
+
+        private final int verified;
+
+        private final int unprotected;
+
+        private final List<Location> damaged;
+
+        Result(int verified, int unprotected, List<Location> damaged) {
+            this.verified = verified;
+            this.unprotected = unprotected;
+            this.damaged = damaged;
+        }
+
+        /**
+         * Number of records whose checksum matched.
+         */
+        public int getVerified() {
+            return verified;
+        }
+
+        /**
+         * Number of records written without checksum.
+         */
+        public int getUnprotected() {
+            return unprotected;
+        }
+
+        public List<Location> getDamaged() {
+            return damaged;
+        }
+    }
+}
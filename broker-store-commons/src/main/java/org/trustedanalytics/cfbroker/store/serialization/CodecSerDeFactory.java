@@ -0,0 +1,43 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.cfbroker.store.serialization;
+
+/**
+ * Applies {@link PayloadCodec} on top of payloads produced by another {@link SerDeFactory}.
+ */
+public class CodecSerDeFactory implements SerDeFactory {
+
+    private final SerDeFactory serDeFactory;
+
+    private final PayloadCodec codec;
+
+    public CodecSerDeFactory(SerDeFactory serDeFactory, PayloadCodec codec) {
+        this.serDeFactory = serDeFactory;
+        this.codec = codec;
+    }
+
+    @Override
+    public <T> RepositorySerializer<T> getSerializer() {
+        RepositorySerializer<T> serializer = serDeFactory.getSerializer();
+        return t -> codec.encode(serializer.serialize(t));
+    }
+
+    @Override
+    public <T> RepositoryDeserializer<T> getDeserializer(Class<T> type) {
+        RepositoryDeserializer<T> deserializer = serDeFactory.getDeserializer(type);
+        return t -> deserializer.deserialize(codec.decode(t));
+    }
+}
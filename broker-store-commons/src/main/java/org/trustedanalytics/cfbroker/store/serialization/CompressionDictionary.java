@@ -0,0 +1,50 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.cfbroker.store.serialization;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Preset dictionary for {@link DictionaryDeflateCodec}. Identifier is written to every payload
+ * compressed with the dictionary, so the dictionary has to be kept as long as such payloads exist,
+ * e.g. in a {@link CompressionDictionaryStore}.
+ */
+public class CompressionDictionary {
+
+    static final int MAX_ID = 0xFFFF;
+
+    private final int id;
+
+    private final byte[] data;
+
+    public CompressionDictionary(int id, byte[] data) {
+        Preconditions.checkArgument(id >= 0 && id <= MAX_ID, "Dictionary id must be in [0, 65535]");
+        this.id = id;
+        this.data = data.clone();
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public byte[] getData() {
+        return data.clone();
+    }
+
+    byte[] data() {
+        return data;
+    }
+}
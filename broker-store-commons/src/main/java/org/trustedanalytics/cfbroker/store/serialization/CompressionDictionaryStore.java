@@ -0,0 +1,93 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.cfbroker.store.serialization;
+
+import org.trustedanalytics.cfbroker.store.api.BrokerStore;
+import org.trustedanalytics.cfbroker.store.api.Location;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Optional;
+
+/**
+ * Keeps {@link CompressionDictionary}s in a store holding raw payloads, so that every replica and
+ * every restart can read records compressed with any of them. Each dictionary is saved under a
+ * reserved location, {@code _dictionary-<id>}, and id of the one used for new records under
+ * {@code _dictionary-current}. Reserved locations shouldn't be mixed with service instances, use a
+ * store with its own path or table.
+ */
+public class CompressionDictionaryStore {
+
+    static final String LOCATION_PREFIX = "_dictionary-";
+
+    static final Location CURRENT = Location.newInstance(LOCATION_PREFIX + "current");
+
+    private final BrokerStore<byte[]> store;
+
+    public CompressionDictionaryStore(BrokerStore<byte[]> store) {
+        this.store = store;
+    }
+
+    public Optional<CompressionDictionary> get(int id) throws IOException {
+        Optional<byte[]> data = store.getById(location(id));
+        return data.isPresent() ? Optional.of(new CompressionDictionary(id, data.get()))
+            : Optional.empty();
+    }
+
+    /**
+     * Saves the dictionary, unless it's already there. Dictionaries are never replaced, as records
+     * compressed with them would become unreadable.
+     * @throws IllegalArgumentException when a different dictionary is saved with the same id
+     */
+    public void save(CompressionDictionary dictionary) throws IOException {
+        Optional<byte[]> saved = store.getById(location(dictionary.getId()));
+        if (!saved.isPresent()) {
+            store.save(location(dictionary.getId()), dictionary.data());
+        } else if (!Arrays.equals(saved.get(), dictionary.data())) {
+            throw new IllegalArgumentException(
+                "Different dictionary already saved with id " + dictionary.getId());
+        }
+    }
+
+    public Optional<CompressionDictionary> getCurrent() throws IOException {
+        Optional<byte[]> id = store.getById(CURRENT);
+        if (!id.isPresent()) {
+            return Optional.empty();
+        }
+        if (id.get().length != Integer.BYTES) {
+            throw new IOException("Invalid id of current dictionary");
+        }
+        Optional<CompressionDictionary> current = get(DeflateCodec.readInt(id.get(), 0));
+        if (!current.isPresent()) {
+            throw new IOException("Current dictionary is missing");
+        }
+        return current;
+    }
+
+    /**
+     * Saves the dictionary, if needed, and marks it as the one used for new records.
+     */
+    public void setCurrent(CompressionDictionary dictionary) throws IOException {
+        save(dictionary);
+        byte[] id = new byte[Integer.BYTES];
+        DeflateCodec.writeInt(id, 0, dictionary.getId());
+        store.save(CURRENT, id);
+    }
+
+    private static Location location(int id) {
+        return Location.newInstance(LOCATION_PREFIX + id);
+    }
+}
@@ -0,0 +1,102 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.cfbroker.store.serialization;
+
+import org.apache.hadoop.util.PureJavaCrc32C;
+
+import java.io.IOException;
+import java.lang.reflect.Constructor;
+import java.util.Arrays;
+import java.util.function.Supplier;
+import java.util.zip.Checksum;
+
+/**
+ * Protects payloads with CRC32C checksum, so that truncated or damaged records are detected before
+ * deserialization. Encoded payload consists of {@link PayloadFormat#CRC32C} tag, original payload
+ * and 4-byte checksum of the original payload. To cover compressed or encrypted bytes, the codec
+ * has to be applied last.
+ *
+ * Intrinsic-backed java.util.zip.CRC32C is used when running on Java 9 or newer, Hadoop's
+ * PureJavaCrc32C otherwise.
+ */
+public class Crc32cCodec implements PayloadCodec {
+
+    static final int OVERHEAD = 5;
+
+    private static final Supplier<Checksum> checksumFactory = findChecksumFactory();
+
+    private final ThreadLocal<Checksum> checksum = ThreadLocal.withInitial(checksumFactory);
+
+    @Override
+    public byte[] encode(byte[] payload) throws IOException {
+        byte[] out = new byte[payload.length + OVERHEAD];
+        out[0] = PayloadFormat.CRC32C;
+        System.arraycopy(payload, 0, out, 1, payload.length);
+        DeflateCodec.writeInt(out, payload.length + 1, compute(out, 1, payload.length));
+        return out;
+    }
+
+    @Override
+    public byte[] decode(byte[] payload) throws IOException {
+        if (!PayloadFormat.isTagged(payload, PayloadFormat.CRC32C)) {
+            return payload;
+        }
+        verify(payload);
+        return Arrays.copyOfRange(payload, 1, payload.length - OVERHEAD + 1);
+    }
+
+    /**
+     * Checks whether payload, tagged or not, is intact. Untagged payloads can't be checked.
+     *
+     * @return false if payload isn't protected by checksum
+     * @throws IOException if payload is protected by checksum, but doesn't match it
+     */
+    public boolean verify(byte[] payload) throws IOException {
+        if (!PayloadFormat.isTagged(payload, PayloadFormat.CRC32C)) {
+            return false;
+        }
+        if (payload.length < OVERHEAD) {
+            throw new IOException("Truncated checksummed payload");
+        }
+        int length = payload.length - OVERHEAD;
+        if (compute(payload, 1, length) != DeflateCodec.readInt(payload, length + 1)) {
+            throw new IOException("Checksum mismatch, payload is damaged or truncated");
+        }
+        return true;
+    }
+
+    private int compute(byte[] data, int offset, int length) {
+        Checksum crc = checksum.get();
+        crc.reset();
+        crc.update(data, offset, length);
+        return (int) crc.getValue();
+    }
+
+    private static Supplier<Checksum> findChecksumFactory() {
+        try {
+            Constructor<?> constructor = Class.forName("java.util.zip.CRC32C").getConstructor();
+            return () -> {
+                try {
+                    return (Checksum) constructor.newInstance();
+                } catch (ReflectiveOperationException e) {
+                    return new PureJavaCrc32C();
+                }
+            };
+        } catch (ReflectiveOperationException e) {
+            return PureJavaCrc32C::new;
+        }
+    }
+}
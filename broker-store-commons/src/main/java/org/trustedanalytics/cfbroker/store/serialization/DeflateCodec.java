@@ -0,0 +1,126 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.cfbroker.store.serialization;
+
+import com.google.common.base.Preconditions;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compresses payloads of at least given size with deflate. Compressed payload consists of
+ * {@link PayloadFormat#DEFLATE} tag, 4-byte length of the original payload and deflate stream.
+ * Smaller payloads, and payloads that don't shrink, are stored as they are.
+ *
+ * Deflater and Inflater hold native memory, so one of each is kept per thread and reused.
+ */
+public class DeflateCodec implements PayloadCodec {
+
+    static final int HEADER_LENGTH = 5;
+
+    private static final int MAX_PAYLOAD_LENGTH = 64 * 1024 * 1024;
+
+    private final int threshold;
+
+    private final ThreadLocal<Deflater> deflater;
+
+    private final ThreadLocal<Inflater> inflater = ThreadLocal.withInitial(Inflater::new);
+
+    public DeflateCodec(int threshold) {
+        this(threshold, Deflater.BEST_SPEED);
+    }
+
+    public DeflateCodec(int threshold, int level) {
+        Preconditions.checkArgument(threshold >= 0, "Threshold can't be negative");
+        this.threshold = threshold;
+        this.deflater = ThreadLocal.withInitial(() -> new Deflater(level));
+    }
+
+    @Override
+    public byte[] encode(byte[] payload) throws IOException {
+        if (payload.length < threshold || payload.length <= HEADER_LENGTH) {
+            return payload;
+        }
+        Deflater compressor = deflater.get();
+        compressor.reset();
+        compressor.setInput(payload);
+        compressor.finish();
+
+        byte[] out = new byte[payload.length];
+        out[0] = PayloadFormat.DEFLATE;
+        writeInt(out, 1, payload.length);
+        int length = HEADER_LENGTH;
+        while (!compressor.finished()) {
+            if (length == out.length) {
+                return payload;
+            }
+            length += compressor.deflate(out, length, out.length - length);
+        }
+        return Arrays.copyOf(out, length);
+    }
+
+    @Override
+    public byte[] decode(byte[] payload) throws IOException {
+        if (!PayloadFormat.isTagged(payload, PayloadFormat.DEFLATE)) {
+            return payload;
+        }
+        if (payload.length < HEADER_LENGTH) {
+            throw new IOException("Truncated compressed payload");
+        }
+        int originalLength = readInt(payload, 1);
+        if (originalLength < 0 || originalLength > MAX_PAYLOAD_LENGTH) {
+            throw new IOException("Invalid length of compressed payload: " + originalLength);
+        }
+        Inflater decompressor = inflater.get();
+        decompressor.reset();
+        decompressor.setInput(payload, HEADER_LENGTH, payload.length - HEADER_LENGTH);
+        byte[] out = new byte[originalLength];
+        try {
+            int length = 0;
+            while (length < originalLength) {
+                int inflated = decompressor.inflate(out, length, originalLength - length);
+                if (inflated == 0 && (decompressor.needsInput() || decompressor.finished()
+                    || decompressor.needsDictionary())) {
+                    break;
+                }
+                length += inflated;
+            }
+            if (length != originalLength) {
+                throw new IOException("Truncated compressed payload");
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupted compressed payload", e);
+        }
+        return out;
+    }
+
+    static void writeInt(byte[] buffer, int offset, int value) {
+        buffer[offset] = (byte) (value >>> 24);
+        buffer[offset + 1] = (byte) (value >>> 16);
+        buffer[offset + 2] = (byte) (value >>> 8);
+        buffer[offset + 3] = (byte) value;
+    }
+
+    static int readInt(byte[] buffer, int offset) {
+        return (buffer[offset] & 0xFF) << 24
+            | (buffer[offset + 1] & 0xFF) << 16
+            | (buffer[offset + 2] & 0xFF) << 8
+            | (buffer[offset + 3] & 0xFF);
+    }
+}
@@ -0,0 +1,214 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.cfbroker.store.serialization;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compresses payloads with deflate primed with a preset dictionary, which makes even small JSON
+ * documents shrink well when the dictionary contains their common keys and values. Compressed
+ * payload consists of {@link PayloadFormat#DICTIONARY_DEFLATE} tag, 2-byte dictionary id, 4-byte
+ * length of the original payload and deflate stream.
+ *
+ * New payloads are compressed with the current dictionary, set with {@link #rotate}. Payloads
+ * compressed with older dictionaries stay readable as long as these are {@link #register}ed. Codec
+ * {@link #load}ed from a {@link CompressionDictionaryStore} saves rotated dictionaries there and
+ * reads dictionaries it doesn't know yet from it, so that payloads written by other replicas or
+ * before a restart can be read. Records compressed with older dictionaries can be found with
+ * {@link #getOutdatedDeserializer}.
+ */
+public class DictionaryDeflateCodec implements PayloadCodec {
+
+    static final int HEADER_LENGTH = 7;
+
+    private static final int MAX_PAYLOAD_LENGTH = 64 * 1024 * 1024;
+
+    private static final int NO_DICTIONARY = -1;
+
+    private final ConcurrentMap<Integer, CompressionDictionary> dictionaries = new ConcurrentHashMap<>();
+
+    private final ThreadLocal<Deflater> deflater =
+        ThreadLocal.withInitial(() -> new Deflater(Deflater.BEST_COMPRESSION));
+
+    private final ThreadLocal<Inflater> inflater = ThreadLocal.withInitial(Inflater::new);
+
+    /**
+     * Id of the dictionary of the payload last decoded on the thread.
+     */
+    private final ThreadLocal<int[]> decodedId = ThreadLocal.withInitial(() -> new int[1]);
+
+    private final CompressionDictionaryStore dictionaryStore;
+
+    private volatile CompressionDictionary current;
+
+    public DictionaryDeflateCodec(CompressionDictionary current) {
+        this(current, null);
+    }
+
+    private DictionaryDeflateCodec(CompressionDictionary current,
+        CompressionDictionaryStore dictionaryStore) {
+
+        this.dictionaryStore = dictionaryStore;
+        register(current);
+        this.current = current;
+    }
+
+    /**
+     * Creates codec using the current dictionary of the store.
+     * @throws IOException when the store has no current dictionary, set it with
+     *                     {@link CompressionDictionaryStore#setCurrent} first
+     */
+    public static DictionaryDeflateCodec load(CompressionDictionaryStore dictionaryStore)
+        throws IOException {
+
+        CompressionDictionary current = dictionaryStore.getCurrent()
+            .orElseThrow(() -> new IOException("No current compression dictionary in the store"));
+        return new DictionaryDeflateCodec(current, dictionaryStore);
+    }
+
+    /**
+     * Makes given dictionary available for decoding.
+     */
+    public void register(CompressionDictionary dictionary) {
+        CompressionDictionary previous = dictionaries.putIfAbsent(dictionary.getId(), dictionary);
+        if (previous != null && !Arrays.equals(previous.data(), dictionary.data())) {
+            throw new IllegalArgumentException(
+                "Different dictionary already registered with id " + dictionary.getId());
+        }
+    }
+
+    /**
+     * Registers given dictionary and uses it for encoding from now on. Codec loaded from a store
+     * saves the dictionary there first. Other replicas keep their current dictionary until they
+     * are restarted, but read payloads compressed with the new one.
+     */
+    public synchronized void rotate(CompressionDictionary dictionary) throws IOException {
+        if (dictionaryStore != null) {
+            dictionaryStore.setCurrent(dictionary);
+        }
+        register(dictionary);
+        current = dictionary;
+    }
+
+    /**
+     * Deserializer returning null for records that aren't compressed with an older dictionary, and
+     * deserialized objects for those that are, to be rewritten by
+     * {@link org.trustedanalytics.cfbroker.store.migration.RecordRewriter}. Given deserializer has
+     * to decode payloads with this codec on the calling thread, e.g. one created by
+     * {@link CodecSerDeFactory} using it.
+     */
+    public <T> RepositoryDeserializer<T> getOutdatedDeserializer(
+        RepositoryDeserializer<T> deserializer) {
+
+        return t -> {
+            int[] id = decodedId.get();
+            id[0] = NO_DICTIONARY;
+            T value = deserializer.deserialize(t);
+            return id[0] != NO_DICTIONARY && id[0] != current.getId() ? value : null;
+        };
+    }
+
+    @Override
+    public byte[] encode(byte[] payload) throws IOException {
+        CompressionDictionary dictionary = current;
+        Deflater compressor = deflater.get();
+        compressor.reset();
+        compressor.setDictionary(dictionary.data());
+        compressor.setInput(payload);
+        compressor.finish();
+
+        byte[] out = new byte[payload.length];
+        if (out.length <= HEADER_LENGTH) {
+            return payload;
+        }
+        out[0] = PayloadFormat.DICTIONARY_DEFLATE;
+        out[1] = (byte) (dictionary.getId() >>> 8);
+        out[2] = (byte) dictionary.getId();
+        DeflateCodec.writeInt(out, 3, payload.length);
+        int length = HEADER_LENGTH;
+        while (!compressor.finished()) {
+            if (length == out.length) {
+                return payload;
+            }
+            length += compressor.deflate(out, length, out.length - length);
+        }
+        return Arrays.copyOf(out, length);
+    }
+
+    @Override
+    public byte[] decode(byte[] payload) throws IOException {
+        if (!PayloadFormat.isTagged(payload, PayloadFormat.DICTIONARY_DEFLATE)) {
+            return payload;
+        }
+        if (payload.length < HEADER_LENGTH) {
+            throw new IOException("Truncated compressed payload");
+        }
+        int id = (payload[1] & 0xFF) << 8 | (payload[2] & 0xFF);
+        CompressionDictionary dictionary = getDictionary(id);
+        decodedId.get()[0] = id;
+        int originalLength = DeflateCodec.readInt(payload, 3);
+        if (originalLength < 0 || originalLength > MAX_PAYLOAD_LENGTH) {
+            throw new IOException("Invalid length of compressed payload: " + originalLength);
+        }
+
+        Inflater decompressor = inflater.get();
+        decompressor.reset();
+        decompressor.setInput(payload, HEADER_LENGTH, payload.length - HEADER_LENGTH);
+        byte[] out = new byte[originalLength];
+        try {
+            int length = 0;
+            while (length < originalLength) {
+                int inflated = decompressor.inflate(out, length, originalLength - length);
+                if (inflated == 0) {
+                    if (decompressor.needsDictionary()) {
+                        decompressor.setDictionary(dictionary.data());
+                    } else if (decompressor.needsInput() || decompressor.finished()) {
+                        break;
+                    }
+                }
+                length += inflated;
+            }
+            if (length != originalLength) {
+                throw new IOException("Truncated compressed payload");
+            }
+        } catch (DataFormatException | IllegalArgumentException e) {
+            throw new IOException("Corrupted compressed payload", e);
+        }
+        return out;
+    }
+
+    private CompressionDictionary getDictionary(int id) throws IOException {
+        CompressionDictionary dictionary = dictionaries.get(id);
+        if (dictionary == null && dictionaryStore != null) {
+            Optional<CompressionDictionary> saved = dictionaryStore.get(id);
+            if (saved.isPresent()) {
+                register(saved.get());
+                dictionary = dictionaries.get(id);
+            }
+        }
+        if (dictionary == null) {
+            throw new IOException("Unknown compression dictionary: " + id);
+        }
+        return dictionary;
+    }
+}
@@ -0,0 +1,169 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.cfbroker.store.serialization;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.io.JsonStringEncoder;
+import com.google.common.base.Preconditions;
+import org.trustedanalytics.cfbroker.store.api.BrokerStoreScanner;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Builds {@link CompressionDictionary} from sample JSON payloads. Samples are split into JSON
+ * tokens (keys and values with their quotes) and tokens found in more than one sample are put into the
+ * dictionary, the most valuable ones last, as deflate encodes closer matches with fewer bits.
+ */
+public final class DictionaryTrainer {
+
+    /**
+     * Deflate can't refer further back than its 32 KB window.
+     */
+    public static final int MAX_DICTIONARY_SIZE = 32 * 1024;
+
+    private static final JsonFactory jsonFactory = new JsonFactory();
+
+    private DictionaryTrainer() {
+    }
+
+    public static CompressionDictionary train(int id, List<byte[]> samples, int maxSize) {
+        Preconditions.checkArgument(maxSize > 0 && maxSize <= MAX_DICTIONARY_SIZE,
+            "Dictionary size must be in (0, 32768]");
+        Map<String, Integer> frequency = new HashMap<>();
+        for (byte[] sample : samples) {
+            for (String token : tokenize(sample)) {
+                frequency.merge(token, 1, Integer::sum);
+            }
+        }
+
+        List<Map.Entry<String, Integer>> tokens = new ArrayList<>();
+        frequency.entrySet().stream()
+            .filter(entry -> entry.getValue() > 1)
+            .forEach(tokens::add);
+        tokens.sort((a, b) -> Long.compare(score(b), score(a)));
+
+        List<byte[]> selected = new ArrayList<>();
+        int size = 0;
+        for (Map.Entry<String, Integer> token : tokens) {
+            byte[] bytes = token.getKey().getBytes(StandardCharsets.UTF_8);
+            if (size + bytes.length <= maxSize) {
+                selected.add(bytes);
+                size += bytes.length;
+            }
+        }
+        ByteArrayOutputStream dictionary = new ByteArrayOutputStream(size);
+        for (int i = selected.size() - 1; i >= 0; i--) {
+            dictionary.write(selected.get(i), 0, selected.get(i).length);
+        }
+        return new CompressionDictionary(id, dictionary.toByteArray());
+    }
+
+    /**
+     * Picks uniformly at most sampleSize objects from the store and serializes them.
+     */
+    public static <T> List<byte[]> sample(BrokerStoreScanner<T> scanner,
+        RepositorySerializer<T> serializer, int sampleSize) throws IOException {
+
+        Preconditions.checkArgument(sampleSize > 0, "Sample size must be positive");
+        byte[][] reservoir = new byte[sampleSize][];
+        AtomicInteger seen = new AtomicInteger();
+        try {
+            scanner.scan((location, t) -> {
+                int index = seen.getAndIncrement();
+                if (index >= sampleSize) {
+                    index = ThreadLocalRandom.current().nextInt(index + 1);
+                    if (index >= sampleSize) {
+                        return;
+                    }
+                }
+                byte[] serialized = serialize(serializer, t);
+                synchronized (reservoir) {
+                    reservoir[index] = serialized;
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        List<byte[]> samples = new ArrayList<>(sampleSize);
+        synchronized (reservoir) {
+            for (byte[] sample : reservoir) {
+                if (sample != null) {
+                    samples.add(sample);
+                }
+            }
+        }
+        return samples;
+    }
+
+    private static <T> byte[] serialize(RepositorySerializer<T> serializer, T t) {
+        try {
+            return serializer.serialize(t);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Tokens are JSON field names with their quotes and colon, string values with their quotes and
+     * other scalar values, in the form compact JSON has them, so values like URLs stay whole.
+     * Samples that aren't valid JSON contribute tokens read before the error.
+     */
+    private static Set<String> tokenize(byte[] sample) {
+        Set<String> tokens = new HashSet<>();
+        try (JsonParser parser = jsonFactory.createParser(sample)) {
+            JsonToken token;
+            while ((token = parser.nextToken()) != null) {
+                String text;
+                if (token == JsonToken.FIELD_NAME) {
+                    text = quote(parser.getCurrentName()) + ":";
+                } else if (token == JsonToken.VALUE_STRING) {
+                    text = quote(parser.getText());
+                } else if (token.isScalarValue()) {
+                    text = parser.getText();
+                } else {
+                    continue;
+                }
+                if (text.length() > 2) {
+                    tokens.add(text);
+                }
+            }
+        } catch (IOException e) {
+            // malformed or truncated sample, tokens read so far are still useful
+        }
+        return tokens;
+    }
+
+    private static String quote(String text) {
+        return '"' + new String(JsonStringEncoder.getInstance().quoteAsString(text)) + '"';
+    }
+
+    private static long score(Map.Entry<String, Integer> token) {
+        return (long) token.getKey().length() * token.getValue();
+    }
+}
@@ -0,0 +1,67 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.cfbroker.store.serialization;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.BeanProperty;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.deser.ContextualDeserializer;
+import com.fasterxml.jackson.databind.deser.std.StdScalarDeserializer;
+import com.fasterxml.jackson.databind.deser.std.StringDeserializer;
+import com.google.common.collect.ImmutableSet;
+
+import java.io.IOException;
+import java.util.Set;
+
+/**
+ * Deserializes values of low-cardinality string properties through {@link StringInterner}, so that
+ * cached objects share one copy of service, plan, organization and space identifiers. Other string
+ * properties are deserialized as usual.
+ */
+class InterningStringDeserializer extends StdScalarDeserializer<String>
+    implements ContextualDeserializer {
+
+    private static final long serialVersionUID = 1L;
+
+    static final Set<String> DEFAULT_PROPERTIES = ImmutableSet.of("service_id", "plan_id",
+        "organization_guid", "space_guid", "dashboard_url", "app_guid", "syslog_drain_url");
+
+    private final StringInterner interner;
+
+    private final Set<String> properties;
+
+    InterningStringDeserializer(StringInterner interner, Set<String> properties) {
+        super(String.class);
+        this.interner = interner;
+        this.properties = properties;
+    }
+
+    @Override
+    public String deserialize(JsonParser parser, DeserializationContext context)
+        throws IOException {
+        return interner.intern(StringDeserializer.instance.deserialize(parser, context));
+    }
+
+    @Override
+    public JsonDeserializer<?> createContextual(DeserializationContext context,
+        BeanProperty property) {
+        if (property != null && properties.contains(property.getName())) {
+            return this;
+        }
+        return StringDeserializer.instance;
+    }
+}
@@ -15,28 +15,95 @@
  */
 package org.trustedanalytics.cfbroker.store.serialization;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.Module;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.module.SimpleModule;
 
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * (De)serializes objects as JSON. Readers are built once per type and writer once per factory,
+ * so no type resolution or deserializer lookup happens on particular calls.
+ */
 public class JSONSerDeFactory implements SerDeFactory {
 
-    private static final SerDeFactory instance = new JSONSerDeFactory();
+    private static final SerDeFactory instance = new JSONSerDeFactory(new ObjectMapper());
+
+    private final ObjectMapper mapper;
 
-    private static final ObjectMapper mapper = new ObjectMapper();
+    private final ObjectWriter writer;
 
-    private JSONSerDeFactory() {
+    private final ConcurrentMap<Class<?>, ObjectReader> readers = new ConcurrentHashMap<>();
+
+    /**
+     * Generators writing to the stream of their thread, reused so that buffer serialization
+     * doesn't create a generator per call. One failing to write is dropped, as its state is unknown.
+     */
+    private final ThreadLocal<JsonGenerator> generators = new ThreadLocal<>();
+
+    private JSONSerDeFactory(ObjectMapper mapper) {
+        this.mapper = mapper;
+        this.writer = mapper.writer();
     }
 
     public static SerDeFactory getInstance() {
         return instance;
     }
 
+    /**
+     * Factory whose mapper has given Jackson modules registered, e.g. Afterburner to replace
+     * reflection with generated accessors.
+     */
+    public static SerDeFactory withModules(Module... modules) {
+        return new JSONSerDeFactory(new ObjectMapper().registerModules(modules));
+    }
+
+    /**
+     * Factory whose deserializers share one copy of repeated identifiers (service, plan,
+     * organization, space, application) between deserialized objects. Useful when many of them
+     * are kept in memory, e.g. by a cache.
+     */
+    public static SerDeFactory getInterningInstance(StringInterner interner) {
+        SimpleModule module = new SimpleModule("interning");
+        module.addDeserializer(String.class,
+            new InterningStringDeserializer(interner, InterningStringDeserializer.DEFAULT_PROPERTIES));
+        return withModules(module);
+    }
+
     @Override
     public <T> RepositorySerializer<T> getSerializer() {
-        return mapper::writeValueAsBytes;
+        return writer::writeValueAsBytes;
+    }
+
+    @Override
+    public <T> BufferSerializer<T> getBufferSerializer() {
+        return t -> {
+            ReusableOutputStream out = ReusableOutputStream.forCurrentThread();
+            JsonGenerator generator = generators.get();
+            if (generator == null) {
+                generator = writer.getFactory().createGenerator(out);
+                generator.setRootValueSeparator(null);
+                generators.set(generator);
+            }
+            try {
+                writer.writeValue(generator, t);
+                generator.flush();
+            } catch (IOException | RuntimeException e) {
+                generators.remove();
+                throw e;
+            }
+            return out.toByteBuffer();
+        };
     }
 
     @Override
     public <T> RepositoryDeserializer<T> getDeserializer(Class<T> type) {
-        return t -> mapper.readValue(t, type);
+        ObjectReader reader = readers.computeIfAbsent(type, mapper::reader);
+        return reader::readValue;
     }
 }
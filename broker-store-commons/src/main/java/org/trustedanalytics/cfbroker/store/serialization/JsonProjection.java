@@ -0,0 +1,87 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.cfbroker.store.serialization;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.google.common.collect.ImmutableSet;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Extracts chosen top-level fields of stored records with a streaming parser, without binding the
+ * whole object. Reads JSON, {@link PayloadFormat#SMILE} and {@link PayloadFormat#VERSIONED}
+ * payloads; records of older schema versions are read as they are, without upgrades. Payloads
+ * transformed by a {@link PayloadCodec} have to be decoded first.
+ *
+ * Scalar values are returned as text, fields with null or non-scalar values are mapped to null.
+ * Parsing stops as soon as all fields are found.
+ */
+public class JsonProjection {
+
+    private static final JsonFactory jsonFactory = new JsonFactory();
+
+    private static final SmileFactory smileFactory = new SmileFactory();
+
+    private final Set<String> fields;
+
+    public JsonProjection(String... fields) {
+        this.fields = ImmutableSet.copyOf(fields);
+    }
+
+    public Map<String, String> extract(byte[] payload) throws IOException {
+        try (JsonParser parser = createParser(payload)) {
+            Map<String, String> values = new HashMap<>();
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("Record isn't a JSON object");
+            }
+            while (values.size() < fields.size() && parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.getCurrentName();
+                JsonToken value = parser.nextToken();
+                if (fields.contains(name)) {
+                    values.put(name, value.isScalarValue() && value != JsonToken.VALUE_NULL
+                        ? parser.getText() : null);
+                }
+                parser.skipChildren();
+            }
+            return values;
+        }
+    }
+
+    /**
+     * Adapts projection to places expecting a deserializer, e.g. store scanners computing
+     * aggregates over all records.
+     */
+    public RepositoryDeserializer<Map<String, String>> asDeserializer() {
+        return this::extract;
+    }
+
+    private static JsonParser createParser(byte[] payload) throws IOException {
+        if (PayloadFormat.isTagged(payload, PayloadFormat.SMILE)) {
+            return smileFactory.createParser(payload, 1, payload.length - 1);
+        }
+        if (PayloadFormat.isTagged(payload, PayloadFormat.VERSIONED)) {
+            return jsonFactory.createParser(payload, VersionedSerDeFactory.HEADER_LENGTH,
+                payload.length - VersionedSerDeFactory.HEADER_LENGTH);
+        }
+        return jsonFactory.createParser(payload);
+    }
+}
@@ -0,0 +1,39 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.cfbroker.store.serialization;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+
+import java.io.IOException;
+
+/**
+ * Hand-written JSON mapping of one model class, used by {@link ModelSerDeFactory}.
+ */
+interface ModelCodec<T> {
+
+    /**
+     * @return false if the object has content the codec can't write, nothing is written then
+     */
+    boolean write(T t, JsonGenerator generator) throws IOException;
+
+    /**
+     * Reads object from parser positioned before its first token.
+     *
+     * @return null if the record has content the codec can't read
+     */
+    T read(JsonParser parser) throws IOException;
+}
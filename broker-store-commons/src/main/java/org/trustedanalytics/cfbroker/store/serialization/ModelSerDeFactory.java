@@ -0,0 +1,106 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.cfbroker.store.serialization;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.google.common.collect.ImmutableMap;
+import org.cloudfoundry.community.servicebroker.model.CreateServiceInstanceBindingRequest;
+import org.cloudfoundry.community.servicebroker.model.ServiceInstance;
+import org.cloudfoundry.community.servicebroker.model.ServiceInstanceBinding;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Map;
+import java.util.function.UnaryOperator;
+
+/**
+ * Reads and writes {@link ServiceInstance}, {@link CreateServiceInstanceBindingRequest} and
+ * {@link ServiceInstanceBinding} with hand-written streaming code instead of reflection-based
+ * databinding. Output is the same JSON {@link JSONSerDeFactory} writes, so both factories read
+ * each other's records. Other types, and records with content the hand-written code doesn't
+ * cover, are passed to {@link JSONSerDeFactory}.
+ */
+public class ModelSerDeFactory implements SerDeFactory {
+
+    private static final SerDeFactory instance =
+        new ModelSerDeFactory(UnaryOperator.identity(), JSONSerDeFactory.getInstance());
+
+    private static final JsonFactory jsonFactory = new JsonFactory();
+
+    private final Map<Class<?>, ModelCodec<?>> codecs;
+
+    private final SerDeFactory fallback;
+
+    private ModelSerDeFactory(UnaryOperator<String> interner, SerDeFactory fallback) {
+        this.codecs = ImmutableMap.of(
+            ServiceInstance.class, new ServiceInstanceCodec(interner),
+            CreateServiceInstanceBindingRequest.class, new BindingRequestCodec(interner),
+            ServiceInstanceBinding.class, new BindingCodec(interner));
+        this.fallback = fallback;
+    }
+
+    public static SerDeFactory getInstance() {
+        return instance;
+    }
+
+    /**
+     * Factory whose deserializers share one copy of repeated identifiers, the same ones as
+     * {@link JSONSerDeFactory#getInterningInstance(StringInterner)}, which is used for records
+     * passed to the fallback.
+     */
+    public static SerDeFactory getInterningInstance(StringInterner interner) {
+        return new ModelSerDeFactory(interner::intern,
+            JSONSerDeFactory.getInterningInstance(interner));
+    }
+
+    @Override
+    public <T> RepositorySerializer<T> getSerializer() {
+        RepositorySerializer<T> fallbackSerializer = fallback.getSerializer();
+        return t -> {
+            @SuppressWarnings("unchecked")
+            ModelCodec<T> codec = t == null ? null : (ModelCodec<T>) codecs.get(t.getClass());
+            if (codec != null) {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                try (JsonGenerator generator = jsonFactory.createGenerator(out)) {
+                    if (codec.write(t, generator)) {
+                        generator.flush();
+                        return out.toByteArray();
+                    }
+                }
+            }
+            return fallbackSerializer.serialize(t);
+        };
+    }
+
+    @Override
+    public <T> RepositoryDeserializer<T> getDeserializer(Class<T> type) {
+        RepositoryDeserializer<T> fallbackDeserializer = fallback.getDeserializer(type);
+        @SuppressWarnings("unchecked")
+        ModelCodec<T> codec = (ModelCodec<T>) codecs.get(type);
+        if (codec == null) {
+            return fallbackDeserializer;
+        }
+        return t -> {
+            T value;
+            try (JsonParser parser = jsonFactory.createParser(t)) {
+                value = codec.read(parser);
+            }
+            return value != null ? value : fallbackDeserializer.deserialize(t);
+        };
+    }
+}
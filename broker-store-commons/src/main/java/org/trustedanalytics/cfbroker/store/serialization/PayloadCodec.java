@@ -0,0 +1,30 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.cfbroker.store.serialization;
+
+import java.io.IOException;
+
+/**
+ * Transformation of serialized payloads, e.g. compression. Implementations tag payloads they
+ * encode with a {@link PayloadFormat} byte and pass other payloads through on decode, so that
+ * records written before the codec was enabled stay readable.
+ */
+public interface PayloadCodec {
+
+    byte[] encode(byte[] payload) throws IOException;
+
+    byte[] decode(byte[] payload) throws IOException;
+}
@@ -0,0 +1,48 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.cfbroker.store.serialization;
+
+/**
+ * One-byte tags put in front of stored payloads to tell how they were encoded. Tags are control
+ * characters that can't start a JSON document, so payloads without a tag are read as plain JSON
+ * written by {@link JSONSerDeFactory}.
+ */
+public final class PayloadFormat {
+
+    public static final byte SMILE = 0x01;
+
+    public static final byte DEFLATE = 0x02;
+
+    public static final byte DICTIONARY_DEFLATE = 0x03;
+
+    public static final byte VERSIONED = 0x04;
+
+    public static final byte CRC32C = 0x05;
+
+    public static final byte AES_GCM = 0x06;
+
+    /**
+     * Payload stored outside the record, the rest of the record points to where it is.
+     */
+    public static final byte OVERFLOW = 0x07;
+
+    private PayloadFormat() {
+    }
+
+    public static boolean isTagged(byte[] payload, byte tag) {
+        return payload != null && payload.length > 0 && payload[0] == tag;
+    }
+}
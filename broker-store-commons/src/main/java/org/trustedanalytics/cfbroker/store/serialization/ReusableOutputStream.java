@@ -0,0 +1,59 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.cfbroker.store.serialization;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Per-thread output stream whose buffer is exposed without copying and reused by subsequent
+ * serializations. Buffers that grew over {@link #MAX_RETAINED_SIZE} aren't kept after reset, so
+ * a single large object doesn't pin memory of the thread forever.
+ */
+final class ReusableOutputStream extends ByteArrayOutputStream {
+
+    static final int MAX_RETAINED_SIZE = 64 * 1024;
+
+    private static final int INITIAL_SIZE = 1024;
+
+    private static final ThreadLocal<ReusableOutputStream> streams =
+        ThreadLocal.withInitial(ReusableOutputStream::new);
+
+    private ReusableOutputStream() {
+        super(INITIAL_SIZE);
+    }
+
+    /**
+     * Returns empty stream of the current thread.
+     */
+    static ReusableOutputStream forCurrentThread() {
+        ReusableOutputStream stream = streams.get();
+        stream.reset();
+        return stream;
+    }
+
+    @Override
+    public synchronized void reset() {
+        if (buf.length > MAX_RETAINED_SIZE) {
+            buf = new byte[INITIAL_SIZE];
+        }
+        super.reset();
+    }
+
+    ByteBuffer toByteBuffer() {
+        return ByteBuffer.wrap(buf, 0, count).asReadOnlyBuffer();
+    }
+}
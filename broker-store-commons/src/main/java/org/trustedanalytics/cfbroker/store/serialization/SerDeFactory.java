@@ -15,9 +15,19 @@
  */
 package org.trustedanalytics.cfbroker.store.serialization;
 
+import java.nio.ByteBuffer;
 
 public interface SerDeFactory {
     <T> RepositorySerializer<T> getSerializer();
 
     <T> RepositoryDeserializer<T> getDeserializer(Class<T> type);
+
+    /**
+     * Serializer for backends accepting {@link ByteBuffer}. Factories that can write into pooled
+     * buffers override it to avoid allocating a new array per call.
+     */
+    default <T> BufferSerializer<T> getBufferSerializer() {
+        RepositorySerializer<T> serializer = getSerializer();
+        return t -> ByteBuffer.wrap(serializer.serialize(t)).asReadOnlyBuffer();
+    }
 }
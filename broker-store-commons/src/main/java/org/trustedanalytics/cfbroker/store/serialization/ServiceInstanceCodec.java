@@ -0,0 +1,106 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.cfbroker.store.serialization;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import org.cloudfoundry.community.servicebroker.model.CreateServiceInstanceRequest;
+import org.cloudfoundry.community.servicebroker.model.ServiceInstance;
+
+import java.io.IOException;
+import java.util.function.UnaryOperator;
+
+/**
+ * Instances with last operation are left to Jackson.
+ */
+class ServiceInstanceCodec implements ModelCodec<ServiceInstance> {
+
+    private final UnaryOperator<String> interner;
+
+    ServiceInstanceCodec(UnaryOperator<String> interner) {
+        this.interner = interner;
+    }
+
+    @Override
+    public boolean write(ServiceInstance instance, JsonGenerator generator) throws IOException {
+        if (instance.getServiceInstanceLastOperation() != null) {
+            return false;
+        }
+        generator.writeStartObject();
+        generator.writeStringField("service_instance_id", instance.getServiceInstanceId());
+        generator.writeStringField("service_id", instance.getServiceDefinitionId());
+        generator.writeStringField("plan_id", instance.getPlanId());
+        generator.writeStringField("organization_guid", instance.getOrganizationGuid());
+        generator.writeStringField("space_guid", instance.getSpaceGuid());
+        generator.writeStringField("dashboard_url", instance.getDashboardUrl());
+        generator.writeNullField("last_operation");
+        generator.writeEndObject();
+        return true;
+    }
+
+    @Override
+    public ServiceInstance read(JsonParser parser) throws IOException {
+        if (parser.nextToken() != JsonToken.START_OBJECT) {
+            return null;
+        }
+        String id = null;
+        String serviceId = null;
+        String planId = null;
+        String organizationGuid = null;
+        String spaceGuid = null;
+        String dashboardUrl = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.getCurrentName();
+            JsonToken token = parser.nextToken();
+            if (token != JsonToken.VALUE_STRING && token != JsonToken.VALUE_NULL) {
+                return null;
+            }
+            String value = token == JsonToken.VALUE_NULL ? null : parser.getText();
+            switch (name) {
+                case "service_instance_id":
+                    id = value;
+                    break;
+                case "service_id":
+                    serviceId = interner.apply(value);
+                    break;
+                case "plan_id":
+                    planId = interner.apply(value);
+                    break;
+                case "organization_guid":
+                    organizationGuid = interner.apply(value);
+                    break;
+                case "space_guid":
+                    spaceGuid = interner.apply(value);
+                    break;
+                case "dashboard_url":
+                    dashboardUrl = interner.apply(value);
+                    break;
+                case "last_operation":
+                    if (value != null) {
+                        return null;
+                    }
+                    break;
+                default:
+                    return null;
+            }
+        }
+        return new ServiceInstance(
+            new CreateServiceInstanceRequest(serviceId, planId, organizationGuid, spaceGuid)
+                .withServiceInstanceId(id))
+            .withDashboardUrl(dashboardUrl);
+    }
+}
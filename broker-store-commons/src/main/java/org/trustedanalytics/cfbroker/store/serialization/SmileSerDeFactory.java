@@ -0,0 +1,68 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.cfbroker.store.serialization;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+
+import java.io.ByteArrayOutputStream;
+
+/**
+ * Writes objects in binary Smile format, tagged with {@link PayloadFormat#SMILE}. Reads both Smile
+ * and untagged JSON payloads, so records saved with {@link JSONSerDeFactory} stay readable.
+ */
+public class SmileSerDeFactory implements SerDeFactory {
+
+    private static final SerDeFactory instance = new SmileSerDeFactory();
+
+    private final ObjectMapper smileMapper = new ObjectMapper(new SmileFactory());
+
+    private final ObjectMapper jsonMapper = new ObjectMapper();
+
+    private SmileSerDeFactory() {
+    }
+
+    public static SerDeFactory getInstance() {
+        return instance;
+    }
+
+    @Override
+    public <T> RepositorySerializer<T> getSerializer() {
+        return t -> {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            out.write(PayloadFormat.SMILE);
+            smileMapper.writeValue(out, t);
+            return out.toByteArray();
+        };
+    }
+
+    @Override
+    public <T> BufferSerializer<T> getBufferSerializer() {
+        return t -> {
+            ReusableOutputStream out = ReusableOutputStream.forCurrentThread();
+            out.write(PayloadFormat.SMILE);
+            smileMapper.writeValue(out, t);
+            return out.toByteBuffer();
+        };
+    }
+
+    @Override
+    public <T> RepositoryDeserializer<T> getDeserializer(Class<T> type) {
+        return t -> PayloadFormat.isTagged(t, PayloadFormat.SMILE)
+            ? smileMapper.readValue(t, 1, t.length - 1, type)
+            : jsonMapper.readValue(t, type);
+    }
+}
@@ -0,0 +1,128 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.cfbroker.store.serialization;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableMap;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Writes JSON records in an envelope carrying schema version: {@link PayloadFormat#VERSIONED} tag
+ * followed by 2-byte version. Records of older versions are upgraded on read with registered
+ * {@link RecordUpgrade}s, applied one version at a time. Untagged records written by
+ * {@link JSONSerDeFactory} are treated as version 0.
+ *
+ * Upgraded records aren't saved back on read, use {@link #getOutdatedDeserializer} with
+ * {@link org.trustedanalytics.cfbroker.store.migration.RecordRewriter} to persist them.
+ */
+public class VersionedSerDeFactory implements SerDeFactory {
+
+    static final int HEADER_LENGTH = 3;
+
+    private static final int MAX_VERSION = 0xFFFF;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    private final int currentVersion;
+
+    private final Map<Integer, RecordUpgrade> upgrades;
+
+    /**
+     * @param currentVersion version of newly written records
+     * @param upgrades upgrade from every older version (key) to the next one
+     */
+    public VersionedSerDeFactory(int currentVersion, Map<Integer, RecordUpgrade> upgrades) {
+        Preconditions.checkArgument(currentVersion >= 0 && currentVersion <= MAX_VERSION,
+            "Version must be in [0, 65535]");
+        for (int version = 0; version < currentVersion; version++) {
+            Preconditions.checkArgument(upgrades.containsKey(version),
+                "Missing upgrade from version " + version);
+        }
+        this.currentVersion = currentVersion;
+        this.upgrades = ImmutableMap.copyOf(upgrades);
+    }
+
+    @Override
+    public <T> RepositorySerializer<T> getSerializer() {
+        return t -> {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            out.write(PayloadFormat.VERSIONED);
+            out.write(currentVersion >>> 8);
+            out.write(currentVersion);
+            mapper.writeValue(out, t);
+            return out.toByteArray();
+        };
+    }
+
+    @Override
+    public <T> RepositoryDeserializer<T> getDeserializer(Class<T> type) {
+        ObjectReader reader = mapper.reader(type);
+        return t -> {
+            int version = getVersion(t);
+            int offset = isVersioned(t) ? HEADER_LENGTH : 0;
+            if (version == currentVersion) {
+                return reader.readValue(t, offset, t.length - offset);
+            }
+            return mapper.treeToValue(upgrade(t, offset, version), type);
+        };
+    }
+
+    /**
+     * Deserializer returning null for records of the current version, and upgraded objects for
+     * records of older ones.
+     */
+    public <T> RepositoryDeserializer<T> getOutdatedDeserializer(Class<T> type) {
+        RepositoryDeserializer<T> deserializer = getDeserializer(type);
+        return t -> getVersion(t) == currentVersion ? null : deserializer.deserialize(t);
+    }
+
+    public int getCurrentVersion() {
+        return currentVersion;
+    }
+
+    private JsonNode upgrade(byte[] payload, int offset, int version) throws IOException {
+        if (version > currentVersion) {
+            throw new IOException("Record version " + version + " is newer than supported "
+                + currentVersion);
+        }
+        JsonNode record = mapper.readTree(mapper.getFactory()
+            .createParser(payload, offset, payload.length - offset));
+        for (int from = version; from < currentVersion; from++) {
+            record = upgrades.get(from).upgrade(record);
+        }
+        return record;
+    }
+
+    private static boolean isVersioned(byte[] payload) {
+        return PayloadFormat.isTagged(payload, PayloadFormat.VERSIONED);
+    }
+
+    private static int getVersion(byte[] payload) throws IOException {
+        if (!isVersioned(payload)) {
+            return 0;
+        }
+        if (payload.length < HEADER_LENGTH) {
+            throw new IOException("Truncated versioned record");
+        }
+        return (payload[1] & 0xFF) << 8 | (payload[2] & 0xFF);
+    }
+}
@@ -0,0 +1,96 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.cfbroker.store.cache;
+
+import org.junit.Test;
+import org.openjdk.jol.info.GraphLayout;
+import org.trustedanalytics.cfbroker.store.api.Location;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.not;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class CacheKeyTest {
+
+    private static final String INSTANCE_ID = "8c3b2a1e-0f4d-4e6a-9b7c-5d2e1f0a3b4c";
+
+    private static final String BINDING_ID = "f0e1d2c3-b4a5-4968-8776-655443322110";
+
+    @Test
+    public void of_sameGuidLocation_equalKeys() {
+        CacheKey first = CacheKey.of(Location.newInstance(BINDING_ID, INSTANCE_ID));
+        CacheKey second = CacheKey.of(Location.newInstance(new String(BINDING_ID), INSTANCE_ID));
+
+        assertThat(first, equalTo(second));
+        assertThat(first.hashCode(), equalTo(second.hashCode()));
+    }
+
+    @Test
+    public void of_guidWithAndWithoutParent_differentKeys() {
+        assertThat(CacheKey.of(Location.newInstance(BINDING_ID)),
+            not(equalTo(CacheKey.of(Location.newInstance(BINDING_ID, INSTANCE_ID)))));
+    }
+
+    @Test
+    public void of_uppercaseGuid_notEqualToLowercase() {
+        assertThat(CacheKey.of(Location.newInstance(INSTANCE_ID.toUpperCase())),
+            not(equalTo(CacheKey.of(Location.newInstance(INSTANCE_ID)))));
+    }
+
+    @Test
+    public void of_otherIds_equalKeysForEqualLocations() {
+        assertThat(CacheKey.of(Location.newInstance("binding", "instance")),
+            equalTo(CacheKey.of(Location.newInstance("binding", "instance"))));
+    }
+
+    @Test
+    public void childrenOf_guidParent_matchesChildrenWithAnyIds() {
+        assertTrue(CacheKey.childrenOf(INSTANCE_ID)
+            .test(CacheKey.of(Location.newInstance(BINDING_ID, INSTANCE_ID))));
+        assertTrue(CacheKey.childrenOf(INSTANCE_ID)
+            .test(CacheKey.of(Location.newInstance("binding", INSTANCE_ID))));
+        assertFalse(CacheKey.childrenOf(INSTANCE_ID)
+            .test(CacheKey.of(Location.newInstance(INSTANCE_ID))));
+        assertFalse(CacheKey.childrenOf(BINDING_ID)
+            .test(CacheKey.of(Location.newInstance(BINDING_ID, INSTANCE_ID))));
+    }
+
+    @Test
+    public void of_guidLocations_retainLessHeapThanLocations() {
+        List<Location> locations = new ArrayList<>();
+        List<CacheKey> keys = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            Location location = Location.newInstance(UUID.randomUUID().toString(),
+                UUID.randomUUID().toString());
+            locations.add(location);
+            keys.add(CacheKey.of(location));
+        }
+
+        long locationBytes = GraphLayout.parseInstance(locations.toArray()).totalSize() / 1000;
+        long keyBytes = GraphLayout.parseInstance(keys.toArray()).totalSize() / 1000;
+
+        System.out.println("Bytes retained per binding key: " + locationBytes
+            + " as location, " + keyBytes + " as cache key");
+        assertThat(keyBytes * 4, lessThan(locationBytes));
+    }
+}
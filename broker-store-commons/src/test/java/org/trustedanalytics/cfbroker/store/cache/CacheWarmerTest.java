@@ -0,0 +1,109 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.cfbroker.store.cache;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.trustedanalytics.cfbroker.store.api.BrokerStore;
+import org.trustedanalytics.cfbroker.store.api.Location;
+
+import java.io.IOException;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class CacheWarmerTest {
+
+    @Mock
+    private BrokerStore<String> delegate;
+
+    private CachingBrokerStore<String> cache;
+
+    @Before
+    public void setup() {
+        cache = new CachingBrokerStore<>(delegate);
+    }
+
+    @Test
+    public void start_scanFinished_cacheWarmAndReady() throws Exception {
+        CacheWarmer<String> warmer = new CacheWarmer<>(cache, consumer -> {
+            consumer.accept(Location.newInstance("1"), "first");
+            consumer.accept(Location.newInstance("2", "1"), "second");
+        }, 1, TimeUnit.MINUTES);
+
+        warmer.start();
+
+        assertTrue(warmer.awaitReady(10, TimeUnit.SECONDS));
+        assertThat(warmer.getLoadedCount(), equalTo(2));
+        assertThat(cache.getById(Location.newInstance("2", "1")).get(), equalTo("second"));
+        verifyZeroInteractions(delegate);
+    }
+
+    @Test
+    public void start_objectDeletedDuringScan_scannedValueNotCached() throws Exception {
+        CacheWarmer<String> warmer = new CacheWarmer<>(cache, consumer -> {
+            consumer.accept(Location.newInstance("1"), "first");
+            cache.deleteById(Location.newInstance("2"));
+            consumer.accept(Location.newInstance("2"), "deleted");
+        }, 1, TimeUnit.MINUTES);
+        when(delegate.getById(Location.newInstance("2"))).thenReturn(Optional.empty());
+
+        warmer.start();
+
+        assertTrue(warmer.awaitReady(10, TimeUnit.SECONDS));
+        assertFalse(cache.getById(Location.newInstance("2")).isPresent());
+    }
+
+    @Test
+    public void start_scanFails_readyAnyway() throws Exception {
+        CacheWarmer<String> warmer = new CacheWarmer<>(cache, consumer -> {
+            throw new IOException();
+        }, 1, TimeUnit.MINUTES);
+
+        warmer.start();
+
+        assertTrue(warmer.awaitReady(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void start_deadlinePassed_readyBeforeScanFinished() throws Exception {
+        CountDownLatch scanBlocked = new CountDownLatch(1);
+        CacheWarmer<String> warmer = new CacheWarmer<>(cache, consumer -> {
+            try {
+                scanBlocked.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, 50, TimeUnit.MILLISECONDS);
+
+        assertFalse(warmer.isReady());
+        warmer.start();
+
+        assertTrue(warmer.awaitReady(10, TimeUnit.SECONDS));
+        scanBlocked.countDown();
+    }
+}
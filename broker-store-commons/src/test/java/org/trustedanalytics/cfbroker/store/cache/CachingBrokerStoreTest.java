@@ -0,0 +1,262 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.cfbroker.store.cache;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.trustedanalytics.cfbroker.store.api.BrokerStore;
+import org.trustedanalytics.cfbroker.store.api.Location;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class CachingBrokerStoreTest {
+
+    private static final Location LOCATION = Location.newInstance("id", "parentId");
+    private static final String TEST_OBJECT = "whatever";
+
+    @Mock
+    private BrokerStore<String> delegate;
+
+    private CachingBrokerStore<String> store;
+
+    @Before
+    public void setup() {
+        store = new CachingBrokerStore<>(delegate);
+    }
+
+    @Test
+    public void getById_calledTwice_readsDelegateOnce() throws Exception {
+        when(delegate.getById(LOCATION)).thenReturn(Optional.of(TEST_OBJECT));
+
+        store.getById(LOCATION);
+        Optional<String> actual = store.getById(LOCATION);
+
+        assertThat(actual.get(), equalTo(TEST_OBJECT));
+        verify(delegate, times(1)).getById(LOCATION);
+    }
+
+    @Test
+    public void getById_objectNotExists_missIsNotCached() throws Exception {
+        when(delegate.getById(LOCATION)).thenReturn(Optional.empty());
+
+        store.getById(LOCATION);
+        assertFalse(store.getById(LOCATION).isPresent());
+
+        verify(delegate, times(2)).getById(LOCATION);
+    }
+
+    @Test
+    public void save_success_objectServedFromCache() throws Exception {
+        store.save(LOCATION, TEST_OBJECT);
+
+        assertThat(store.getById(LOCATION).get(), equalTo(TEST_OBJECT));
+        verify(delegate).save(LOCATION, TEST_OBJECT);
+        verify(delegate, times(0)).getById(LOCATION);
+    }
+
+    @Test
+    public void save_delegateThrowsException_objectNotCached() throws Exception {
+        doThrow(new IOException()).when(delegate).save(LOCATION, TEST_OBJECT);
+
+        try {
+            store.save(LOCATION, TEST_OBJECT);
+            fail("IOException expected");
+        } catch (IOException e) {
+            assertThat(store.size(), equalTo(0));
+        }
+    }
+
+    @Test
+    public void deleteById_cachedObject_removesFromCacheAndDelegate() throws Exception {
+        store.save(LOCATION, TEST_OBJECT);
+        when(delegate.deleteById(LOCATION)).thenReturn(Optional.of(TEST_OBJECT));
+        when(delegate.getById(LOCATION)).thenReturn(Optional.empty());
+
+        assertThat(store.deleteById(LOCATION).get(), equalTo(TEST_OBJECT));
+        assertFalse(store.getById(LOCATION).isPresent());
+    }
+
+    @Test
+    public void preload_objectAlreadyCached_keepsCachedValue() throws Exception {
+        store.save(LOCATION, TEST_OBJECT);
+        store.preload(LOCATION, "stale", store.invalidationEpoch());
+
+        assertThat(store.getById(LOCATION).get(), equalTo(TEST_OBJECT));
+    }
+
+    @Test
+    public void preload_emptyCache_objectServedFromCache() throws Exception {
+        store.preload(LOCATION, TEST_OBJECT, store.invalidationEpoch());
+
+        assertThat(store.getById(LOCATION).get(), equalTo(TEST_OBJECT));
+        verifyZeroInteractions(delegate);
+    }
+
+    @Test
+    public void preload_invalidatedSinceEpoch_objectNotCached() throws Exception {
+        long epoch = store.invalidationEpoch();
+        store.deleteById(LOCATION);
+        store.preload(LOCATION, "deleted", epoch);
+
+        assertThat(store.size(), equalTo(0));
+    }
+
+    @Test
+    public void getById_leaseExpired_readsDelegateAgain() throws Exception {
+        AtomicLong now = new AtomicLong();
+        store = new CachingBrokerStore<>(delegate, 10, now::get);
+        when(delegate.getById(LOCATION)).thenReturn(Optional.of(TEST_OBJECT));
+
+        store.getById(LOCATION);
+        now.set(5);
+        store.getById(LOCATION);
+        now.set(10);
+        store.getById(LOCATION);
+
+        verify(delegate, times(2)).getById(LOCATION);
+    }
+
+    @Test
+    public void invalidate_cachedObject_readsDelegateAgain() throws Exception {
+        store.save(LOCATION, TEST_OBJECT);
+        when(delegate.getById(LOCATION)).thenReturn(Optional.of("changed"));
+
+        store.invalidate(LOCATION);
+
+        assertThat(store.getById(LOCATION).get(), equalTo("changed"));
+    }
+
+    @Test
+    public void invalidateChildren_cachedBindings_removesOnlyChildren() throws Exception {
+        Location instance = Location.newInstance("parentId");
+        store.save(LOCATION, TEST_OBJECT);
+        store.save(instance, TEST_OBJECT);
+
+        store.invalidateChildren("parentId");
+
+        assertThat(store.size(), equalTo(1));
+        assertThat(store.getById(instance).get(), equalTo(TEST_OBJECT));
+    }
+
+    @Test
+    public void invalidateChildren_guidIds_removesOnlyChildren() throws Exception {
+        String instanceId = "8c3b2a1e-0f4d-4e6a-9b7c-5d2e1f0a3b4c";
+        Location instance = Location.newInstance(instanceId);
+        Location binding = Location.newInstance("f0e1d2c3-b4a5-4968-8776-655443322110", instanceId);
+        store.save(instance, TEST_OBJECT);
+        store.save(binding, TEST_OBJECT);
+
+        store.invalidateChildren(instanceId);
+
+        assertThat(store.size(), equalTo(1));
+        assertThat(store.getById(Location.newInstance(new String(instanceId))).get(),
+            equalTo(TEST_OBJECT));
+    }
+
+    @Test
+    public void getById_invalidatedDuringLoad_loadedValueNotCached() throws Exception {
+        doAnswer(invocation -> {
+            store.invalidate(LOCATION);
+            return Optional.of("stale");
+        }).when(delegate).getById(LOCATION);
+
+        assertThat(store.getById(LOCATION).get(), equalTo("stale"));
+        assertThat(store.size(), equalTo(0));
+    }
+
+    @Test
+    public void save_otherObjectInvalidatedDuringSave_previousValueNotServed() throws Exception {
+        store.save(LOCATION, "previous");
+        doAnswer(invocation -> {
+            store.invalidate(Location.newInstance("other"));
+            return null;
+        }).when(delegate).save(LOCATION, TEST_OBJECT);
+        when(delegate.getById(LOCATION)).thenReturn(Optional.of(TEST_OBJECT));
+
+        store.save(LOCATION, TEST_OBJECT);
+
+        assertThat(store.getById(LOCATION).get(), equalTo(TEST_OBJECT));
+    }
+
+    @Test
+    public void getById_pastRefreshAheadPoint_servesCachedValueAndReloadsInBackground()
+        throws Exception {
+        AtomicLong now = new AtomicLong();
+        List<Runnable> refreshes = new ArrayList<>();
+        store = new CachingBrokerStore<>(delegate, 10, 0.5, 0, refreshes::add, now::get);
+        when(delegate.getById(LOCATION)).thenReturn(Optional.of(TEST_OBJECT), Optional.of("changed"));
+
+        store.getById(LOCATION);
+        now.set(6);
+        assertThat(store.getById(LOCATION).get(), equalTo(TEST_OBJECT));
+        store.getById(LOCATION);
+        assertThat(refreshes.size(), equalTo(1));
+
+        refreshes.get(0).run();
+        now.set(12);
+        assertThat(store.getById(LOCATION).get(), equalTo("changed"));
+        verify(delegate, times(2)).getById(LOCATION);
+    }
+
+    @Test
+    public void getById_beforeRefreshAheadPoint_noReloadScheduled() throws Exception {
+        AtomicLong now = new AtomicLong();
+        List<Runnable> refreshes = new ArrayList<>();
+        store = new CachingBrokerStore<>(delegate, 10, 0.5, 0, refreshes::add, now::get);
+        when(delegate.getById(LOCATION)).thenReturn(Optional.of(TEST_OBJECT));
+
+        store.getById(LOCATION);
+        now.set(4);
+        store.getById(LOCATION);
+
+        assertThat(refreshes.size(), equalTo(0));
+    }
+
+    @Test
+    public void refresh_invalidatedMeanwhile_reloadedValueNotCached() throws Exception {
+        AtomicLong now = new AtomicLong();
+        List<Runnable> refreshes = new ArrayList<>();
+        store = new CachingBrokerStore<>(delegate, 10, 0.5, 0, refreshes::add, now::get);
+        when(delegate.getById(LOCATION)).thenReturn(Optional.of(TEST_OBJECT));
+
+        store.getById(LOCATION);
+        now.set(6);
+        store.getById(LOCATION);
+        store.invalidate(LOCATION);
+        refreshes.get(0).run();
+
+        assertThat(store.size(), equalTo(0));
+    }
+}
@@ -0,0 +1,64 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.cfbroker.store.encryption;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+public class DataKeyManagerTest {
+
+    private final KeyEncryptionService keyService = new LocalKeyEncryptionService(new byte[32]);
+
+    @Test
+    public void currentKey_withinRotationPeriod_returnsSameKey() throws Exception {
+        AtomicLong now = new AtomicLong();
+        DataKeyManager manager = new DataKeyManager(keyService, 10, now::get);
+
+        DataKey first = manager.currentKey();
+        now.set(9);
+
+        assertThat(manager.currentKey(), sameInstance(first));
+    }
+
+    @Test
+    public void currentKey_afterRotationPeriod_returnsNewKey() throws Exception {
+        AtomicLong now = new AtomicLong();
+        DataKeyManager manager = new DataKeyManager(keyService, 10, now::get);
+
+        DataKey first = manager.currentKey();
+        now.set(10);
+
+        assertThat(manager.currentKey(), not(sameInstance(first)));
+    }
+
+    @Test
+    public void decryptKey_rotatedKey_stillDecrypted() throws Exception {
+        AtomicLong now = new AtomicLong();
+        DataKeyManager manager = new DataKeyManager(keyService, 10, now::get);
+        DataKey first = manager.currentKey();
+        now.set(20);
+        manager.currentKey();
+
+        assertThat(manager.decryptKey(first.getEncryptedKey()).getEncoded(),
+            equalTo(first.getKey().getEncoded()));
+    }
+}
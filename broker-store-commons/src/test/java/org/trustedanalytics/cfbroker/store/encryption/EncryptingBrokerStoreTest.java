@@ -0,0 +1,209 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.cfbroker.store.encryption;
+
+import org.cloudfoundry.community.servicebroker.model.CreateServiceInstanceRequest;
+import org.cloudfoundry.community.servicebroker.model.ServiceInstance;
+import org.junit.Before;
+import org.junit.Test;
+import org.trustedanalytics.cfbroker.store.api.BrokerStore;
+import org.trustedanalytics.cfbroker.store.api.Location;
+import org.trustedanalytics.cfbroker.store.serialization.JSONSerDeFactory;
+import org.trustedanalytics.cfbroker.store.serialization.PayloadFormat;
+import org.trustedanalytics.cfbroker.store.serialization.RepositoryDeserializer;
+import org.trustedanalytics.cfbroker.store.serialization.RepositorySerializer;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.not;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+public class EncryptingBrokerStoreTest {
+
+    private static final Location LOCATION = Location.newInstance("id", "parentId");
+
+    private final Map<Location, byte[]> records = new HashMap<>();
+
+    private KeyEncryptionService keyService;
+
+    private EncryptingBrokerStore<String> store;
+
+    @Before
+    public void setup() {
+        keyService = spy(new LocalKeyEncryptionService(new byte[32]));
+        store = new EncryptingBrokerStore<>(new MapStore(), String::getBytes, String::new,
+            new DataKeyManager(keyService, 1, TimeUnit.HOURS));
+    }
+
+    @Test
+    public void save_plaintext_storedEncrypted() throws Exception {
+        store.save(LOCATION, "secret credentials");
+
+        byte[] stored = records.get(LOCATION);
+        assertThat(stored[0], equalTo(PayloadFormat.AES_GCM));
+        assertThat(new String(stored), not(containsString("secret")));
+        assertThat(store.getById(LOCATION).get(), equalTo("secret credentials"));
+    }
+
+    @Test
+    public void save_manyRecords_dataKeyGeneratedOnce() throws Exception {
+        for (int i = 0; i < 10; i++) {
+            store.save(Location.newInstance(Integer.toString(i)), "secret");
+            store.getById(Location.newInstance(Integer.toString(i)));
+        }
+
+        verify(keyService, times(1)).generateDataKey();
+        verify(keyService, never()).decryptDataKey(any(byte[].class));
+    }
+
+    @Test(expected = IOException.class)
+    public void getById_recordCopiedFromOtherLocation_throwsIOException() throws Exception {
+        store.save(LOCATION, "secret");
+        records.put(Location.newInstance("other"), records.get(LOCATION));
+
+        store.getById(Location.newInstance("other"));
+    }
+
+    @Test(expected = IOException.class)
+    public void getById_plainRecord_throwsIOException() throws Exception {
+        records.put(LOCATION, "{\"plain\":true}".getBytes());
+
+        store.getById(LOCATION);
+    }
+
+    @Test
+    public void getById_plainRecordWhileMigrating_returnedAsIs() throws Exception {
+        store = new EncryptingBrokerStore<>(new MapStore(), String::getBytes, String::new,
+            new DataKeyManager(keyService, 1, TimeUnit.HOURS), true);
+        records.put(LOCATION, "{\"plain\":true}".getBytes());
+
+        assertThat(store.getById(LOCATION).get(), equalTo("{\"plain\":true}"));
+    }
+
+    @Test
+    public void getById_recordWrittenByOtherReplica_decryptsDataKey() throws Exception {
+        store.save(LOCATION, "secret");
+        EncryptingBrokerStore<String> otherReplica = new EncryptingBrokerStore<>(new MapStore(),
+            String::getBytes, String::new, new DataKeyManager(keyService, 1, TimeUnit.HOURS));
+
+        assertThat(otherReplica.getById(LOCATION).get(), equalTo("secret"));
+    }
+
+    @Test
+    public void save_serviceInstances_throughputWithinSmallFactorOfPlaintext() throws Exception {
+        RepositorySerializer<ServiceInstance> serializer = JSONSerDeFactory.getInstance().getSerializer();
+        RepositoryDeserializer<ServiceInstance> deserializer =
+            JSONSerDeFactory.getInstance().getDeserializer(ServiceInstance.class);
+        BrokerStore<byte[]> raw = new MapStore();
+        BrokerStore<ServiceInstance> plain = new PlainStore<>(raw, serializer, deserializer);
+        BrokerStore<ServiceInstance> encrypted = new EncryptingBrokerStore<>(raw, serializer,
+            deserializer, new DataKeyManager(keyService, 1, TimeUnit.HOURS));
+        ServiceInstance instance = new ServiceInstance(
+            new CreateServiceInstanceRequest("serviceId", "planId", "organizationGuid", "spaceGuid")
+                .withServiceInstanceId("instance"));
+
+        long plainNanos = Long.MAX_VALUE;
+        long encryptedNanos = Long.MAX_VALUE;
+        for (int round = 0; round < 10; round++) {
+            plainNanos = Math.min(plainNanos, nanosPerRoundTrip(plain, instance));
+            encryptedNanos = Math.min(encryptedNanos, nanosPerRoundTrip(encrypted, instance));
+        }
+
+        System.out.println("Save and read of a service instance: " + plainNanos
+            + " ns in plaintext, " + encryptedNanos + " ns encrypted");
+        assertThat(encryptedNanos, lessThan(plainNanos * 10));
+    }
+
+    private static long nanosPerRoundTrip(BrokerStore<ServiceInstance> store,
+        ServiceInstance instance) throws IOException {
+
+        int calls = 20000;
+        long start = System.nanoTime();
+        for (int i = 0; i < calls; i++) {
+            store.save(LOCATION, instance);
+            store.getById(LOCATION);
+        }
+        return (System.nanoTime() - start) / calls;
+    }
+
+    private static class PlainStore<T> implements BrokerStore<T> {
+
+        private final BrokerStore<byte[]> delegate;
+
+        private final RepositorySerializer<T> serializer;
+
+        private final RepositoryDeserializer<T> deserializer;
+
+        PlainStore(BrokerStore<byte[]> delegate, RepositorySerializer<T> serializer,
+            RepositoryDeserializer<T> deserializer) {
+
+            this.delegate = delegate;
+            this.serializer = serializer;
+            this.deserializer = deserializer;
+        }
+
+        @Override
+        public Optional<T> getById(Location location) throws IOException {
+            Optional<byte[]> payload = delegate.getById(location);
+            return payload.isPresent()
+                ? Optional.ofNullable(deserializer.deserialize(payload.get()))
+                : Optional.empty();
+        }
+
+        @Override
+        public void save(Location location, T t) throws IOException {
+            delegate.save(location, serializer.serialize(t));
+        }
+
+        @Override
+        public Optional<T> deleteById(Location location) throws IOException {
+            Optional<byte[]> payload = delegate.deleteById(location);
+            return payload.isPresent()
+                ? Optional.ofNullable(deserializer.deserialize(payload.get()))
+                : Optional.empty();
+        }
+    }
+
+    private class MapStore implements BrokerStore<byte[]> {
+
+        @Override
+        public Optional<byte[]> getById(Location location) {
+            return Optional.ofNullable(records.get(location));
+        }
+
+        @Override
+        public void save(Location location, byte[] data) {
+            records.put(location, data);
+        }
+
+        @Override
+        public Optional<byte[]> deleteById(Location location) {
+            return Optional.ofNullable(records.remove(location));
+        }
+    }
+}
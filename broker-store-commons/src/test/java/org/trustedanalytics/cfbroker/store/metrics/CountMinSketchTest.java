@@ -0,0 +1,60 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.cfbroker.store.metrics;
+
+import org.junit.Test;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.junit.Assert.assertThat;
+
+public class CountMinSketchTest {
+
+    @Test
+    public void add_keyAddedManyTimes_estimateNotBelowCount() {
+        CountMinSketch sketch = new CountMinSketch(64, 4);
+        for (int i = 0; i < 1000; i++) {
+            sketch.add("key" + (i % 100));
+        }
+        for (int i = 0; i < 100; i++) {
+            sketch.add("hot");
+        }
+
+        assertThat(sketch.estimate("hot"), greaterThanOrEqualTo(100L));
+    }
+
+    @Test
+    public void add_noCollisions_returnsExactCount() {
+        CountMinSketch sketch = new CountMinSketch(1024, 4);
+
+        sketch.add("key");
+        sketch.add("key");
+
+        assertThat(sketch.add("key"), equalTo(3L));
+    }
+
+    @Test
+    public void decay_countedKey_halvesEstimate() {
+        CountMinSketch sketch = new CountMinSketch(1024, 4);
+        for (int i = 0; i < 10; i++) {
+            sketch.add("key");
+        }
+
+        sketch.decay();
+
+        assertThat(sketch.estimate("key"), equalTo(5L));
+    }
+}
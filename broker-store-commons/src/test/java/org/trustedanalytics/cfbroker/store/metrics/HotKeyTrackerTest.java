@@ -0,0 +1,55 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.cfbroker.store.metrics;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+public class HotKeyTrackerTest {
+
+    @Test
+    public void getTopKeys_skewedTraffic_returnsMostFrequentKeysInOrder() {
+        HotKeyTracker<String> tracker = new HotKeyTracker<>(2, 1024, 4);
+        for (int i = 0; i < 100; i++) {
+            tracker.add("cold" + i);
+            if (i % 2 == 0) {
+                tracker.add("warm");
+            }
+            tracker.add("hot");
+        }
+
+        assertThat(new ArrayList<>(tracker.getTopKeys().keySet()),
+            equalTo(Arrays.asList("hot", "warm")));
+        assertThat(tracker.getTopKeys().get("hot"), equalTo(100L));
+    }
+
+    @Test
+    public void decay_trackedKeys_halvesCounts() {
+        HotKeyTracker<String> tracker = new HotKeyTracker<>(2, 1024, 4);
+        for (int i = 0; i < 10; i++) {
+            tracker.add("hot");
+        }
+
+        tracker.decay();
+
+        assertThat(tracker.getTopKeys().get("hot"), equalTo(5L));
+    }
+}
@@ -0,0 +1,86 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.cfbroker.store.migration;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.trustedanalytics.cfbroker.store.api.BrokerStore;
+import org.trustedanalytics.cfbroker.store.api.Location;
+
+import java.util.Optional;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class RecordRewriterTest {
+
+    private static final Location OUTDATED = Location.newInstance("outdated");
+    private static final Location CURRENT = Location.newInstance("current");
+
+    @Mock
+    private BrokerStore<String> store;
+
+    @Test
+    public void rewriteAll_outdatedAndCurrentRecords_savesOnlyOutdatedOnes() throws Exception {
+        when(store.getById(OUTDATED)).thenReturn(Optional.of("upgraded"));
+        RecordRewriter<String> rewriter = new RecordRewriter<>(consumer -> {
+            consumer.accept(OUTDATED, "upgraded");
+            consumer.accept(CURRENT, null);
+        }, store, 1000);
+
+        rewriter.rewriteAll();
+
+        verify(store).save(OUTDATED, "upgraded");
+        verify(store, never()).save(eq(CURRENT), anyString());
+        assertThat(rewriter.getRewrittenCount(), equalTo(1));
+        assertThat(rewriter.isFinished(), equalTo(true));
+    }
+
+    @Test
+    public void rewriteAll_recordDeletedMeanwhile_notSaved() throws Exception {
+        when(store.getById(OUTDATED)).thenReturn(Optional.empty());
+        RecordRewriter<String> rewriter =
+            new RecordRewriter<>(consumer -> consumer.accept(OUTDATED, "upgraded"), store, 1000);
+
+        rewriter.rewriteAll();
+
+        verify(store, never()).save(any(Location.class), anyString());
+    }
+
+    @Test
+    public void rewriteAll_rateLimited_takesAtLeastIntervalPerRecord() throws Exception {
+        when(store.getById(any(Location.class))).thenReturn(Optional.of("upgraded"));
+        RecordRewriter<String> rewriter = new RecordRewriter<>(consumer -> {
+            for (int i = 0; i < 5; i++) {
+                consumer.accept(Location.newInstance(Integer.toString(i)), "upgraded");
+            }
+        }, store, 50);
+
+        long start = System.nanoTime();
+        rewriter.rewriteAll();
+
+        assertThat((System.nanoTime() - start) >= 4 * 20_000_000L, equalTo(true));
+    }
+}
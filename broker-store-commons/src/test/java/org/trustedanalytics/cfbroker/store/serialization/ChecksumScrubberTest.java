@@ -0,0 +1,44 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.cfbroker.store.serialization;
+
+import org.junit.Test;
+import org.trustedanalytics.cfbroker.store.api.Location;
+
+import java.util.Collections;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+public class ChecksumScrubberTest {
+
+    @Test
+    public void scrub_mixedRecords_reportsDamagedLocations() throws Exception {
+        Crc32cCodec codec = new Crc32cCodec();
+        byte[] damaged = codec.encode("{\"id\":\"2\"}".getBytes());
+        damaged[2] ^= 1;
+
+        ChecksumScrubber.Result result = new ChecksumScrubber().scrub(consumer -> {
+            consumer.accept(Location.newInstance("1"), codec.encode("{\"id\":\"1\"}".getBytes()));
+            consumer.accept(Location.newInstance("2"), damaged);
+            consumer.accept(Location.newInstance("3"), "{\"id\":\"3\"}".getBytes());
+        });
+
+        assertThat(result.getVerified(), equalTo(1));
+        assertThat(result.getUnprotected(), equalTo(1));
+        assertThat(result.getDamaged(), equalTo(Collections.singletonList(Location.newInstance("2"))));
+    }
+}
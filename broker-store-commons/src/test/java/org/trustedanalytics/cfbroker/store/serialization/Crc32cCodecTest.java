@@ -0,0 +1,67 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.cfbroker.store.serialization;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+public class Crc32cCodecTest {
+
+    private final Crc32cCodec codec = new Crc32cCodec();
+
+    @Test
+    public void encode_checkValue_appendsStandardCrc32c() throws Exception {
+        byte[] encoded = codec.encode("123456789".getBytes());
+
+        assertThat(encoded[0], equalTo(PayloadFormat.CRC32C));
+        assertThat(DeflateCodec.readInt(encoded, encoded.length - 4), equalTo(0xE3069283));
+    }
+
+    @Test
+    public void decode_intactPayload_returnsOriginal() throws Exception {
+        byte[] payload = "{\"id\":\"1\"}".getBytes();
+
+        assertThat(codec.decode(codec.encode(payload)), equalTo(payload));
+    }
+
+    @Test(expected = IOException.class)
+    public void decode_damagedPayload_throwsIOException() throws Exception {
+        byte[] encoded = codec.encode("{\"id\":\"1\"}".getBytes());
+        encoded[3] ^= 1;
+
+        codec.decode(encoded);
+    }
+
+    @Test(expected = IOException.class)
+    public void decode_truncatedPayload_throwsIOException() throws Exception {
+        byte[] encoded = codec.encode("{\"id\":\"1\"}".getBytes());
+
+        codec.decode(Arrays.copyOf(encoded, encoded.length - 2));
+    }
+
+    @Test
+    public void decode_untaggedPayload_returnsPayload() throws Exception {
+        byte[] payload = "{\"id\":\"1\"}".getBytes();
+
+        assertThat(codec.decode(payload), sameInstance(payload));
+    }
+}
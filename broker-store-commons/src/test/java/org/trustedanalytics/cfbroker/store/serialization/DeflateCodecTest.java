@@ -0,0 +1,65 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.cfbroker.store.serialization;
+
+import com.google.common.base.Strings;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+public class DeflateCodecTest {
+
+    private static final byte[] LARGE_PAYLOAD =
+        ("{\"credentials\":\"" + Strings.repeat("abcdefgh", 200) + "\"}").getBytes();
+
+    private final DeflateCodec codec = new DeflateCodec(1024);
+
+    @Test
+    public void encode_payloadAboveThreshold_compressesAndTags() throws Exception {
+        byte[] encoded = codec.encode(LARGE_PAYLOAD);
+
+        assertThat(encoded[0], equalTo(PayloadFormat.DEFLATE));
+        assertThat(encoded.length, lessThan(LARGE_PAYLOAD.length));
+        assertThat(codec.decode(encoded), equalTo(LARGE_PAYLOAD));
+    }
+
+    @Test
+    public void encode_payloadBelowThreshold_returnsPayload() throws Exception {
+        byte[] payload = "{\"id\":\"1\"}".getBytes();
+
+        assertThat(codec.encode(payload), sameInstance(payload));
+    }
+
+    @Test
+    public void decode_untaggedPayload_returnsPayload() throws Exception {
+        byte[] payload = "{\"id\":\"1\"}".getBytes();
+
+        assertThat(codec.decode(payload), sameInstance(payload));
+    }
+
+    @Test(expected = IOException.class)
+    public void decode_truncatedPayload_throwsIOException() throws Exception {
+        byte[] encoded = codec.encode(LARGE_PAYLOAD);
+
+        codec.decode(Arrays.copyOf(encoded, encoded.length / 2));
+    }
+}
@@ -0,0 +1,173 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.cfbroker.store.serialization;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.trustedanalytics.cfbroker.store.api.BrokerStore;
+import org.trustedanalytics.cfbroker.store.api.Location;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+public class DictionaryDeflateCodecTest {
+
+    private final Map<Location, byte[]> records = new HashMap<>();
+
+    private List<byte[]> samples;
+
+    @Before
+    public void setup() {
+        samples = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            samples.add(getRecord(i));
+        }
+    }
+
+    @Test
+    public void encode_smallRecord_shrinksSeveralTimes() throws Exception {
+        DictionaryDeflateCodec codec =
+            new DictionaryDeflateCodec(DictionaryTrainer.train(1, samples, 4096));
+        byte[] record = getRecord(100);
+
+        byte[] encoded = codec.encode(record);
+
+        assertThat(encoded[0], equalTo(PayloadFormat.DICTIONARY_DEFLATE));
+        assertThat(encoded.length * 3, lessThan(record.length));
+        assertThat(codec.decode(encoded), equalTo(record));
+    }
+
+    @Test
+    public void decode_payloadCompressedWithRotatedDictionary_returnsOriginal() throws Exception {
+        DictionaryDeflateCodec codec =
+            new DictionaryDeflateCodec(DictionaryTrainer.train(1, samples, 4096));
+        byte[] encoded = codec.encode(getRecord(100));
+
+        codec.rotate(DictionaryTrainer.train(2, samples.subList(0, 5), 1024));
+
+        assertThat(codec.decode(encoded), equalTo(getRecord(100)));
+        assertThat(codec.encode(getRecord(100))[2], equalTo((byte) 2));
+    }
+
+    @Test(expected = IOException.class)
+    public void decode_unknownDictionary_throwsIOException() throws Exception {
+        byte[] encoded = new DictionaryDeflateCodec(DictionaryTrainer.train(1, samples, 4096))
+            .encode(getRecord(100));
+
+        new DictionaryDeflateCodec(DictionaryTrainer.train(2, samples, 4096)).decode(encoded);
+    }
+
+    @Test
+    public void decode_untaggedPayload_returnsPayload() throws Exception {
+        DictionaryDeflateCodec codec =
+            new DictionaryDeflateCodec(DictionaryTrainer.train(1, samples, 4096));
+        byte[] record = getRecord(1);
+
+        assertThat(codec.decode(record), sameInstance(record));
+    }
+
+    @Test
+    public void load_dictionaryRotatedBeforeRestart_usesItAndReadsOlderPayloads() throws Exception {
+        CompressionDictionaryStore dictionaryStore = new CompressionDictionaryStore(new MapStore());
+        dictionaryStore.setCurrent(DictionaryTrainer.train(1, samples, 4096));
+        DictionaryDeflateCodec codec = DictionaryDeflateCodec.load(dictionaryStore);
+        byte[] encoded = codec.encode(getRecord(100));
+        codec.rotate(DictionaryTrainer.train(2, samples.subList(0, 5), 1024));
+
+        DictionaryDeflateCodec restarted = DictionaryDeflateCodec.load(dictionaryStore);
+
+        assertThat(restarted.decode(encoded), equalTo(getRecord(100)));
+        assertThat(restarted.encode(getRecord(100))[2], equalTo((byte) 2));
+    }
+
+    @Test
+    public void decode_dictionaryRotatedByOtherReplica_readsItFromStore() throws Exception {
+        CompressionDictionaryStore dictionaryStore = new CompressionDictionaryStore(new MapStore());
+        dictionaryStore.setCurrent(DictionaryTrainer.train(1, samples, 4096));
+        DictionaryDeflateCodec replica = DictionaryDeflateCodec.load(dictionaryStore);
+        DictionaryDeflateCodec otherReplica = DictionaryDeflateCodec.load(dictionaryStore);
+
+        otherReplica.rotate(DictionaryTrainer.train(2, samples.subList(0, 5), 1024));
+
+        assertThat(replica.decode(otherReplica.encode(getRecord(100))), equalTo(getRecord(100)));
+    }
+
+    @Test(expected = IOException.class)
+    public void load_noCurrentDictionary_throwsIOException() throws Exception {
+        DictionaryDeflateCodec.load(new CompressionDictionaryStore(new MapStore()));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void save_differentDictionaryWithSavedId_throwsException() throws Exception {
+        CompressionDictionaryStore dictionaryStore = new CompressionDictionaryStore(new MapStore());
+        dictionaryStore.save(DictionaryTrainer.train(1, samples, 4096));
+
+        dictionaryStore.save(DictionaryTrainer.train(1, samples.subList(0, 5), 1024));
+    }
+
+    @Test
+    public void getOutdatedDeserializer_mixedPayloads_returnsOnlyOlderDictionaryRecords()
+        throws Exception {
+        DictionaryDeflateCodec codec =
+            new DictionaryDeflateCodec(DictionaryTrainer.train(1, samples, 4096));
+        byte[] old = codec.encode(getRecord(100));
+        codec.rotate(DictionaryTrainer.train(2, samples.subList(0, 5), 1024));
+        byte[] current = codec.encode(getRecord(101));
+        RepositoryDeserializer<byte[]> outdated = codec.getOutdatedDeserializer(codec::decode);
+
+        assertThat(outdated.deserialize(old), equalTo(getRecord(100)));
+        assertThat(outdated.deserialize(current), nullValue());
+        assertThat(outdated.deserialize(getRecord(102)), nullValue());
+    }
+
+    private static byte[] getRecord(int i) {
+        return ("{\"service_instance_id\":\"instance-" + i + "\","
+            + "\"service_id\":\"a2c9e5b2-0c1f-4a4e-8e2b-2f6a1d5e3c77\","
+            + "\"plan_id\":\"fd5d1f7b-d5c4-4d1a-b5a4-6c1e3a8f9b20\","
+            + "\"organization_guid\":\"0b4e6a32-5c2d-4f7e-9a1b-8d3c2e1f0a99\","
+            + "\"space_guid\":\"7c1d2e3f-4a5b-6c7d-8e9f-0a1b2c3d4e5f\","
+            + "\"dashboard_url\":\"https://dashboard.example.com/instances\","
+            + "\"last_operation\":null}").getBytes();
+    }
+
+    private class MapStore implements BrokerStore<byte[]> {
+
+        @Override
+        public Optional<byte[]> getById(Location location) {
+            return Optional.ofNullable(records.get(location));
+        }
+
+        @Override
+        public void save(Location location, byte[] data) {
+            records.put(location, data);
+        }
+
+        @Override
+        public Optional<byte[]> deleteById(Location location) {
+            return Optional.ofNullable(records.remove(location));
+        }
+    }
+}
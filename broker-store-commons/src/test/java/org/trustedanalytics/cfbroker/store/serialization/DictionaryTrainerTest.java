@@ -0,0 +1,60 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.cfbroker.store.serialization;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.not;
+import static org.junit.Assert.assertThat;
+
+public class DictionaryTrainerTest {
+
+    @Test
+    public void train_samplesWithUrls_keepsUrlsAndKeysWhole() throws Exception {
+        List<byte[]> samples = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            samples.add(("{\"dashboard_url\":\"https://console.example.com/dashboard\","
+                + "\"id\":\"instance" + i + "\"}").getBytes(StandardCharsets.UTF_8));
+        }
+
+        String dictionary = new String(DictionaryTrainer.train(1, samples, 1024).getData(),
+            StandardCharsets.UTF_8);
+
+        assertThat(dictionary, containsString("\"https://console.example.com/dashboard\""));
+        assertThat(dictionary, containsString("\"dashboard_url\":"));
+        assertThat(dictionary, not(containsString("instance0")));
+    }
+
+    @Test
+    public void train_escapedAndTruncatedSamples_tokensMatchSerializedForm() throws Exception {
+        List<byte[]> samples = new ArrayList<>();
+        samples.add("{\"name\":\"a \\\"quoted\\\" value\",\"size\":12345}".getBytes(StandardCharsets.UTF_8));
+        samples.add("{\"name\":\"a \\\"quoted\\\" value\",\"size\":12345}".getBytes(StandardCharsets.UTF_8));
+        samples.add("{\"name\":\"a \\\"quoted\\\" value\",\"si".getBytes(StandardCharsets.UTF_8));
+
+        String dictionary = new String(DictionaryTrainer.train(1, samples, 1024).getData(),
+            StandardCharsets.UTF_8);
+
+        assertThat(dictionary, containsString("\"a \\\"quoted\\\" value\""));
+        assertThat(dictionary, containsString("12345"));
+        assertThat(dictionary, containsString("\"name\":"));
+    }
+}
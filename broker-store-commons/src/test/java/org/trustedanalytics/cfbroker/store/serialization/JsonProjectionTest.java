@@ -0,0 +1,76 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.cfbroker.store.serialization;
+
+import com.google.common.collect.ImmutableMap;
+import org.cloudfoundry.community.servicebroker.model.CreateServiceInstanceRequest;
+import org.cloudfoundry.community.servicebroker.model.ServiceInstance;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+public class JsonProjectionTest {
+
+    private final JsonProjection projection = new JsonProjection("plan_id", "space_guid");
+
+    @Test
+    public void extract_jsonRecord_returnsChosenFields() throws Exception {
+        byte[] payload = JSONSerDeFactory.getInstance().<ServiceInstance>getSerializer()
+            .serialize(getServiceInstance());
+
+        assertThat(projection.extract(payload),
+            equalTo(ImmutableMap.of("plan_id", "planId", "space_guid", "spaceGuid")));
+    }
+
+    @Test
+    public void extract_smileRecord_returnsChosenFields() throws Exception {
+        byte[] payload = SmileSerDeFactory.getInstance().<ServiceInstance>getSerializer()
+            .serialize(getServiceInstance());
+
+        assertThat(projection.extract(payload),
+            equalTo(ImmutableMap.of("plan_id", "planId", "space_guid", "spaceGuid")));
+    }
+
+    @Test
+    public void extract_versionedRecord_returnsChosenFields() throws Exception {
+        byte[] payload = new VersionedSerDeFactory(0, Collections.emptyMap())
+            .<ServiceInstance>getSerializer().serialize(getServiceInstance());
+
+        assertThat(projection.extract(payload).get("plan_id"), equalTo("planId"));
+    }
+
+    @Test
+    public void extract_nestedAndNullValues_skipsNestedObjectsAndMapsNullValues() throws Exception {
+        byte[] payload =
+            "{\"credentials\":{\"plan_id\":\"nested\"},\"plan_id\":null,\"space_guid\":[1]}".getBytes();
+
+        Map<String, String> expected = new HashMap<>();
+        expected.put("plan_id", null);
+        expected.put("space_guid", null);
+        assertThat(projection.extract(payload), equalTo(expected));
+    }
+
+    private ServiceInstance getServiceInstance() {
+        return new ServiceInstance(
+            new CreateServiceInstanceRequest("serviceId", "planId", "organizationGuid", "spaceGuid")
+                .withServiceInstanceId("instanceId"));
+    }
+}
@@ -0,0 +1,201 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.cfbroker.store.serialization;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.ImmutableMap;
+import org.cloudfoundry.community.servicebroker.model.CreateServiceInstanceBindingRequest;
+import org.cloudfoundry.community.servicebroker.model.CreateServiceInstanceRequest;
+import org.cloudfoundry.community.servicebroker.model.ServiceInstance;
+import org.cloudfoundry.community.servicebroker.model.ServiceInstanceBinding;
+import org.junit.Test;
+import org.openjdk.jol.info.GraphLayout;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+public class ModelSerDeFactoryTest {
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    private final SerDeFactory factory = ModelSerDeFactory.getInstance();
+
+    private final SerDeFactory jsonFactory = JSONSerDeFactory.getInstance();
+
+    @Test
+    public void serialize_serviceInstance_sameJsonAsJackson() throws Exception {
+        assertSameJson(getServiceInstance().withDashboardUrl("http://dashboard"));
+    }
+
+    @Test
+    public void serialize_bindingRequest_sameJsonAsJackson() throws Exception {
+        assertSameJson(getBindingRequest());
+    }
+
+    @Test
+    public void serialize_binding_sameJsonAsJackson() throws Exception {
+        Map<String, Object> credentials = ImmutableMap.of("uri", "hdfs://nameservice/dir",
+            "port", 8020, "kerberos", ImmutableMap.of("enabled", true, "realms", Arrays.asList("A", "B")));
+        assertSameJson(new ServiceInstanceBinding("id", "instanceId", credentials, "syslog", "appGuid"));
+    }
+
+    @Test
+    public void deserialize_serviceInstanceWrittenByJackson_returnsEqualObject() throws Exception {
+        byte[] serialized = jsonFactory.<ServiceInstance>getSerializer()
+            .serialize(getServiceInstance().withDashboardUrl("http://dashboard"));
+
+        ServiceInstance actual = factory.getDeserializer(ServiceInstance.class).deserialize(serialized);
+
+        assertThat(actual.getServiceInstanceId(), equalTo("instanceId"));
+        assertThat(actual.getServiceDefinitionId(), equalTo("serviceId"));
+        assertThat(actual.getPlanId(), equalTo("planId"));
+        assertThat(actual.getOrganizationGuid(), equalTo("organizationGuid"));
+        assertThat(actual.getSpaceGuid(), equalTo("spaceGuid"));
+        assertThat(actual.getDashboardUrl(), equalTo("http://dashboard"));
+    }
+
+    @Test
+    public void deserialize_bindingRequestWrittenByJackson_returnsEqualObject() throws Exception {
+        byte[] serialized =
+            jsonFactory.<CreateServiceInstanceBindingRequest>getSerializer().serialize(getBindingRequest());
+
+        CreateServiceInstanceBindingRequest actual =
+            factory.getDeserializer(CreateServiceInstanceBindingRequest.class).deserialize(serialized);
+
+        assertThat(actual.getServiceDefinitionId(), equalTo("serviceId"));
+        assertThat(actual.getPlanId(), equalTo("planId"));
+        assertThat(actual.getAppGuid(), equalTo("appGuid"));
+    }
+
+    @Test
+    public void deserialize_unsupportedContent_fallsBackToJackson() throws Exception {
+        byte[] serialized = "{\"service_id\":\"serviceId\",\"plan_id\":5,\"app_guid\":\"appGuid\"}"
+            .getBytes();
+
+        CreateServiceInstanceBindingRequest actual =
+            factory.getDeserializer(CreateServiceInstanceBindingRequest.class).deserialize(serialized);
+
+        assertThat(actual.getPlanId(), equalTo("5"));
+        assertThat(actual.getAppGuid(), equalTo("appGuid"));
+    }
+
+    @Test
+    public void deserialize_binding_returnsCredentials() throws Exception {
+        Map<String, Object> credentials = ImmutableMap.of("uri", "hdfs://nameservice/dir",
+            "port", 8020, "secure", false);
+        byte[] serialized = factory.<ServiceInstanceBinding>getSerializer()
+            .serialize(new ServiceInstanceBinding("id", "instanceId", credentials, null, "appGuid"));
+
+        ServiceInstanceBinding actual =
+            factory.getDeserializer(ServiceInstanceBinding.class).deserialize(serialized);
+
+        assertThat(actual.getCredentials(), equalTo(credentials));
+    }
+
+    @Test
+    public void deserialize_interningInstance_repeatedIdentifiersShared() throws Exception {
+        SerDeFactory interning = ModelSerDeFactory.getInterningInstance(new StringInterner(100));
+        RepositoryDeserializer<ServiceInstance> deserializer =
+            interning.getDeserializer(ServiceInstance.class);
+        byte[] serialized = factory.<ServiceInstance>getSerializer()
+            .serialize(getServiceInstance().withDashboardUrl("http://dashboard"));
+
+        ServiceInstance first = deserializer.deserialize(serialized);
+        ServiceInstance second = deserializer.deserialize(serialized);
+
+        assertThat(first.getServiceDefinitionId(), sameInstance(second.getServiceDefinitionId()));
+        assertThat(first.getPlanId(), sameInstance(second.getPlanId()));
+        assertThat(first.getOrganizationGuid(), sameInstance(second.getOrganizationGuid()));
+        assertThat(first.getSpaceGuid(), sameInstance(second.getSpaceGuid()));
+        assertThat(first.getDashboardUrl(), sameInstance(second.getDashboardUrl()));
+    }
+
+    @Test
+    public void deserialize_interningInstanceUnsupportedContent_fallbackSharesIdentifiers()
+        throws Exception {
+        SerDeFactory interning = ModelSerDeFactory.getInterningInstance(new StringInterner(100));
+        RepositoryDeserializer<CreateServiceInstanceBindingRequest> deserializer =
+            interning.getDeserializer(CreateServiceInstanceBindingRequest.class);
+        byte[] serialized = "{\"service_id\":\"serviceId\",\"plan_id\":5,\"app_guid\":\"appGuid\"}"
+            .getBytes();
+
+        CreateServiceInstanceBindingRequest first = deserializer.deserialize(serialized);
+        CreateServiceInstanceBindingRequest second = deserializer.deserialize(serialized);
+
+        assertThat(first.getAppGuid(), sameInstance(second.getAppGuid()));
+        assertThat(first.getServiceDefinitionId(), sameInstance(second.getServiceDefinitionId()));
+    }
+
+    @Test
+    public void deserialize_interningInstance_retainsLessHeapPerInstance() throws Exception {
+        List<byte[]> records = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            String org = "0a1b2c3d-4e5f-4071-8293-a4b5c6d7e8f" + i % 10;
+            ServiceInstance instance = new ServiceInstance(
+                new CreateServiceInstanceRequest("9c2e4f1a-7b3d-4c5e-8f6a-1b2c3d4e5f60",
+                    "5d6e7f80-9a1b-4c2d-8e3f-4a5b6c7d8e9" + i % 3, org, org.replace('0', '1'))
+                    .withServiceInstanceId(UUID.randomUUID().toString()))
+                .withDashboardUrl("https://dashboard.example.com/");
+            records.add(factory.<ServiceInstance>getSerializer().serialize(instance));
+        }
+
+        long plainBytes = retainedPerInstance(factory, records);
+        long internedBytes = retainedPerInstance(
+            ModelSerDeFactory.getInterningInstance(new StringInterner(1000)), records);
+
+        System.out.println("Bytes retained per service instance: " + plainBytes
+            + " deserialized as is, " + internedBytes + " with interning");
+        assertThat(internedBytes * 2, lessThan(plainBytes));
+    }
+
+    private static long retainedPerInstance(SerDeFactory factory, List<byte[]> records)
+        throws Exception {
+        RepositoryDeserializer<ServiceInstance> deserializer =
+            factory.getDeserializer(ServiceInstance.class);
+        List<ServiceInstance> instances = new ArrayList<>();
+        for (byte[] record : records) {
+            instances.add(deserializer.deserialize(record));
+        }
+        return GraphLayout.parseInstance(instances.toArray()).totalSize() / instances.size();
+    }
+
+    private <T> void assertSameJson(T t) throws Exception {
+        byte[] expected = jsonFactory.<T>getSerializer().serialize(t);
+        byte[] actual = factory.<T>getSerializer().serialize(t);
+
+        assertThat(mapper.readTree(actual), equalTo(mapper.readTree(expected)));
+    }
+
+    private ServiceInstance getServiceInstance() {
+        return new ServiceInstance(
+            new CreateServiceInstanceRequest("serviceId", "planId", "organizationGuid", "spaceGuid")
+                .withServiceInstanceId("instanceId"));
+    }
+
+    private CreateServiceInstanceBindingRequest getBindingRequest() {
+        return new CreateServiceInstanceBindingRequest("serviceId", "planId", "appGuid")
+            .withBindingId("bindingId")
+            .withServiceInstanceId("instanceId");
+    }
+}
@@ -15,10 +15,23 @@
  */
 package org.trustedanalytics.cfbroker.store.serialization;
 
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.fasterxml.jackson.databind.ser.std.ToStringSerializer;
+import org.cloudfoundry.community.servicebroker.model.CreateServiceInstanceBindingRequest;
+import org.cloudfoundry.community.servicebroker.model.CreateServiceInstanceRequest;
+import org.cloudfoundry.community.servicebroker.model.ServiceInstance;
 import org.junit.Test;
 
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.util.concurrent.Callable;
+
 import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.sameInstance;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
 
 
 public class SerDeTest {
@@ -35,4 +48,149 @@ public class SerDeTest {
                 equalTo(deserialized));
     }
 
+    @Test
+    public void testSerDe_interningInstance_repeatedIdentifiersShared() throws Exception {
+        SerDeFactory factory = JSONSerDeFactory.getInterningInstance(new StringInterner(100));
+        byte[] first = factory.<ServiceInstance>getSerializer().serialize(getServiceInstance("1"));
+        byte[] second = factory.<ServiceInstance>getSerializer().serialize(getServiceInstance("2"));
+        RepositoryDeserializer<ServiceInstance> deserializer =
+                factory.getDeserializer(ServiceInstance.class);
+
+        ServiceInstance firstInstance = deserializer.deserialize(first);
+        ServiceInstance secondInstance = deserializer.deserialize(second);
+
+        assertThat(firstInstance.getPlanId(), sameInstance(secondInstance.getPlanId()));
+        assertThat(firstInstance.getOrganizationGuid(),
+                sameInstance(secondInstance.getOrganizationGuid()));
+        assertThat(firstInstance.getServiceInstanceId(), equalTo("1"));
+        assertThat(secondInstance.getServiceInstanceId(), equalTo("2"));
+    }
+
+    @Test
+    public void testSerDe_interningInstance_instanceIdsNotPooled() throws Exception {
+        StringInterner interner = new StringInterner(100);
+        SerDeFactory factory = JSONSerDeFactory.getInterningInstance(interner);
+        byte[] serialized = factory.<ServiceInstance>getSerializer().serialize(getServiceInstance("1"));
+
+        factory.getDeserializer(ServiceInstance.class).deserialize(serialized);
+
+        assertThat(interner.size(), equalTo(4));
+    }
+
+    private ServiceInstance getServiceInstance(String id) {
+        return new ServiceInstance(
+                new CreateServiceInstanceRequest("serviceId", "planId", "organizationGuid", "spaceGuid")
+                        .withServiceInstanceId(id));
+    }
+
+    @Test
+    public void testSerDe_bindingRequestDeserializedTwice_sameResult() throws Exception {
+        SerDeFactory factory = JSONSerDeFactory.getInstance();
+        byte[] serialized = factory.<CreateServiceInstanceBindingRequest>getSerializer().serialize(
+                new CreateServiceInstanceBindingRequest("serviceId", "planId", "appGuid"));
+
+        CreateServiceInstanceBindingRequest first =
+                factory.getDeserializer(CreateServiceInstanceBindingRequest.class).deserialize(serialized);
+        CreateServiceInstanceBindingRequest second =
+                factory.getDeserializer(CreateServiceInstanceBindingRequest.class).deserialize(serialized);
+
+        assertThat(first.getAppGuid(), equalTo("appGuid"));
+        assertThat(second.getPlanId(), equalTo(first.getPlanId()));
+    }
+
+    @Test
+    public void testSerDe_withModules_registeredSerializerUsed() throws Exception {
+        SimpleModule module = new SimpleModule("test");
+        module.addSerializer(Long.class, ToStringSerializer.instance);
+
+        byte[] serialized = JSONSerDeFactory.withModules(module).<Long>getSerializer().serialize(42L);
+
+        assertThat(new String(serialized), equalTo("\"42\""));
+    }
+
+    @Test
+    public void testSerDe_bufferSerializer_writesSameBytesAsSerializer() throws Exception {
+        SerDeFactory factory = JSONSerDeFactory.getInstance();
+        ServiceInstance instance = getServiceInstance("1");
+        byte[] expected = factory.<ServiceInstance>getSerializer().serialize(instance);
+
+        ByteBuffer buffer = factory.<ServiceInstance>getBufferSerializer().serialize(instance);
+
+        byte[] actual = new byte[buffer.remaining()];
+        buffer.get(actual);
+        assertThat(actual, equalTo(expected));
+    }
+
+    @Test
+    public void testSerDe_bufferSerializer_allocatesLessPerCallThanSerializer() throws Exception {
+        SerDeFactory factory = JSONSerDeFactory.getInstance();
+        ServiceInstance instance = getServiceInstance("1");
+        RepositorySerializer<ServiceInstance> serializer = factory.getSerializer();
+        BufferSerializer<ServiceInstance> bufferSerializer = factory.getBufferSerializer();
+
+        long arrayBytes = allocatedPerCall(() -> serializer.serialize(instance));
+        long bufferBytes = allocatedPerCall(() -> bufferSerializer.serialize(instance));
+
+        System.out.println("Bytes allocated per serialization: " + arrayBytes
+            + " with byte[] serializer, " + bufferBytes + " with buffer serializer");
+        assertThat(bufferBytes * 2, lessThan(arrayBytes));
+    }
+
+    @Test
+    public void testSerDe_bufferSerializerFailed_nextResultComplete() throws Exception {
+        BufferSerializer<Object> serializer = JSONSerDeFactory.getInstance().getBufferSerializer();
+        try {
+            serializer.serialize(new FailingBean());
+            fail("Serialization didn't fail");
+        } catch (IOException e) {
+            // expected
+        }
+
+        ByteBuffer buffer = serializer.serialize("value");
+
+        byte[] actual = new byte[buffer.remaining()];
+        buffer.get(actual);
+        assertThat(new String(actual), equalTo("\"value\""));
+    }
+
+    @Test
+    public void testSerDe_bufferSerializerCalledTwice_secondResultNotAffectedByFirst() throws Exception {
+        BufferSerializer<String> serializer = SmileSerDeFactory.getInstance().getBufferSerializer();
+        serializer.serialize("a much longer value written first");
+
+        ByteBuffer buffer = serializer.serialize("short");
+
+        byte[] actual = new byte[buffer.remaining()];
+        buffer.get(actual);
+        assertThat(actual, equalTo(SmileSerDeFactory.getInstance().<String>getSerializer().serialize("short")));
+    }
+
+    public static class FailingBean {
+
+        public String getFirst() {
+            return "first";
+        }
+
+        public String getSecond() {
+            throw new IllegalStateException("failed");
+        }
+    }
+
+    /**
+     * Bytes allocated by the current thread per call, after warm-up.
+     */
+    private static long allocatedPerCall(Callable<?> call) throws Exception {
+        com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        int calls = 10000;
+        for (int i = 0; i < calls; i++) {
+            call.call();
+        }
+        long before = threads.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < calls; i++) {
+            call.call();
+        }
+        return (threads.getThreadAllocatedBytes(threadId) - before) / calls;
+    }
 }
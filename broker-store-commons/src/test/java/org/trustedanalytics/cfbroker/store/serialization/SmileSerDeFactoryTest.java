@@ -0,0 +1,67 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.cfbroker.store.serialization;
+
+import org.cloudfoundry.community.servicebroker.model.CreateServiceInstanceRequest;
+import org.cloudfoundry.community.servicebroker.model.ServiceInstance;
+import org.junit.Test;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.Assert.assertThat;
+
+public class SmileSerDeFactoryTest {
+
+    private static final SerDeFactory factory = SmileSerDeFactory.getInstance();
+
+    @Test
+    public void serialize_serviceInstance_writesTaggedSmileSmallerThanJson() throws Exception {
+        ServiceInstance instance = getServiceInstance();
+
+        byte[] smile = factory.<ServiceInstance>getSerializer().serialize(instance);
+        byte[] json = JSONSerDeFactory.getInstance().<ServiceInstance>getSerializer().serialize(instance);
+
+        assertThat(smile[0], equalTo(PayloadFormat.SMILE));
+        assertThat(smile.length, lessThan(json.length));
+    }
+
+    @Test
+    public void deserialize_smilePayload_returnsEqualObject() throws Exception {
+        byte[] serialized = factory.<ServiceInstance>getSerializer().serialize(getServiceInstance());
+
+        ServiceInstance actual = factory.getDeserializer(ServiceInstance.class).deserialize(serialized);
+
+        assertThat(actual.getServiceInstanceId(), equalTo("instanceId"));
+        assertThat(actual.getPlanId(), equalTo("planId"));
+    }
+
+    @Test
+    public void deserialize_legacyJsonPayload_returnsEqualObject() throws Exception {
+        byte[] serialized =
+            JSONSerDeFactory.getInstance().<ServiceInstance>getSerializer().serialize(getServiceInstance());
+
+        ServiceInstance actual = factory.getDeserializer(ServiceInstance.class).deserialize(serialized);
+
+        assertThat(actual.getServiceInstanceId(), equalTo("instanceId"));
+        assertThat(actual.getSpaceGuid(), equalTo("spaceGuid"));
+    }
+
+    private ServiceInstance getServiceInstance() {
+        return new ServiceInstance(
+            new CreateServiceInstanceRequest("serviceId", "planId", "organizationGuid", "spaceGuid")
+                .withServiceInstanceId("instanceId"));
+    }
+}
@@ -0,0 +1,51 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.cfbroker.store.serialization;
+
+import org.junit.Test;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+public class StringInternerTest {
+
+    @Test
+    public void intern_equalStrings_returnsFirstInstance() {
+        StringInterner interner = new StringInterner(10);
+        String first = new String("planId");
+
+        interner.intern(first);
+
+        assertThat(interner.intern(new String("planId")), sameInstance(first));
+    }
+
+    @Test
+    public void intern_poolFull_returnsArgumentAndDoesNotGrow() {
+        StringInterner interner = new StringInterner(1);
+        interner.intern("planId");
+        String other = new String("spaceGuid");
+
+        assertThat(interner.intern(other), sameInstance(other));
+        assertThat(interner.size(), equalTo(1));
+    }
+
+    @Test
+    public void intern_null_returnsNull() {
+        assertThat(new StringInterner(1).intern(null), nullValue());
+    }
+}
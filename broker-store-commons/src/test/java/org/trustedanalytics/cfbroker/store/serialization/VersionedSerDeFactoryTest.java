@@ -0,0 +1,104 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.cfbroker.store.serialization;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.common.collect.ImmutableMap;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Map;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class VersionedSerDeFactoryTest {
+
+    private static final Map<Integer, RecordUpgrade> UPGRADES = ImmutableMap.of(
+        0, record -> ((ObjectNode) record).put("version", "first"),
+        1, record -> ((ObjectNode) record).put("name", record.get("name").asText().toUpperCase()));
+
+    @Test
+    public void deserialize_currentVersion_noUpgradeApplied() throws Exception {
+        VersionedSerDeFactory factory = new VersionedSerDeFactory(2, UPGRADES);
+        byte[] serialized = factory.<Record>getSerializer().serialize(new Record("name", "second"));
+
+        Record actual = factory.getDeserializer(Record.class).deserialize(serialized);
+
+        assertThat(serialized[0], equalTo(PayloadFormat.VERSIONED));
+        assertThat(actual.name, equalTo("name"));
+        assertThat(actual.version, equalTo("second"));
+    }
+
+    @Test
+    public void deserialize_legacyJson_allUpgradesApplied() throws Exception {
+        VersionedSerDeFactory factory = new VersionedSerDeFactory(2, UPGRADES);
+
+        Record actual = factory.getDeserializer(Record.class).deserialize("{\"name\":\"name\"}".getBytes());
+
+        assertThat(actual.name, equalTo("NAME"));
+        assertThat(actual.version, equalTo("first"));
+    }
+
+    @Test
+    public void deserialize_olderVersion_remainingUpgradesApplied() throws Exception {
+        byte[] serialized = new VersionedSerDeFactory(1, ImmutableMap.of(0, UPGRADES.get(0)))
+            .<Record>getSerializer().serialize(new Record("name", "first"));
+
+        Record actual = new VersionedSerDeFactory(2, UPGRADES).getDeserializer(Record.class)
+            .deserialize(serialized);
+
+        assertThat(actual.name, equalTo("NAME"));
+    }
+
+    @Test(expected = IOException.class)
+    public void deserialize_newerVersion_throwsIOException() throws Exception {
+        byte[] serialized = new VersionedSerDeFactory(2, UPGRADES)
+            .<Record>getSerializer().serialize(new Record("name", "second"));
+
+        new VersionedSerDeFactory(1, ImmutableMap.of(0, UPGRADES.get(0)))
+            .getDeserializer(Record.class).deserialize(serialized);
+    }
+
+    @Test
+    public void outdatedDeserializer_currentVersion_returnsNull() throws Exception {
+        VersionedSerDeFactory factory = new VersionedSerDeFactory(2, UPGRADES);
+        byte[] serialized = factory.<Record>getSerializer().serialize(new Record("name", "second"));
+
+        assertThat(factory.getOutdatedDeserializer(Record.class).deserialize(serialized), nullValue());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_missingUpgrade_throwsIllegalArgumentException() {
+        new VersionedSerDeFactory(3, UPGRADES);
+    }
+
+    public static class Record {
+
+        public String name;
+
+        public String version;
+
+        public Record() {
+        }
+
+        Record(String name, String version) {
+            this.name = name;
+            this.version = version;
+        }
+    }
+}
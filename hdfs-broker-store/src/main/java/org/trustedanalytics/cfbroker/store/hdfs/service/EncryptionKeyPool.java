@@ -0,0 +1,218 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.cfbroker.store.hdfs.service;
+
+import com.google.common.base.Preconditions;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.crypto.key.KeyProvider;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.security.NoSuchAlgorithmException;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pool of encryption zone keys created in advance, so that creating an encrypted zone doesn't
+ * wait for the key provider. Keys are named with the pool prefix and a random suffix. When the
+ * number of keys drops below the low watermark, the pool is refilled to its size on a background
+ * thread. Taking a key from an empty pool creates it on the caller's thread.
+ *
+ * Keys still in the pool are deleted on {@link #close()}; after an unclean shutdown they stay in
+ * the key provider unused.
+ */
+public class EncryptionKeyPool implements Closeable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(EncryptionKeyPool.class);
+
+    private static final int KEY_BIT_LENGTH = 256;
+
+    private static final long RETRY_DELAY_SECONDS = 10;
+
+    private final KeyProvider keyProvider;
+
+    private final Configuration configuration;
+
+    private final String prefix;
+
+    private final int size;
+
+    private final int lowWatermark;
+
+    private final BlockingQueue<String> keys = new LinkedBlockingQueue<>();
+
+    private final AtomicBoolean replenishing = new AtomicBoolean();
+
+    private final AtomicLong created = new AtomicLong();
+
+    private final AtomicLong taken = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    private final AtomicLong failures = new AtomicLong();
+
+    private final ScheduledExecutorService executor;
+
+    public EncryptionKeyPool(KeyProvider keyProvider, Configuration configuration, String prefix,
+        int size, int lowWatermark) {
+
+        Preconditions.checkArgument(size > 0, "Pool size must be positive");
+        Preconditions.checkArgument(lowWatermark >= 0 && lowWatermark <= size,
+            "Low watermark must be between 0 and pool size");
+        this.keyProvider = keyProvider;
+        this.configuration = configuration;
+        this.prefix = prefix;
+        this.size = size;
+        this.lowWatermark = lowWatermark;
+        this.executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "hdfs-encryption-key-pool");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Starts filling the pool in the background.
+     */
+    public void start() {
+        scheduleReplenish(0);
+    }
+
+    /**
+     * Takes name of a created key, which from now on belongs to the caller.
+     */
+    public String take() throws IOException {
+        String key = keys.poll();
+        if (key == null) {
+            misses.incrementAndGet();
+            key = createKey();
+        }
+        taken.incrementAndGet();
+        if (keys.size() < lowWatermark) {
+            scheduleReplenish(0);
+        }
+        return key;
+    }
+
+    /**
+     * Number of keys ready to be taken.
+     */
+    public int getDepth() {
+        return keys.size();
+    }
+
+    public long getCreatedCount() {
+        return created.get();
+    }
+
+    public long getTakenCount() {
+        return taken.get();
+    }
+
+    /**
+     * Number of keys taken from empty pool, i.e. created synchronously.
+     */
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    public long getFailureCount() {
+        return failures.get();
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+        try {
+            executor.awaitTermination(RETRY_DELAY_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        String key;
+        while ((key = keys.poll()) != null) {
+            try {
+                keyProvider.deleteKey(key);
+            } catch (IOException e) {
+                LOGGER.warn("Unable to delete unused key " + key, e);
+            }
+        }
+        try {
+            keyProvider.flush();
+        } catch (IOException e) {
+            LOGGER.warn("Unable to flush key provider", e);
+        }
+    }
+
+    /**
+     * Puts back a key which was taken but hasn't been used.
+     */
+    void giveBack(String key) {
+        keys.add(key);
+    }
+
+    private void scheduleReplenish(long delaySeconds) {
+        if (replenishing.compareAndSet(false, true)) {
+            try {
+                executor.schedule(this::replenish, delaySeconds, TimeUnit.SECONDS);
+            } catch (RejectedExecutionException e) {
+                replenishing.set(false);
+            }
+        }
+    }
+
+    private void replenish() {
+        boolean failed = false;
+        try {
+            while (keys.size() < size && !Thread.currentThread().isInterrupted()) {
+                keys.add(createKey());
+            }
+        } catch (IOException | RuntimeException e) {
+            failures.incrementAndGet();
+            LOGGER.warn("Unable to create pooled encryption key, retrying in " + RETRY_DELAY_SECONDS
+                + " s", e);
+            failed = true;
+        } finally {
+            replenishing.set(false);
+        }
+        if (failed) {
+            scheduleReplenish(RETRY_DELAY_SECONDS);
+        }
+    }
+
+    private String createKey() throws IOException {
+        String name = prefix + UUID.randomUUID();
+        KeyProvider.Options options = KeyProvider.options(configuration);
+        options.setDescription(name);
+        options.setBitLength(KEY_BIT_LENGTH);
+        try {
+            keyProvider.createKey(name, options);
+            keyProvider.flush();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException("Unable to create encryption key " + name, e);
+        }
+        created.incrementAndGet();
+        return name;
+    }
+}
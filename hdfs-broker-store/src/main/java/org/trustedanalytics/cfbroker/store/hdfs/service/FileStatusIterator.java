@@ -0,0 +1,76 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.cfbroker.store.hdfs.service;
+
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.LocatedFileStatus;
+import org.apache.hadoop.fs.RemoteIterator;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Lazily walks directory tree depth first, returning every file and directory before its children.
+ * Only listing iterators of directories on the current branch are held, each of them pages through
+ * its directory, so memory doesn't grow with the number of files in the tree.
+ */
+class FileStatusIterator implements Iterator<FileStatus> {
+
+    private final FileSystem fs;
+
+    private final boolean recursive;
+
+    private final Deque<RemoteIterator<LocatedFileStatus>> listings = new ArrayDeque<>();
+
+    FileStatusIterator(FileSystem fs, RemoteIterator<LocatedFileStatus> listing, boolean recursive) {
+        this.fs = fs;
+        this.recursive = recursive;
+        listings.push(listing);
+    }
+
+    @Override
+    public boolean hasNext() {
+        try {
+            while (!listings.isEmpty() && !listings.peek().hasNext()) {
+                listings.pop();
+            }
+            return !listings.isEmpty();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public FileStatus next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        try {
+            FileStatus status = listings.peek().next();
+            if (recursive && status.isDirectory()) {
+                listings.push(fs.listLocatedStatus(status.getPath()));
+            }
+            return status;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
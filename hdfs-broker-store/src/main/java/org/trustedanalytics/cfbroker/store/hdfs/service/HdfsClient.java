@@ -18,7 +18,11 @@ package org.trustedanalytics.cfbroker.store.hdfs.service;
 import java.io.IOException;
 import java.util.List;
 import java.util.Optional;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
+import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.fs.permission.AclEntry;
 import org.apache.hadoop.fs.permission.FsPermission;
@@ -40,10 +44,35 @@ public interface HdfsClient {
 
     void setPermission(String path, FsPermission fsPermission) throws IOException;
 
+    /**
+     * Creates directories of the plan, if they don't exist, and brings their owners, permissions
+     * and ACLs to the planned state.
+     */
+    void provision(ProvisioningPlan plan) throws IOException;
+
     List<String> listFiles(String path, boolean recursive) throws IOException;
 
+    /**
+     * Lazily lists files and directories under the path, parents before their children. Errors
+     * occurring while the stream is consumed are thrown as {@link java.io.UncheckedIOException}.
+     */
+    Stream<FileStatus> streamFiles(String path, boolean recursive) throws IOException;
+
+    /**
+     * Recursively passes every file and directory under the path to the consumer. Sibling subtrees
+     * are traversed in parallel by at most given number of threads, so the consumer has to be
+     * thread-safe and can't rely on any order.
+     */
+    void walkFiles(String path, int parallelism, Consumer<FileStatus> consumer) throws IOException;
+
     boolean isDirectory(String path) throws IOException;
 
+    /**
+     * Moves file or directory, creating missing parent directories of the destination.
+     * @return false if source doesn't exist or destination already exists
+     */
+    boolean rename(String src, String dst) throws IOException;
+
     boolean isFile(String path) throws IOException;
 
     /**
@@ -54,14 +83,49 @@ public interface HdfsClient {
     */
     void createKeyAndEncryptedZone(String keyName, Path path) throws IOException;
 
+    /**
+     * Creates encrypted zone in existing directory, using a key created in advance when possible.
+     * @return name of the key used by the zone
+     */
+    String createEncryptedZone(Path path) throws IOException;
+
     void createEmptyFile(String path) throws IOException;
 
+    /**
+     * Writes whole file, replacing existing one.
+     */
+    void writeFile(String path, byte[] content) throws IOException;
+
+    /**
+     * Reads whole file.
+     * @return empty when file doesn't exist
+     */
+    Optional<byte[]> readFile(String path) throws IOException;
+
+    /**
+     * Sets modification time of the path to current time.
+     */
+    void touch(String path) throws IOException;
+
     Optional<byte[]> getPathAttr(String path, String name) throws IOException;
 
     void addPathAttr(String path, String name, byte[] value) throws IOException;
 
+    /**
+     * Reads attribute of every direct child of the directory. Values of objects that
+     * {@link XAttrsHdfsStore} overflowed to data files are read from those files.
+     */
     List<byte[]> getDirectSubPathsAttrs(String path, String attrName) throws IOException;
 
+    /**
+     * Reads attribute of every direct child of the directory and passes child path and attribute
+     * value to the consumer, on the calling thread. Children without the attribute are skipped.
+     * Overflowed values are read from data files, like in {@link #getDirectSubPathsAttrs}.
+     * @param ordered - whether values are passed in listing order, or as soon as they are read
+     */
+    void forEachDirectSubPathAttr(String path, String attrName, boolean ordered,
+        BiConsumer<String, byte[]> consumer) throws IOException;
+
     void deleteById(String path) throws IOException;
 
 }
@@ -0,0 +1,261 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.cfbroker.store.hdfs.service;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Ticker;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.cache.RemovalCause;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.security.UserGroupInformation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.security.PrivilegedExceptionAction;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded cache of {@link HdfsClient}s acting on behalf of other users, so that repeated
+ * operations of the same user reuse one {@link FileSystem} and its connections instead of
+ * authenticating again.
+ *
+ * File systems are closed when evicted (least recently used over the limit, or idle longer than
+ * the expiration time), but not before operations still using them finish. Idle entries are
+ * noticed on cache access, or by cleanup scheduled with
+ * {@link #scheduleCleanUp(ScheduledExecutorService, long, TimeUnit)}.
+ */
+public class HdfsClientCache implements Closeable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(HdfsClientCache.class);
+
+    private final FileSystemFactory factory;
+
+    private final LoadingCache<String, Handle> cache;
+
+    private final AtomicLong requests = new AtomicLong();
+
+    private final AtomicLong loads = new AtomicLong();
+
+    private final AtomicLong evictions = new AtomicLong();
+
+    private final AtomicInteger open = new AtomicInteger();
+
+    @FunctionalInterface
+    public interface FileSystemFactory {
+
+        FileSystem create(String user) throws IOException;
+    }
+
+    @FunctionalInterface
+    public interface HdfsOperation<R> {
+
+        R execute(HdfsClient client) throws IOException;
+    }
+
+    public HdfsClientCache(FileSystemFactory factory, int maxSize, long expireAfterAccess,
+        TimeUnit unit) {
+        this(factory, maxSize, expireAfterAccess, unit, Ticker.systemTicker());
+    }
+
+    HdfsClientCache(FileSystemFactory factory, int maxSize, long expireAfterAccess, TimeUnit unit,
+        Ticker ticker) {
+
+        Preconditions.checkArgument(maxSize > 0, "Cache size must be positive");
+        this.factory = factory;
+        this.cache = CacheBuilder.newBuilder()
+            .ticker(ticker)
+            .maximumSize(maxSize)
+            .expireAfterAccess(expireAfterAccess, unit)
+            .removalListener(this::removed)
+            .build(new CacheLoader<String, Handle>() {
+                @Override
+                public Handle load(String user) throws IOException {
+                    return open(user);
+                }
+            });
+    }
+
+    /**
+     * Factory of file systems of proxy users impersonated by the currently logged in user.
+     * Every call creates a new instance, which is owned and closed by the cache.
+     */
+    public static FileSystemFactory proxyUserFactory(URI uri, Configuration configuration) {
+        return user -> {
+            UserGroupInformation ugi =
+                UserGroupInformation.createProxyUser(user, UserGroupInformation.getLoginUser());
+            try {
+                return ugi.doAs(
+                    (PrivilegedExceptionAction<FileSystem>) () -> FileSystem.newInstance(uri, configuration));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while creating file system of " + user);
+            }
+        };
+    }
+
+    /**
+     * Runs the operation with client of the user, creating it if it isn't cached.
+     */
+    public <R> R execute(String user, HdfsOperation<R> operation) throws IOException {
+        requests.incrementAndGet();
+        Handle handle = acquire(user);
+        try {
+            return operation.execute(handle.client);
+        } finally {
+            handle.release();
+        }
+    }
+
+    public long getRequestCount() {
+        return requests.get();
+    }
+
+    /**
+     * Number of file systems created, i.e. requests which couldn't reuse a cached one.
+     */
+    public long getLoadCount() {
+        return loads.get();
+    }
+
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+
+    /**
+     * Number of file systems not closed yet, including evicted ones still in use.
+     */
+    public int getOpenCount() {
+        return open.get();
+    }
+
+    public long size() {
+        return cache.size();
+    }
+
+    public void cleanUp() {
+        cache.cleanUp();
+    }
+
+    public ScheduledFuture<?> scheduleCleanUp(ScheduledExecutorService executor, long period,
+        TimeUnit unit) {
+        return executor.scheduleAtFixedRate(this::cleanUp, period, period, unit);
+    }
+
+    @Override
+    public void close() {
+        cache.invalidateAll();
+        cache.cleanUp();
+    }
+
+    private Handle acquire(String user) throws IOException {
+        while (true) {
+            Handle handle;
+            try {
+                handle = cache.get(user);
+            } catch (ExecutionException | UncheckedExecutionException e) {
+                if (e.getCause() instanceof IOException) {
+                    throw (IOException) e.getCause();
+                }
+                throw new IOException("Unable to create file system of " + user, e.getCause());
+            }
+            if (handle.retain()) {
+                return handle;
+            }
+            // evicted between lookup and retain, next lookup loads a new one
+        }
+    }
+
+    private Handle open(String user) throws IOException {
+        FileSystem fs = factory.create(user);
+        loads.incrementAndGet();
+        open.incrementAndGet();
+        LOGGER.debug("File system of {} created", user);
+        return new Handle(user, fs);
+    }
+
+    private void removed(RemovalNotification<String, Handle> notification) {
+        if (notification.getCause() != RemovalCause.EXPLICIT
+            && notification.getCause() != RemovalCause.REPLACED) {
+            evictions.incrementAndGet();
+        }
+        notification.getValue().evict();
+    }
+
+    private final class Handle {
+
+        private final String user;
+
+        private final FileSystem fs;
+
+        private final HdfsClient client;
+
+        private int users;
+
+        private boolean evicted;
+
+        private Handle(String user, FileSystem fs) {
+            this.user = user;
+            this.fs = fs;
+            this.client = new SimpleHdfsClient(fs);
+        }
+
+        private synchronized boolean retain() {
+            if (evicted) {
+                return false;
+            }
+            users++;
+            return true;
+        }
+
+        private synchronized void release() {
+            users--;
+            if (evicted && users == 0) {
+                closeFileSystem();
+            }
+        }
+
+        private synchronized void evict() {
+            evicted = true;
+            if (users == 0) {
+                closeFileSystem();
+            }
+        }
+
+        private void closeFileSystem() {
+            open.decrementAndGet();
+            try {
+                fs.close();
+                LOGGER.debug("File system of {} closed", user);
+            } catch (IOException e) {
+                LOGGER.warn("Unable to close file system of " + user, e);
+            }
+        }
+    }
+}
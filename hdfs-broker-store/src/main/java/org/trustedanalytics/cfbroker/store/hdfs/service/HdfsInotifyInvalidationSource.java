@@ -0,0 +1,156 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.cfbroker.store.hdfs.service;
+
+import org.apache.hadoop.hdfs.DFSInotifyEventInputStream;
+import org.apache.hadoop.hdfs.client.HdfsAdmin;
+import org.apache.hadoop.hdfs.inotify.Event;
+import org.apache.hadoop.hdfs.inotify.EventBatch;
+import org.apache.hadoop.hdfs.inotify.MissingEventsException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.trustedanalytics.cfbroker.store.api.Location;
+import org.trustedanalytics.cfbroker.store.cache.InvalidationListener;
+import org.trustedanalytics.cfbroker.store.cache.InvalidationSource;
+import org.trustedanalytics.cfbroker.store.hdfs.helper.DirHelper;
+
+import java.io.IOException;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Invalidates cached objects of {@link XAttrsHdfsStore} using HDFS inotify event stream. Reading
+ * the stream requires HDFS superuser privileges.
+ *
+ * <p>Requires the batched inotify API ({@code org.apache.hadoop.hdfs.inotify.EventBatch}), which is
+ * present in CDH 5.5+ (the {@code 2.6.0-cdh5.5.1} build this module targets) and in Apache Hadoop
+ * 2.7+, but not in Apache Hadoop 2.6.x.
+ */
+public class HdfsInotifyInvalidationSource implements InvalidationSource {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(HdfsInotifyInvalidationSource.class);
+
+    private static final long POLL_TIMEOUT_SECONDS = 1;
+
+    private final HdfsAdmin hdfsAdmin;
+
+    private final String metadataPath;
+
+    private final MetadataLayout layout;
+
+    private volatile boolean running;
+
+    private Thread thread;
+
+    public HdfsInotifyInvalidationSource(HdfsAdmin hdfsAdmin, String metadataPath) {
+        this(hdfsAdmin, metadataPath, MetadataLayout.FLAT);
+    }
+
+    public HdfsInotifyInvalidationSource(HdfsAdmin hdfsAdmin, String metadataPath,
+        MetadataLayout layout) {
+        this.hdfsAdmin = hdfsAdmin;
+        this.metadataPath = DirHelper.addLeadingSlash(DirHelper.removeTrailingSlashes(metadataPath));
+        this.layout = layout;
+    }
+
+    @Override
+    public synchronized void start(InvalidationListener listener) throws IOException {
+        DFSInotifyEventInputStream stream = hdfsAdmin.getInotifyEventStream();
+        running = true;
+        thread = new Thread(() -> consume(stream, listener), "broker-store-hdfs-invalidation");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @Override
+    public synchronized void close() {
+        running = false;
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+
+    private void consume(DFSInotifyEventInputStream stream, InvalidationListener listener) {
+        while (running) {
+            try {
+                EventBatch batch = stream.poll(POLL_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+                if (batch != null) {
+                    for (Event event : batch.getEvents()) {
+                        handle(event, listener);
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (MissingEventsException e) {
+                LOGGER.warn("Some inotify events were missed", e);
+                listener.invalidateAll();
+            } catch (IOException e) {
+                LOGGER.warn("Error while reading inotify events", e);
+                listener.invalidateAll();
+                sleepBeforeRetry();
+            }
+        }
+    }
+
+    void handle(Event event, InvalidationListener listener) {
+        switch (event.getEventType()) {
+            case METADATA:
+                changed(((Event.MetadataUpdateEvent) event).getPath(), listener);
+                break;
+            case UNLINK:
+                removed(((Event.UnlinkEvent) event).getPath(), listener);
+                break;
+            case RENAME:
+                removed(((Event.RenameEvent) event).getSrcPath(), listener);
+                removed(((Event.RenameEvent) event).getDstPath(), listener);
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void changed(String path, InvalidationListener listener) {
+        layout.getLocation(relativeParts(path)).ifPresent(listener::invalidate);
+    }
+
+    private void removed(String path, InvalidationListener listener) {
+        Optional<Location> location = layout.getLocation(relativeParts(path));
+        if (location.isPresent()) {
+            listener.invalidate(location.get());
+            if (!location.get().getParentId().isPresent()) {
+                listener.invalidateChildren(location.get().getId());
+            }
+        }
+    }
+
+    private String[] relativeParts(String path) {
+        String prefix = metadataPath + "/";
+        if (path == null || !path.startsWith(prefix) || path.length() == prefix.length()) {
+            return new String[0];
+        }
+        return DirHelper.removeTrailingSlashes(path.substring(prefix.length())).split("/");
+    }
+
+    private void sleepBeforeRetry() {
+        try {
+            TimeUnit.SECONDS.sleep(POLL_TIMEOUT_SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            running = false;
+        }
+    }
+}
@@ -0,0 +1,247 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.cfbroker.store.hdfs.service;
+
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Binary formats of segment files and their index files used by {@link SegmentLogHdfsStore}.
+ *
+ * Record in a segment: 4-byte body length, 4-byte CRC32 of the body, then the body: 1-byte type,
+ * modified UTF-8 key and, for puts, the value. Index file: magic, number of entries, then key,
+ * type, offset and length of every record of the segment, in the order they were appended.
+ */
+final class LogRecords {
+
+    static final byte PUT = 1;
+
+    static final byte DELETE = 2;
+
+    static final int HEADER_LENGTH = 8;
+
+    private static final int INDEX_MAGIC = 0x42534958;
+
+    private LogRecords() {
+    }
+
+    /**
+     * Buffer of encoded records reused between appends, so that a record isn't copied into a new
+     * array on every save. Buffers that grew over {@link #MAX_RETAINED_SIZE} aren't kept.
+     */
+    static final class RecordBuffer extends ByteArrayOutputStream {
+
+        static final int MAX_RETAINED_SIZE = 64 * 1024;
+
+        private static final int INITIAL_SIZE = 1024;
+
+        private final DataOutputStream data = new DataOutputStream(this);
+
+        private final CRC32 crc = new CRC32();
+
+        RecordBuffer() {
+            super(INITIAL_SIZE);
+        }
+
+        /**
+         * Replaces buffer content with the record; value is read from its position to its limit,
+         * without changing the position.
+         */
+        void encode(byte type, String key, ByteBuffer value) throws IOException {
+            if (buf.length > MAX_RETAINED_SIZE) {
+                buf = new byte[INITIAL_SIZE];
+            }
+            reset();
+            data.writeInt(0);
+            data.writeInt(0);
+            data.writeByte(type);
+            data.writeUTF(key);
+            int valueLength = value.remaining();
+            if (count + valueLength > buf.length) {
+                buf = Arrays.copyOf(buf, Math.max(buf.length * 2, count + valueLength));
+            }
+            value.duplicate().get(buf, count, valueLength);
+            count += valueLength;
+            int bodyLength = count - HEADER_LENGTH;
+            crc.reset();
+            crc.update(buf, HEADER_LENGTH, bodyLength);
+            writeInt(buf, 0, bodyLength);
+            writeInt(buf, 4, (int) crc.getValue());
+        }
+
+        byte[] array() {
+            return buf;
+        }
+    }
+
+    /**
+     * Position of a record within a segment.
+     */
+    static final class Entry {
+
+        final String key;
+
+        final byte type;
+
+        final long segment;
+
+        final long offset;
+
+        final int length;
+
+        Entry(String key, byte type, long segment, long offset, int length) {
+            this.key = key;
+            this.type = type;
+            this.segment = segment;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        Entry moveTo(long segment, long offset) {
+            return new Entry(key, type, segment, offset, length);
+        }
+    }
+
+    static byte[] encode(byte type, String key, byte[] value) throws IOException {
+        RecordBuffer record = new RecordBuffer();
+        record.encode(type, key, ByteBuffer.wrap(value));
+        return record.toByteArray();
+    }
+
+    /**
+     * Reads the value of a put record, checking that the record at entry's position is the one
+     * the entry describes.
+     */
+    static byte[] readValue(FSDataInputStream in, Entry entry) throws IOException {
+        byte[] record = new byte[entry.length];
+        in.readFully(entry.offset, record);
+        DataInputStream body = new DataInputStream(
+            new ByteArrayInputStream(record, HEADER_LENGTH, record.length - HEADER_LENGTH));
+        if (!isValid(record) || body.readByte() != entry.type || !body.readUTF().equals(entry.key)) {
+            throw new IOException("No valid record of " + entry.key + " at offset " + entry.offset);
+        }
+        byte[] value = new byte[body.available()];
+        body.readFully(value);
+        return value;
+    }
+
+    static byte[] readRaw(FSDataInputStream in, Entry entry) throws IOException {
+        byte[] record = new byte[entry.length];
+        in.readFully(entry.offset, record);
+        return record;
+    }
+
+    /**
+     * Reads records of a segment one by one, stopping at the first incomplete or corrupted record,
+     * which can be left by a writer that died in the middle of an append.
+     */
+    static List<Entry> scan(FileSystem fs, Path segment, long segmentId) throws IOException {
+        List<Entry> entries = new ArrayList<>();
+        try (DataInputStream in = new DataInputStream(fs.open(segment))) {
+            long offset = 0;
+            while (true) {
+                byte[] header = new byte[HEADER_LENGTH];
+                byte[] record;
+                try {
+                    in.readFully(header);
+                    int bodyLength = readInt(header, 0);
+                    if (bodyLength <= 0) {
+                        break;
+                    }
+                    record = new byte[HEADER_LENGTH + bodyLength];
+                    System.arraycopy(header, 0, record, 0, HEADER_LENGTH);
+                    in.readFully(record, HEADER_LENGTH, bodyLength);
+                } catch (EOFException e) {
+                    break;
+                }
+                if (!isValid(record)) {
+                    break;
+                }
+                DataInputStream body = new DataInputStream(
+                    new ByteArrayInputStream(record, HEADER_LENGTH, record.length - HEADER_LENGTH));
+                byte type = body.readByte();
+                entries.add(new Entry(body.readUTF(), type, segmentId, offset, record.length));
+                offset += record.length;
+            }
+        }
+        return entries;
+    }
+
+    static void writeIndex(FileSystem fs, Path index, List<Entry> entries) throws IOException {
+        try (FSDataOutputStream out = fs.create(index, true)) {
+            out.writeInt(INDEX_MAGIC);
+            out.writeInt(entries.size());
+            for (Entry entry : entries) {
+                out.writeUTF(entry.key);
+                out.writeByte(entry.type);
+                out.writeLong(entry.offset);
+                out.writeInt(entry.length);
+            }
+            out.hsync();
+        }
+    }
+
+    static List<Entry> readIndex(FileSystem fs, Path index, long segmentId) throws IOException {
+        try (FSDataInputStream in = fs.open(index)) {
+            if (in.readInt() != INDEX_MAGIC) {
+                throw new IOException(index + " is not a segment index");
+            }
+            int count = in.readInt();
+            List<Entry> entries = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                String key = in.readUTF();
+                byte type = in.readByte();
+                entries.add(new Entry(key, type, segmentId, in.readLong(), in.readInt()));
+            }
+            return entries;
+        }
+    }
+
+    private static boolean isValid(byte[] record) {
+        if (record.length < HEADER_LENGTH || readInt(record, 0) != record.length - HEADER_LENGTH) {
+            return false;
+        }
+        CRC32 crc = new CRC32();
+        crc.update(record, HEADER_LENGTH, record.length - HEADER_LENGTH);
+        return (int) crc.getValue() == readInt(record, 4);
+    }
+
+    private static void writeInt(byte[] bytes, int offset, int value) {
+        bytes[offset] = (byte) (value >>> 24);
+        bytes[offset + 1] = (byte) (value >>> 16);
+        bytes[offset + 2] = (byte) (value >>> 8);
+        bytes[offset + 3] = (byte) value;
+    }
+
+    private static int readInt(byte[] bytes, int offset) {
+        return (bytes[offset] & 0xff) << 24 | (bytes[offset + 1] & 0xff) << 16
+            | (bytes[offset + 2] & 0xff) << 8 | bytes[offset + 3] & 0xff;
+    }
+}
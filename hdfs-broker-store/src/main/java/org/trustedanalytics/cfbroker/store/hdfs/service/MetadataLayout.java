@@ -0,0 +1,101 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.cfbroker.store.hdfs.service;
+
+import org.trustedanalytics.cfbroker.store.api.Location;
+import org.trustedanalytics.cfbroker.store.hdfs.helper.DirHelper;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+
+/**
+ * Placement of object directories of {@link XAttrsHdfsStore} under the metadata path.
+ */
+public enum MetadataLayout {
+
+    /**
+     * Every instance in its own directory directly under metadata path, bindings in directories
+     * of their instances.
+     */
+    FLAT(0),
+
+    /**
+     * Instance directories spread over two levels of buckets named after a hash of instance id,
+     * e.g. metadataPath/ab/cd/id, so that no directory gets too many entries. Bindings stay in
+     * directories of their instances. Instance ids made of two hex digits aren't supported, as
+     * they can't be told apart from buckets.
+     */
+    HASHED(2);
+
+    private static final Pattern BUCKET_NAME = Pattern.compile("[0-9a-f]{2}");
+
+    private final int bucketDepth;
+
+    MetadataLayout(int bucketDepth) {
+        this.bucketDepth = bucketDepth;
+    }
+
+    public int getBucketDepth() {
+        return bucketDepth;
+    }
+
+    public String getPath(String metadataPath, Location location) {
+        String instancePath = getInstancePath(metadataPath,
+            location.getParentId().orElse(location.getId()));
+        return location.getParentId().isPresent()
+            ? DirHelper.concat(instancePath, location.getId()) : instancePath;
+    }
+
+    public String getInstancePath(String metadataPath, String id) {
+        return DirHelper.concat(DirHelper.concat(metadataPath, getBuckets(id)), id);
+    }
+
+    /**
+     * Maps path relative to metadata path back to object location.
+     */
+    public Optional<Location> getLocation(String[] relativeParts) {
+        if (relativeParts.length <= bucketDepth || relativeParts.length > bucketDepth + 2) {
+            return Optional.empty();
+        }
+        String[] parts = Arrays.copyOfRange(relativeParts, bucketDepth, relativeParts.length);
+        return Optional.of(parts.length == 1
+            ? Location.newInstance(parts[0]) : Location.newInstance(parts[1], parts[0]));
+    }
+
+    static boolean isBucketName(String name) {
+        return BUCKET_NAME.matcher(name).matches();
+    }
+
+    private String getBuckets(String id) {
+        if (bucketDepth == 0) {
+            return "";
+        }
+        CRC32 crc = new CRC32();
+        crc.update(id.getBytes(StandardCharsets.UTF_8));
+        long hash = crc.getValue();
+        StringBuilder buckets = new StringBuilder();
+        for (int level = 0; level < bucketDepth; level++) {
+            if (level > 0) {
+                buckets.append('/');
+            }
+            buckets.append(String.format("%02x", (hash >>> (8 * level)) & 0xff));
+        }
+        return buckets.toString();
+    }
+}
@@ -0,0 +1,115 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.cfbroker.store.hdfs.service;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import org.apache.hadoop.fs.permission.AclEntry;
+import org.apache.hadoop.fs.permission.FsPermission;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Desired state of a set of directories: their owners, permissions and ACL entries, applied with
+ * {@link HdfsClient#provision(ProvisioningPlan)}. Directories which are not ancestors of each
+ * other are provisioned in parallel, at most plan's parallelism at a time.
+ */
+public class ProvisioningPlan {
+
+    private final List<Directory> directories = new ArrayList<>();
+
+    private int parallelism = 1;
+
+    public ProvisioningPlan withDirectory(Directory directory) {
+        directories.add(directory);
+        return this;
+    }
+
+    public ProvisioningPlan withParallelism(int parallelism) {
+        Preconditions.checkArgument(parallelism > 0, "Parallelism must be positive");
+        this.parallelism = parallelism;
+        return this;
+    }
+
+    public List<Directory> getDirectories() {
+        return Collections.unmodifiableList(directories);
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Desired state of a single directory. Properties which aren't set are left as they are.
+     * ACL entries replace the whole ACL of the directory when permission is set as well, and are
+     * merged into the current ACL otherwise.
+     */
+    public static class Directory {
+
+        private final String path;
+
+        private String owner;
+
+        private String group;
+
+        private FsPermission permission;
+
+        private List<AclEntry> aclEntries = ImmutableList.of();
+
+        public Directory(String path) {
+            this.path = path;
+        }
+
+        public Directory withOwner(String owner, String group) {
+            this.owner = owner;
+            this.group = group;
+            return this;
+        }
+
+        public Directory withPermission(FsPermission permission) {
+            this.permission = permission;
+            return this;
+        }
+
+        public Directory withAclEntries(List<AclEntry> aclEntries) {
+            this.aclEntries = ImmutableList.copyOf(aclEntries);
+            return this;
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        public Optional<String> getOwner() {
+            return Optional.ofNullable(owner);
+        }
+
+        public Optional<String> getGroup() {
+            return Optional.ofNullable(group);
+        }
+
+        public Optional<FsPermission> getPermission() {
+            return Optional.ofNullable(permission);
+        }
+
+        public List<AclEntry> getAclEntries() {
+            return aclEntries;
+        }
+    }
+}
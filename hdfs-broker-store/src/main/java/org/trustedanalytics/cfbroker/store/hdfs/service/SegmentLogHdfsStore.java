@@ -0,0 +1,505 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.cfbroker.store.hdfs.service;
+
+import com.google.common.base.Preconditions;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.DistributedFileSystem;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.trustedanalytics.cfbroker.store.api.BrokerStore;
+import org.trustedanalytics.cfbroker.store.api.Location;
+import org.trustedanalytics.cfbroker.store.hdfs.service.LogRecords.Entry;
+import org.trustedanalytics.cfbroker.store.hdfs.service.LogRecords.RecordBuffer;
+import org.trustedanalytics.cfbroker.store.serialization.BufferSerializer;
+import org.trustedanalytics.cfbroker.store.serialization.RepositoryDeserializer;
+import org.trustedanalytics.cfbroker.store.serialization.RepositorySerializer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link BrokerStore} keeping all objects in a few append-only segment files under one HDFS
+ * directory, instead of a directory with an attribute per object like {@link XAttrsHdfsStore}.
+ *
+ * Saves and deletes are appended to the active segment, which is rolled when it grows over the
+ * segment size; an index file with positions of records is written next to every sealed segment.
+ * At {@link #init()} the in-memory index of live records is rebuilt from index files, segments
+ * left without one (e.g. after a crash) are scanned. Compaction rewrites live records of all
+ * sealed segments into a single one, it can be run periodically in the background with
+ * {@link #startCompaction(long, TimeUnit)}.
+ *
+ * The store expects to be the only writer of its directory.
+ */
+public class SegmentLogHdfsStore<T> implements BrokerStore<T>, Closeable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SegmentLogHdfsStore.class);
+
+    public static final long DEFAULT_SEGMENT_SIZE = 64L * 1024 * 1024;
+
+    public static final int DEFAULT_MAX_SEALED_SEGMENTS = 4;
+
+    private static final ByteBuffer EMPTY_VALUE = ByteBuffer.allocate(0).asReadOnlyBuffer();
+
+    private static final double MAX_GARBAGE_RATIO = 0.5;
+
+    private static final String LOG_SUFFIX = ".log";
+
+    private static final String INDEX_SUFFIX = ".idx";
+
+    private static final String COMPACTING_SUFFIX = ".compacting";
+
+    private static final String TMP_SUFFIX = ".tmp";
+
+    private final FileSystem fs;
+
+    private final BufferSerializer<T> serializer;
+
+    private final RepositoryDeserializer<T> deserializer;
+
+    private final Path storePath;
+
+    private final long segmentSize;
+
+    private final int maxSealedSegments;
+
+    private final ConcurrentMap<String, Entry> index = new ConcurrentHashMap<>();
+
+    private final SortedMap<Long, Long> sealedSizes = new TreeMap<>();
+
+    private final Map<Long, FSDataInputStream> readers = new HashMap<>();
+
+    private final Object compactionLock = new Object();
+
+    private long activeId;
+
+    private final RecordBuffer record = new RecordBuffer();
+
+    private FSDataOutputStream active;
+
+    private List<Entry> activeEntries;
+
+    private ScheduledExecutorService compactionExecutor;
+
+    public SegmentLogHdfsStore(FileSystem fs, RepositorySerializer<T> serializer,
+        RepositoryDeserializer<T> deserializer, String storePath) {
+        this(fs, serializer, deserializer, storePath, DEFAULT_SEGMENT_SIZE,
+            DEFAULT_MAX_SEALED_SEGMENTS);
+    }
+
+    /**
+     * @param segmentSize - size in bytes after which the active segment is rolled
+     * @param maxSealedSegments - number of sealed segments which makes compaction rewrite them,
+     *                          regardless of how much garbage they hold
+     */
+    public SegmentLogHdfsStore(FileSystem fs, RepositorySerializer<T> serializer,
+        RepositoryDeserializer<T> deserializer, String storePath, long segmentSize,
+        int maxSealedSegments) {
+
+        this(fs, (BufferSerializer<T>) t -> ByteBuffer.wrap(serializer.serialize(t)), deserializer,
+            storePath, segmentSize, maxSealedSegments);
+    }
+
+    private SegmentLogHdfsStore(FileSystem fs, BufferSerializer<T> serializer,
+        RepositoryDeserializer<T> deserializer, String storePath, long segmentSize,
+        int maxSealedSegments) {
+
+        Preconditions.checkArgument(segmentSize > 0, "Segment size must be positive");
+        Preconditions.checkArgument(maxSealedSegments > 1, "At least two sealed segments required");
+        this.fs = fs;
+        this.serializer = serializer;
+        this.deserializer = deserializer;
+        this.storePath = new Path(storePath);
+        this.segmentSize = segmentSize;
+        this.maxSealedSegments = maxSealedSegments;
+    }
+
+    /**
+     * Creates store appending objects serialized into reused buffers, e.g. by
+     * {@link org.trustedanalytics.cfbroker.store.serialization.SerDeFactory#getBufferSerializer},
+     * so that saves don't allocate arrays for serialized objects and their records.
+     */
+    public static <T> SegmentLogHdfsStore<T> withBufferSerializer(FileSystem fs,
+        BufferSerializer<T> serializer, RepositoryDeserializer<T> deserializer, String storePath,
+        long segmentSize, int maxSealedSegments) {
+
+        return new SegmentLogHdfsStore<>(fs, serializer, deserializer, storePath, segmentSize,
+            maxSealedSegments);
+    }
+
+    public synchronized void init() throws IOException {
+        Preconditions.checkState(active == null, "Store already initialized");
+        fs.mkdirs(storePath);
+        finishCompaction();
+
+        SortedMap<Long, Path> segments = new TreeMap<>();
+        for (FileStatus status : fs.listStatus(storePath)) {
+            String name = status.getPath().getName();
+            if (name.endsWith(LOG_SUFFIX)) {
+                segments.put(parseId(name), status.getPath());
+            } else if (name.endsWith(TMP_SUFFIX)) {
+                fs.delete(status.getPath(), false);
+            }
+        }
+        for (Map.Entry<Long, Path> segment : segments.entrySet()) {
+            loadSegment(segment.getKey(), segment.getValue());
+        }
+        activeId = segments.isEmpty() ? 1 : segments.lastKey() + 1;
+        openActive();
+        LOGGER.info("Loaded {} objects from {} segments in {}", index.size(), segments.size(),
+            storePath);
+    }
+
+    /**
+     * Runs compaction periodically on a background thread.
+     */
+    public synchronized void startCompaction(long period, TimeUnit unit) {
+        if (compactionExecutor != null) {
+            return;
+        }
+        compactionExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "hdfs-segment-log-compaction");
+            thread.setDaemon(true);
+            return thread;
+        });
+        compactionExecutor.scheduleWithFixedDelay(() -> {
+            try {
+                compact();
+            } catch (IOException | RuntimeException e) {
+                LOGGER.warn("Compaction of " + storePath + " failed", e);
+            }
+        }, period, period, unit);
+    }
+
+    @Override
+    public void save(Location location, T t) throws IOException {
+        append(LogRecords.PUT, location.getPath(), serializer.serialize(t));
+    }
+
+    @Override
+    public Optional<T> getById(Location location) throws IOException {
+        String key = location.getPath();
+        Entry entry = index.get(key);
+        if (entry == null) {
+            return Optional.empty();
+        }
+        try {
+            return Optional.of(deserializer.deserialize(read(entry)));
+        } catch (IOException e) {
+            // segment could have been removed by compaction after the entry was taken
+            Entry current = currentEntry(key);
+            if (current == entry) {
+                throw e;
+            }
+            return current == null
+                ? Optional.empty() : Optional.of(deserializer.deserialize(read(current)));
+        }
+    }
+
+    @Override
+    public Optional<T> deleteById(Location location) throws IOException {
+        Optional<T> instance = getById(location);
+        if (instance.isPresent()) {
+            append(LogRecords.DELETE, location.getPath(), EMPTY_VALUE);
+        }
+        return instance;
+    }
+
+    /**
+     * Rewrites live records of all sealed segments into one segment, if there are at least
+     * maximum number of sealed segments or at least half of their size is taken by overwritten
+     * and deleted records.
+     * @return whether compaction was done
+     */
+    public boolean compact() throws IOException {
+        synchronized (compactionLock) {
+            List<Long> segments;
+            List<Entry> live = new ArrayList<>();
+            synchronized (this) {
+                if (sealedSizes.isEmpty()) {
+                    return false;
+                }
+                long totalBytes = sealedSizes.values().stream().mapToLong(Long::longValue).sum();
+                long liveBytes = 0;
+                for (Entry entry : index.values()) {
+                    if (sealedSizes.containsKey(entry.segment)) {
+                        live.add(entry);
+                        liveBytes += entry.length;
+                    }
+                }
+                if (sealedSizes.size() < maxSealedSegments
+                    && totalBytes - liveBytes <= totalBytes * MAX_GARBAGE_RATIO) {
+                    return false;
+                }
+                segments = new ArrayList<>(sealedSizes.keySet());
+            }
+            live.sort((e1, e2) -> e1.segment != e2.segment
+                ? Long.compare(e1.segment, e2.segment) : Long.compare(e1.offset, e2.offset));
+
+            long target = segments.get(segments.size() - 1);
+            List<Entry> moved = new ArrayList<>(live.size());
+            long size;
+            try (FSDataOutputStream out = fs.create(compactingPath(logPath(target)), true)) {
+                for (Entry entry : live) {
+                    moved.add(entry.moveTo(target, out.getPos()));
+                    out.write(LogRecords.readRaw(reader(entry.segment), entry));
+                }
+                out.hsync();
+                size = out.getPos();
+            }
+            Path tmpIndex = new Path(storePath, indexPath(target).getName() + TMP_SUFFIX);
+            LogRecords.writeIndex(fs, tmpIndex, moved);
+            rename(tmpIndex, compactingPath(indexPath(target)));
+
+            synchronized (this) {
+                for (long id : segments) {
+                    closeReader(id);
+                    sealedSizes.remove(id);
+                }
+                finishCompaction();
+                sealedSizes.put(target, size);
+                for (int i = 0; i < live.size(); i++) {
+                    index.replace(live.get(i).key, live.get(i), moved.get(i));
+                }
+            }
+            LOGGER.info("Compacted {} segments of {} into one with {} records", segments.size(),
+                storePath, moved.size());
+            return true;
+        }
+    }
+
+    public synchronized int getSegmentCount() {
+        return sealedSizes.size() + (active != null ? 1 : 0);
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (compactionExecutor != null) {
+                compactionExecutor.shutdownNow();
+                compactionExecutor = null;
+            }
+        }
+        synchronized (compactionLock) {
+            synchronized (this) {
+                if (active == null) {
+                    return;
+                }
+                active.close();
+                if (activeEntries.isEmpty()) {
+                    fs.delete(logPath(activeId), false);
+                } else {
+                    LogRecords.writeIndex(fs, indexPath(activeId), activeEntries);
+                }
+                active = null;
+                for (FSDataInputStream reader : readers.values()) {
+                    reader.close();
+                }
+                readers.clear();
+            }
+        }
+    }
+
+    private synchronized void append(byte type, String key, ByteBuffer value) throws IOException {
+        Preconditions.checkState(active != null, "Store not initialized");
+        record.encode(type, key, value);
+        long offset = active.getPos();
+        try {
+            active.write(record.array(), 0, record.size());
+            active.hflush();
+        } catch (IOException e) {
+            // a partially written record would be followed by the next ones, so start a new segment
+            try {
+                roll();
+            } catch (IOException rollException) {
+                e.addSuppressed(rollException);
+            }
+            throw e;
+        }
+        Entry entry = new Entry(key, type, activeId, offset, record.size());
+        activeEntries.add(entry);
+        if (type == LogRecords.PUT) {
+            index.put(key, entry);
+        } else {
+            index.remove(key);
+        }
+        if (active.getPos() >= segmentSize) {
+            roll();
+        }
+    }
+
+    private void roll() throws IOException {
+        long size = active.getPos();
+        try {
+            active.close();
+        } finally {
+            LogRecords.writeIndex(fs, indexPath(activeId), activeEntries);
+            sealedSizes.put(activeId, size);
+            activeId++;
+            openActive();
+        }
+    }
+
+    private void openActive() throws IOException {
+        active = fs.create(logPath(activeId), false);
+        activeEntries = new ArrayList<>();
+    }
+
+    private byte[] read(Entry entry) throws IOException {
+        FSDataInputStream in = reader(entry.segment);
+        if (in != null) {
+            return LogRecords.readValue(in, entry);
+        }
+        // active segment is read with a new stream, which sees everything flushed so far
+        try (FSDataInputStream activeIn = fs.open(logPath(entry.segment))) {
+            return LogRecords.readValue(activeIn, entry);
+        }
+    }
+
+    private synchronized FSDataInputStream reader(long segment) throws IOException {
+        if (segment == activeId && active != null) {
+            return null;
+        }
+        FSDataInputStream in = readers.get(segment);
+        if (in == null) {
+            in = fs.open(logPath(segment));
+            readers.put(segment, in);
+        }
+        return in;
+    }
+
+    private synchronized Entry currentEntry(String key) {
+        return index.get(key);
+    }
+
+    private void closeReader(long segment) {
+        FSDataInputStream in = readers.remove(segment);
+        if (in != null) {
+            try {
+                in.close();
+            } catch (IOException e) {
+                LOGGER.debug("Unable to close segment reader", e);
+            }
+        }
+    }
+
+    private void loadSegment(long id, Path log) throws IOException {
+        Path indexFile = indexPath(id);
+        List<Entry> entries = null;
+        if (fs.exists(indexFile)) {
+            try {
+                entries = LogRecords.readIndex(fs, indexFile, id);
+            } catch (IOException e) {
+                LOGGER.warn("Unreadable index of segment " + log + ", segment will be scanned", e);
+            }
+        }
+        if (entries == null) {
+            recoverLease(log);
+            entries = LogRecords.scan(fs, log, id);
+            LogRecords.writeIndex(fs, indexFile, entries);
+        }
+        for (Entry entry : entries) {
+            if (entry.type == LogRecords.PUT) {
+                index.put(entry.key, entry);
+            } else {
+                index.remove(entry.key);
+            }
+        }
+        sealedSizes.put(id, fs.getFileStatus(log).getLen());
+    }
+
+    /**
+     * Replaces compacted segments with the result of compaction, if its index has been written.
+     * Otherwise removes what's left of unfinished compaction. When the compacted log is already in
+     * place, only its index is left to rename; compacted segments have been removed before.
+     */
+    private void finishCompaction() throws IOException {
+        for (FileStatus status : fs.listStatus(storePath)) {
+            String name = status.getPath().getName();
+            if (!name.endsWith(INDEX_SUFFIX + COMPACTING_SUFFIX)) {
+                continue;
+            }
+            long target = parseId(name);
+            if (fs.exists(compactingPath(logPath(target)))) {
+                for (FileStatus segment : fs.listStatus(storePath)) {
+                    String segmentName = segment.getPath().getName();
+                    if ((segmentName.endsWith(LOG_SUFFIX) || segmentName.endsWith(INDEX_SUFFIX))
+                        && parseId(segmentName) <= target) {
+                        fs.delete(segment.getPath(), false);
+                    }
+                }
+                rename(compactingPath(logPath(target)), logPath(target));
+            } else {
+                fs.delete(indexPath(target), false);
+            }
+            rename(status.getPath(), indexPath(target));
+        }
+        for (FileStatus status : fs.listStatus(storePath)) {
+            if (status.getPath().getName().endsWith(COMPACTING_SUFFIX)) {
+                fs.delete(status.getPath(), false);
+            }
+        }
+    }
+
+    private void recoverLease(Path log) {
+        if (fs instanceof DistributedFileSystem) {
+            try {
+                ((DistributedFileSystem) fs).recoverLease(log);
+            } catch (IOException e) {
+                LOGGER.debug("Unable to recover lease of " + log, e);
+            }
+        }
+    }
+
+    private void rename(Path from, Path to) throws IOException {
+        if (!fs.rename(from, to)) {
+            throw new IOException("Unable to rename " + from + " to " + to);
+        }
+    }
+
+    private Path logPath(long id) {
+        return new Path(storePath, String.format("%016d", id) + LOG_SUFFIX);
+    }
+
+    private Path indexPath(long id) {
+        return new Path(storePath, String.format("%016d", id) + INDEX_SUFFIX);
+    }
+
+    private Path compactingPath(Path path) {
+        return new Path(storePath, path.getName() + COMPACTING_SUFFIX);
+    }
+
+    private static long parseId(String name) {
+        return Long.parseLong(name.substring(0, name.indexOf('.')));
+    }
+}
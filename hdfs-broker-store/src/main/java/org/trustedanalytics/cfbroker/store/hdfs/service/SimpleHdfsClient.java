@@ -15,19 +15,54 @@
  */
 package org.trustedanalytics.cfbroker.store.hdfs.service;
 
+import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
 import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Deque;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Optional;
+import java.util.SortedMap;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.UUID;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import org.apache.hadoop.crypto.key.KeyProvider;
 import org.apache.hadoop.crypto.key.KeyProviderFactory;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FSDataOutputStream;
 import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.LocatedFileStatus;
 import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.RemoteIterator;
 import org.apache.hadoop.fs.permission.AclEntry;
+import org.apache.hadoop.fs.permission.AclEntryScope;
+import org.apache.hadoop.fs.permission.AclEntryType;
+import org.apache.hadoop.fs.permission.FsAction;
 import org.apache.hadoop.fs.permission.FsPermission;
 import org.apache.hadoop.hdfs.DistributedFileSystem;
 import org.slf4j.Logger;
@@ -40,11 +75,42 @@ public class SimpleHdfsClient implements HdfsClient {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(SimpleHdfsClient.class);
     private static final String DIRECTORY_NOT_EXISTS = "Directory doesn't exists : ";
+    private static final String XATTR_NOT_FOUND = "At least one of the attributes provided was not found";
+
+    private static final int IN_FLIGHT_READS_PER_THREAD = 4;
 
     private final FileSystem fs;
 
+    private final int attrReadParallelism;
+
+    private final ExecutorService attrReadExecutor;
+
+    private final EncryptionKeyPool keyPool;
+
+    private KeyProvider keyProvider;
+
     public SimpleHdfsClient(FileSystem fs) {
+        this(fs, 1);
+    }
+
+    /**
+     * @param attrReadParallelism - maximum number of concurrent attribute reads issued when
+     *                            reading attributes of all children of a directory
+     */
+    public SimpleHdfsClient(FileSystem fs, int attrReadParallelism) {
+        this(fs, attrReadParallelism, null);
+    }
+
+    /**
+     * @param keyPool - pool of keys for {@link #createEncryptedZone(Path)}, or null to create
+     *                keys on demand
+     */
+    public SimpleHdfsClient(FileSystem fs, int attrReadParallelism, EncryptionKeyPool keyPool) {
+        Preconditions.checkArgument(attrReadParallelism > 0, "Parallelism must be positive");
         this.fs = fs;
+        this.attrReadParallelism = attrReadParallelism;
+        this.attrReadExecutor = attrReadParallelism > 1 ? createExecutor(attrReadParallelism) : null;
+        this.keyPool = keyPool;
     }
 
     @Override
@@ -57,11 +123,22 @@ public class SimpleHdfsClient implements HdfsClient {
         return getPathAttr(getNormalizedPath(path), name);
     }
 
+    /**
+     * Reads single attribute in one NameNode call. Missing path and missing attribute are reported
+     * by NameNode as exceptions, both mean there's no value.
+     */
     private Optional<byte[]> getPathAttr(Path path, String name) throws IOException {
-        LOGGER.info("Checking attributes on path " + path);
-        if (fs.exists(path))
-            return Optional.ofNullable(fs.getXAttrs(path).get(name));
-        return Optional.empty();
+        LOGGER.debug("Checking attribute {} on path {}", name, path);
+        try {
+            return Optional.ofNullable(fs.getXAttr(path, name));
+        } catch (FileNotFoundException e) {
+            return Optional.empty();
+        } catch (IOException e) {
+            if (e.getMessage() != null && e.getMessage().startsWith(XATTR_NOT_FOUND)) {
+                return Optional.empty();
+            }
+            throw e;
+        }
     }
 
     @Override
@@ -69,17 +146,85 @@ public class SimpleHdfsClient implements HdfsClient {
             throws IOException {
 
         List<byte[]> attrs = new ArrayList<>();
+        forEachDirectSubPathAttr(path, attrName, true, (child, value) -> attrs.add(value));
+        return attrs;
+    }
+
+    /**
+     * Children are listed page by page. With attribute read parallelism greater than one,
+     * attributes of already listed children are read by a pool of threads while next pages are
+     * listed. Number of reads in flight is bounded and at most attribute read parallelism of them
+     * are issued concurrently, which limits load put on the NameNode by a single call.
+     */
+    @Override
+    public void forEachDirectSubPathAttr(String path, String attrName, boolean ordered,
+        BiConsumer<String, byte[]> consumer) throws IOException {
+
         Path p = getNormalizedPath(path);
         if (!fs.isDirectory(p))
             throw new IllegalArgumentException("Path : " + path + ", should be a directory");
 
-        FileStatus[] listStatus = fs.listStatus(p);
-        for (FileStatus status : listStatus) {
-            Optional<byte[]> pathAttr = getPathAttr(status.getPath(), attrName);
-            if (pathAttr.isPresent())
-                attrs.add(pathAttr.get());
+        RemoteIterator<LocatedFileStatus> statuses = fs.listLocatedStatus(p);
+        if (attrReadExecutor == null) {
+            while (statuses.hasNext()) {
+                Path child = statuses.next().getPath();
+                Optional<byte[]> value = getResolvedPathAttr(child, attrName);
+                if (value.isPresent())
+                    consumer.accept(child.toString(), value.get());
+            }
+            return;
         }
-        return attrs;
+
+        int maxInFlight = attrReadParallelism * IN_FLIGHT_READS_PER_THREAD;
+        Deque<Future<PathAttr>> inFlight = new ArrayDeque<>();
+        // Ordered results are taken from the head of the queue, so completion order is needed
+        // only when results are accepted as they come.
+        CompletionService<PathAttr> completion =
+            ordered ? null : new ExecutorCompletionService<>(attrReadExecutor);
+        try {
+            while (statuses.hasNext()) {
+                Path child = statuses.next().getPath();
+                Callable<PathAttr> read =
+                    () -> new PathAttr(child, getResolvedPathAttr(child, attrName));
+                inFlight.add(completion == null
+                    ? attrReadExecutor.submit(read) : completion.submit(read));
+                if (inFlight.size() >= maxInFlight)
+                    accept(nextResult(inFlight, completion), consumer);
+            }
+            while (!inFlight.isEmpty())
+                accept(nextResult(inFlight, completion), consumer);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while reading attributes of " + path);
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof IOException
+                ? (IOException) e.getCause() : new IOException(e.getCause());
+        } finally {
+            inFlight.forEach(future -> future.cancel(true));
+        }
+    }
+
+    private Optional<byte[]> getResolvedPathAttr(Path path, String name) throws IOException {
+        Optional<byte[]> value = getPathAttr(path, name);
+        if (value.isPresent() && XAttrsOverflow.isPointer(value.get()))
+            return XAttrsOverflow.read(this, Path.getPathWithoutSchemeAndAuthority(path).toString(),
+                name);
+        return value;
+    }
+
+    private static PathAttr nextResult(Deque<Future<PathAttr>> inFlight,
+        CompletionService<PathAttr> completion) throws InterruptedException, ExecutionException {
+
+        if (completion == null)
+            return inFlight.poll().get();
+        Future<PathAttr> done = completion.take();
+        inFlight.remove(done);
+        return done.get();
+    }
+
+    private static void accept(PathAttr result, BiConsumer<String, byte[]> consumer) {
+        if (result.value.isPresent())
+            consumer.accept(result.path.toString(), result.value.get());
     }
 
     @Override
@@ -140,24 +285,199 @@ public class SimpleHdfsClient implements HdfsClient {
         fs.setPermission(p, fsPermission);
     }
 
+    /**
+     * Each directory costs mkdirs, one call setting permission and ACL, and setOwner if owner is
+     * planned, without checking first whether it exists. Directories are provisioned after their
+     * planned ancestors, so that they inherit default ACLs of those.
+     */
+    @Override
+    public void provision(ProvisioningPlan plan) throws IOException {
+        ExecutorService executor = plan.getParallelism() > 1
+            ? Executors.newFixedThreadPool(plan.getParallelism()) : null;
+        try {
+            for (List<ProvisioningPlan.Directory> generation : generations(plan.getDirectories())) {
+                if (executor == null) {
+                    for (ProvisioningPlan.Directory directory : generation) {
+                        provision(directory);
+                    }
+                    continue;
+                }
+                List<Future<Void>> results = new ArrayList<>(generation.size());
+                generation.forEach(directory -> results.add(executor.submit(() -> {
+                    provision(directory);
+                    return null;
+                })));
+                IOException failure = null;
+                for (Future<Void> result : results) {
+                    try {
+                        result.get();
+                    } catch (ExecutionException e) {
+                        IOException cause = e.getCause() instanceof IOException
+                            ? (IOException) e.getCause() : new IOException(e.getCause());
+                        if (failure == null) {
+                            failure = cause;
+                        } else {
+                            failure.addSuppressed(cause);
+                        }
+                    }
+                }
+                if (failure != null) {
+                    throw failure;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while provisioning directories");
+        } finally {
+            if (executor != null) {
+                executor.shutdownNow();
+            }
+        }
+    }
+
+    private void provision(ProvisioningPlan.Directory directory) throws IOException {
+        Path p = getNormalizedPath(directory.getPath());
+        LOGGER.info("Provisioning directory: " + p);
+
+        Optional<FsPermission> permission = directory.getPermission();
+        boolean created = permission.isPresent() ? fs.mkdirs(p, permission.get()) : fs.mkdirs(p);
+        if (!created)
+            throw new IOException("Error while creating directory : " + p);
+
+        List<AclEntry> aclEntries = directory.getAclEntries();
+        if (permission.isPresent() && !aclEntries.isEmpty()) {
+            // base entries of the ACL set permission bits, except sticky bit
+            fs.setAcl(p, withBaseEntries(aclEntries, permission.get()));
+            if (permission.get().getStickyBit())
+                fs.setPermission(p, permission.get());
+        } else if (permission.isPresent()) {
+            // permission of created directory is masked by umask and existing one is unchanged
+            fs.setPermission(p, permission.get());
+        } else if (!aclEntries.isEmpty()) {
+            fs.modifyAclEntries(p, aclEntries);
+        }
+
+        if (directory.getOwner().isPresent() || directory.getGroup().isPresent())
+            fs.setOwner(p, directory.getOwner().orElse(null), directory.getGroup().orElse(null));
+    }
+
+    private static List<AclEntry> withBaseEntries(List<AclEntry> aclEntries,
+        FsPermission permission) {
+
+        List<AclEntry> entries = new ArrayList<>(aclEntries);
+        addBaseEntry(entries, AclEntryType.USER, permission.getUserAction());
+        addBaseEntry(entries, AclEntryType.GROUP, permission.getGroupAction());
+        addBaseEntry(entries, AclEntryType.OTHER, permission.getOtherAction());
+        return entries;
+    }
+
+    private static void addBaseEntry(List<AclEntry> entries, AclEntryType type, FsAction action) {
+        boolean present = entries.stream().anyMatch(entry -> entry.getScope() == AclEntryScope.ACCESS
+            && entry.getType() == type && entry.getName() == null);
+        if (!present) {
+            entries.add(new AclEntry.Builder().setScope(AclEntryScope.ACCESS).setType(type)
+                .setPermission(action).build());
+        }
+    }
+
+    /**
+     * Groups directories by number of their ancestors in the plan.
+     */
+    private List<List<ProvisioningPlan.Directory>> generations(
+        List<ProvisioningPlan.Directory> directories) {
+
+        SortedMap<Integer, List<ProvisioningPlan.Directory>> generations = new TreeMap<>();
+        for (ProvisioningPlan.Directory directory : directories) {
+            String path = getNormalizedPath(directory.getPath()).toString();
+            int ancestors = (int) directories.stream()
+                .map(other -> getNormalizedPath(other.getPath()).toString())
+                .filter(other -> path.startsWith(other.endsWith("/") ? other : other + "/"))
+                .count();
+            generations.computeIfAbsent(ancestors, key -> new ArrayList<>()).add(directory);
+        }
+        return new ArrayList<>(generations.values());
+    }
+
     @Override
     public List<String> listFiles(String path, boolean recursive) throws IOException {
-        List<String> files = new ArrayList<>();
-        FileStatus[] statuses = fs.listStatus(new Path(path));
+        try (Stream<FileStatus> statuses = streamFiles(path, recursive)) {
+            return statuses.map(status -> status.getPath().toString()).collect(Collectors.toList());
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    @Override
+    public Stream<FileStatus> streamFiles(String path, boolean recursive) throws IOException {
+        Iterator<FileStatus> statuses =
+            new FileStatusIterator(fs, fs.listLocatedStatus(new Path(path)), recursive);
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(statuses,
+            Spliterator.ORDERED | Spliterator.NONNULL), false);
+    }
 
-        for(FileStatus status: statuses) {
-            files.add(status.getPath().toString());
-            if(status.isDirectory() && recursive)
-                files.addAll(listFiles(status.getPath().toString(), recursive));
+    @Override
+    public void walkFiles(String path, int parallelism, Consumer<FileStatus> consumer)
+        throws IOException {
+
+        Preconditions.checkArgument(parallelism > 0, "Parallelism must be positive");
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            pool.invoke(new WalkTask(new Path(path), consumer));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            pool.shutdownNow();
         }
+    }
+
+    private final class WalkTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Path dir;
+
+        private final Consumer<FileStatus> consumer;
 
-        return files;
+        private WalkTask(Path dir, Consumer<FileStatus> consumer) {
+            this.dir = dir;
+            this.consumer = consumer;
+        }
+
+        @Override
+        protected void compute() {
+            List<WalkTask> subtrees = new ArrayList<>();
+            try {
+                RemoteIterator<LocatedFileStatus> statuses = fs.listLocatedStatus(dir);
+                while (statuses.hasNext()) {
+                    FileStatus status = statuses.next();
+                    consumer.accept(status);
+                    if (status.isDirectory()) {
+                        WalkTask subtree = new WalkTask(status.getPath(), consumer);
+                        subtree.fork();
+                        subtrees.add(subtree);
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            subtrees.forEach(WalkTask::join);
+        }
     }
 
     @Override public boolean isDirectory(String path) throws IOException {
         return fs.isDirectory(new Path(path));
     }
 
+    @Override
+    public boolean rename(String src, String dst) throws IOException {
+        Path destination = getNormalizedPath(dst);
+        // existing destination directory would get the source moved into it
+        if (fs.exists(destination))
+            return false;
+        fs.mkdirs(destination.getParent());
+        return fs.rename(getNormalizedPath(src), destination);
+    }
+
     @Override public boolean isFile(String path) throws IOException {
         return fs.isFile(new Path(path));
     }
@@ -179,6 +499,51 @@ public class SimpleHdfsClient implements HdfsClient {
         }
     }
 
+    @Override
+    public String createEncryptedZone(Path path) throws IOException {
+        String keyName;
+        if (keyPool != null) {
+            keyName = keyPool.take();
+        } else {
+            keyName = UUID.randomUUID().toString();
+            try {
+                createEncryptionZoneKey(keyName);
+            } catch (NoSuchAlgorithmException e) {
+                throw new IOException("Error while creating encryption key for: " + path, e);
+            }
+        }
+
+        try {
+            ((DistributedFileSystem) fs).createEncryptionZone(path, keyName);
+        } catch (IOException e) {
+            if (keyPool != null) {
+                if (isNotEncryptionZone(path)) {
+                    keyPool.giveBack(keyName);
+                } else {
+                    LOGGER.warn("Key {} not returned to the pool, it may protect zone {}", keyName,
+                        path);
+                }
+            }
+            throw e;
+        }
+        return keyName;
+    }
+
+    /**
+     * Checks that a zone whose creation failed doesn't exist, so its key can be used again. The
+     * zone could have been created before the failure was reported.
+     */
+    private boolean isNotEncryptionZone(Path path) {
+        try {
+            return ((DistributedFileSystem) fs).getEZForPath(path) == null;
+        } catch (FileNotFoundException e) {
+            return true;
+        } catch (IOException e) {
+            LOGGER.warn("Unable to check encryption zone of " + path, e);
+            return false;
+        }
+    }
+
     @Override
     public void createEmptyFile(String path) throws IOException {
         Path p = getNormalizedPath(path);
@@ -186,6 +551,31 @@ public class SimpleHdfsClient implements HdfsClient {
             throw new IOException("Error while creating file : " + p);
     }
 
+    @Override
+    public void writeFile(String path, byte[] content) throws IOException {
+        try (FSDataOutputStream out = fs.create(getNormalizedPath(path), true)) {
+            out.write(content);
+            out.hsync();
+        }
+    }
+
+    @Override
+    public Optional<byte[]> readFile(String path) throws IOException {
+        Path p = getNormalizedPath(path);
+        try (FSDataInputStream in = fs.open(p)) {
+            byte[] content = new byte[(int) fs.getFileStatus(p).getLen()];
+            in.readFully(0, content);
+            return Optional.of(content);
+        } catch (FileNotFoundException e) {
+            return Optional.empty();
+        }
+    }
+
+    @Override
+    public void touch(String path) throws IOException {
+        fs.setTimes(getNormalizedPath(path), System.currentTimeMillis(), -1);
+    }
+
     @Override
     public void deleteById(String path) throws IOException {
         Path p = getNormalizedPath(path);
@@ -198,17 +588,48 @@ public class SimpleHdfsClient implements HdfsClient {
         options.setDescription(key);
         options.setBitLength(256);
 
-        List<KeyProvider> providers = KeyProviderFactory.getProviders(fs.getConf());
-        Preconditions.checkArgument(!providers.isEmpty(), "KMS configuration required for creating encryption zones");
+        getKeyProvider().createKey(key, options);
+    }
+
+    /**
+     * Key provider is looked up once, providers created by the factory aren't shared.
+     */
+    synchronized KeyProvider getKeyProvider() throws IOException {
+        if (keyProvider == null) {
+            List<KeyProvider> providers = KeyProviderFactory.getProviders(fs.getConf());
+            Preconditions.checkArgument(!providers.isEmpty(), "KMS configuration required for creating encryption zones");
+            keyProvider = providers.get(0);
+        }
+        return keyProvider;
+    }
 
-        KeyProvider keyProvider = providers.get(0);
-        keyProvider.createKey(key, options);
+    private static ExecutorService createExecutor(int threads) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 1, TimeUnit.MINUTES,
+            new LinkedBlockingQueue<>(), runnable -> {
+                Thread thread = new Thread(runnable, "hdfs-client-attr-reader");
+                thread.setDaemon(true);
+                return thread;
+            });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
     }
 
     private Path getNormalizedPath(String dir) {
         return new Path(DirHelper.addLeadingSlash(DirHelper.removeLeadingSlashes(dir)));
     }
 
+    private static final class PathAttr {
+
+        private final Path path;
+
+        private final Optional<byte[]> value;
+
+        private PathAttr(Path path, Optional<byte[]> value) {
+            this.path = path;
+            this.value = value;
+        }
+    }
+
     private Optional<Path> getPathIfNotExsits(String path) throws IOException {
       Path p = getNormalizedPath(path);
       LOGGER.info("Creating directory: " + p);
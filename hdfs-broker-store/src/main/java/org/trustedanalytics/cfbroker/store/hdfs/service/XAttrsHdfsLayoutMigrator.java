@@ -0,0 +1,97 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.cfbroker.store.hdfs.service;
+
+import org.apache.hadoop.fs.FileStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.stream.Stream;
+
+/**
+ * Moves directories of objects saved by {@link XAttrsHdfsStore} from flat layout to another
+ * {@link MetadataLayout}. Every instance directory is moved, together with its bindings, with a
+ * single rename, so migration can run while brokers keep using the store, as long as their stores
+ * are created with migration from flat layout enabled.
+ */
+public class XAttrsHdfsLayoutMigrator {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(XAttrsHdfsLayoutMigrator.class);
+
+    private final HdfsClient hdfsClient;
+
+    private final String metadataPath;
+
+    private final MetadataLayout layout;
+
+    public XAttrsHdfsLayoutMigrator(HdfsClient hdfsClient, String metadataPath,
+        MetadataLayout layout) {
+
+        this.hdfsClient = hdfsClient;
+        this.metadataPath = metadataPath;
+        this.layout = layout;
+    }
+
+    /**
+     * @return number of moved instance directories
+     */
+    public int migrate() throws IOException {
+        if (layout == MetadataLayout.FLAT || !hdfsClient.isDirectory(metadataPath)) {
+            return 0;
+        }
+        int moved = 0;
+        try (Stream<FileStatus> statuses = hdfsClient.streamFiles(metadataPath, false)) {
+            Iterator<FileStatus> iterator = statuses.iterator();
+            while (iterator.hasNext()) {
+                FileStatus status = iterator.next();
+                String id = status.getPath().getName();
+                if (status.isDirectory() && !MetadataLayout.isBucketName(id)
+                    && move(hdfsClient, metadataPath, id, layout)) {
+                    moved++;
+                }
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        LOGGER.info("Moved {} instance directories of {} to {} layout", moved, metadataPath, layout);
+        return moved;
+    }
+
+    /**
+     * Moves directory of the instance, if it's still in flat layout.
+     * @return whether directory was moved
+     */
+    static boolean move(HdfsClient hdfsClient, String metadataPath, String id,
+        MetadataLayout layout) throws IOException {
+
+        String flatPath = MetadataLayout.FLAT.getInstancePath(metadataPath, id);
+        if (!hdfsClient.isDirectory(flatPath)) {
+            return false;
+        }
+        String path = layout.getInstancePath(metadataPath, id);
+        if (hdfsClient.rename(flatPath, path)) {
+            XAttrsHdfsStore.touchWithParents(hdfsClient, metadataPath, path);
+            return true;
+        }
+        if (hdfsClient.isDirectory(flatPath)) {
+            LOGGER.warn("Instance {} exists in both layouts, {} left in place", id, flatPath);
+        }
+        return false;
+    }
+}
@@ -0,0 +1,263 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.cfbroker.store.hdfs.service;
+
+import com.google.common.base.Preconditions;
+import org.apache.hadoop.fs.FileStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.trustedanalytics.cfbroker.store.api.Location;
+import org.trustedanalytics.cfbroker.store.hdfs.helper.DirHelper;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Snapshot of all objects saved by {@link XAttrsHdfsStore}, kept in a single file under metadata
+ * path, so that the state of the store can be loaded with one sequential read instead of reading
+ * attributes of every directory.
+ *
+ * The snapshot holds serialized objects, with overflowed ones already read from their data
+ * files, and the time at which collecting them started. Loading it reconciles the snapshot with
+ * the store: directories are listed, but attributes are read only from directories modified after
+ * that time (less the allowed clock skew between brokers and the NameNode), and only modified
+ * directories are descended into. Without a valid snapshot every attribute is read.
+ *
+ * The snapshot is created for a store, which has to track modification times. All other stores
+ * writing under the same metadata path have to track them as well, otherwise their changes can be
+ * missed.
+ */
+public class XAttrsHdfsSnapshot {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(XAttrsHdfsSnapshot.class);
+
+    public static final String SNAPSHOT_FILE = "_snapshot";
+
+    private static final int MAGIC = 0x42535350;
+
+    private static final int VERSION = 1;
+
+    private final HdfsClient hdfsClient;
+
+    private final String attributeName;
+
+    private final String metadataPath;
+
+    private final MetadataLayout layout;
+
+    private final long clockSkewMillis;
+
+    /**
+     * @throws IllegalArgumentException when the store doesn't track modification times
+     */
+    public XAttrsHdfsSnapshot(XAttrsHdfsStore<?> store, long clockSkew, TimeUnit unit) {
+        Preconditions.checkArgument(store.isTrackingModificationTimes(),
+            "Snapshot requires store tracking modification times");
+        Preconditions.checkArgument(clockSkew >= 0, "Clock skew can't be negative");
+        this.hdfsClient = store.getHdfsClient();
+        this.attributeName = store.getAttributeName();
+        this.metadataPath = DirHelper.removeTrailingSlashes(store.getMetadataPath());
+        this.layout = store.getLayout();
+        this.clockSkewMillis = unit.toMillis(clockSkew);
+    }
+
+    /**
+     * Loads current attribute values of all objects, using the snapshot when there's a valid one.
+     */
+    public Map<Location, byte[]> load() throws IOException {
+        Map<Location, byte[]> objects = new LinkedHashMap<>();
+        collect().records.forEach((path, value) -> layout.getLocation(path.split("/"))
+            .ifPresent(location -> objects.put(location, value)));
+        return objects;
+    }
+
+    /**
+     * Replaces the snapshot with a new one, built from the previous snapshot and changes made
+     * since it was written.
+     */
+    public synchronized void write() throws IOException {
+        long start = System.currentTimeMillis();
+        Snapshot snapshot = collect();
+        String tmpPath = snapshotPath() + ".tmp";
+        hdfsClient.writeFile(tmpPath, encode(snapshot));
+        if (hdfsClient.isFile(snapshotPath())) {
+            hdfsClient.deleteById(snapshotPath());
+        }
+        if (!hdfsClient.rename(tmpPath, snapshotPath())) {
+            throw new IOException("Unable to replace " + snapshotPath());
+        }
+        LOGGER.info("Snapshot of {} objects written in {} ms", snapshot.records.size(),
+            System.currentTimeMillis() - start);
+    }
+
+    public ScheduledFuture<?> scheduleWrites(ScheduledExecutorService executor, long period,
+        TimeUnit unit) {
+        return executor.scheduleWithFixedDelay(() -> {
+            try {
+                write();
+            } catch (IOException | RuntimeException e) {
+                LOGGER.warn("Unable to write snapshot of " + metadataPath, e);
+            }
+        }, period, period, unit);
+    }
+
+    private Snapshot collect() throws IOException {
+        long start = System.currentTimeMillis();
+        Optional<Snapshot> previous = read();
+        long modifiedSince = previous.map(snapshot -> snapshot.highWaterMark - clockSkewMillis)
+            .orElse(Long.MIN_VALUE);
+        SortedMap<String, byte[]> records = new TreeMap<>();
+        if (hdfsClient.isDirectory(metadataPath)) {
+            reconcile(metadataPath, "", 0, modifiedSince,
+                previous.map(snapshot -> snapshot.records).orElse(new TreeMap<>()), records);
+        }
+        return new Snapshot(start, records);
+    }
+
+    private void reconcile(String dir, String relativeDir, int depth, long modifiedSince,
+        SortedMap<String, byte[]> previous, SortedMap<String, byte[]> records) throws IOException {
+
+        List<FileStatus> children = new ArrayList<>();
+        try (Stream<FileStatus> statuses = hdfsClient.streamFiles(dir, false)) {
+            Iterator<FileStatus> iterator = statuses.iterator();
+            while (iterator.hasNext()) {
+                children.add(iterator.next());
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+
+        int childDepth = depth + 1;
+        for (FileStatus child : children) {
+            String name = child.getPath().getName();
+            if (!child.isDirectory() || name.startsWith("_") || name.startsWith(".")
+                || childDepth <= layout.getBucketDepth() && !MetadataLayout.isBucketName(name)) {
+                continue;
+            }
+            String path = DirHelper.concat(dir, name);
+            String relativePath = relativeDir.isEmpty() ? name : relativeDir + "/" + name;
+            if (child.getModificationTime() < modifiedSince) {
+                Optional.ofNullable(previous.get(relativePath))
+                    .ifPresent(value -> records.put(relativePath, value));
+                records.putAll(previous.subMap(relativePath + "/", relativePath + "0"));
+                continue;
+            }
+            if (childDepth > layout.getBucketDepth()) {
+                XAttrsOverflow.read(hdfsClient, path, attributeName)
+                    .ifPresent(value -> records.put(relativePath, value));
+            }
+            if (childDepth < layout.getBucketDepth() + 2) {
+                reconcile(path, relativePath, childDepth, modifiedSince, previous, records);
+            }
+        }
+    }
+
+    private Optional<Snapshot> read() throws IOException {
+        Optional<byte[]> content = hdfsClient.readFile(snapshotPath());
+        if (!content.isPresent()) {
+            return Optional.empty();
+        }
+        try {
+            return Optional.of(decode(content.get()));
+        } catch (IOException e) {
+            LOGGER.warn("Snapshot " + snapshotPath() + " ignored: " + e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    private byte[] encode(Snapshot snapshot) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeUTF(layout.name());
+        out.writeLong(snapshot.highWaterMark);
+        out.writeInt(snapshot.records.size());
+        for (Map.Entry<String, byte[]> record : snapshot.records.entrySet()) {
+            out.writeUTF(record.getKey());
+            out.writeInt(record.getValue().length);
+            out.write(record.getValue());
+        }
+        CRC32 crc = new CRC32();
+        crc.update(bytes.toByteArray());
+        out.writeLong(crc.getValue());
+        return bytes.toByteArray();
+    }
+
+    private Snapshot decode(byte[] content) throws IOException {
+        if (content.length < Long.BYTES) {
+            throw new IOException("snapshot truncated");
+        }
+        CRC32 crc = new CRC32();
+        crc.update(content, 0, content.length - Long.BYTES);
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(content));
+        in.skipBytes(content.length - Long.BYTES);
+        if (in.readLong() != crc.getValue()) {
+            throw new IOException("checksum mismatch");
+        }
+
+        in = new DataInputStream(new ByteArrayInputStream(content));
+        if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+            throw new IOException("unknown format");
+        }
+        if (!layout.name().equals(in.readUTF())) {
+            throw new IOException("snapshot of different layout");
+        }
+        long highWaterMark = in.readLong();
+        int count = in.readInt();
+        SortedMap<String, byte[]> records = new TreeMap<>();
+        for (int i = 0; i < count; i++) {
+            String path = in.readUTF();
+            byte[] value = new byte[in.readInt()];
+            in.readFully(value);
+            records.put(path, value);
+        }
+        return new Snapshot(highWaterMark, records);
+    }
+
+    private String snapshotPath() {
+        return DirHelper.concat(metadataPath, SNAPSHOT_FILE);
+    }
+
+    private static final class Snapshot {
+
+        private final long highWaterMark;
+
+        private final SortedMap<String, byte[]> records;
+
+        private Snapshot(long highWaterMark, SortedMap<String, byte[]> records) {
+            this.highWaterMark = highWaterMark;
+            this.records = records;
+        }
+    }
+}
@@ -0,0 +1,62 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.cfbroker.store.hdfs.service;
+
+import org.trustedanalytics.cfbroker.store.api.BrokerStoreScanner;
+import org.trustedanalytics.cfbroker.store.api.Location;
+import org.trustedanalytics.cfbroker.store.serialization.RepositoryDeserializer;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+/**
+ * Loads all objects saved by {@link XAttrsHdfsStore} through {@link XAttrsHdfsSnapshot}.
+ */
+public class XAttrsHdfsSnapshotScanner<T> implements BrokerStoreScanner<T> {
+
+    private final XAttrsHdfsSnapshot snapshot;
+
+    private final RepositoryDeserializer<T> deserializer;
+
+    private final boolean nested;
+
+    private XAttrsHdfsSnapshotScanner(XAttrsHdfsSnapshot snapshot,
+        RepositoryDeserializer<T> deserializer, boolean nested) {
+        this.snapshot = snapshot;
+        this.deserializer = deserializer;
+        this.nested = nested;
+    }
+
+    public static <T> XAttrsHdfsSnapshotScanner<T> forInstances(XAttrsHdfsSnapshot snapshot,
+        RepositoryDeserializer<T> deserializer) {
+        return new XAttrsHdfsSnapshotScanner<>(snapshot, deserializer, false);
+    }
+
+    public static <T> XAttrsHdfsSnapshotScanner<T> forBindings(XAttrsHdfsSnapshot snapshot,
+        RepositoryDeserializer<T> deserializer) {
+        return new XAttrsHdfsSnapshotScanner<>(snapshot, deserializer, true);
+    }
+
+    @Override
+    public void scan(BiConsumer<Location, T> consumer) throws IOException {
+        for (Map.Entry<Location, byte[]> object : snapshot.load().entrySet()) {
+            if (object.getKey().getParentId().isPresent() == nested) {
+                consumer.accept(object.getKey(), deserializer.deserialize(object.getValue()));
+            }
+        }
+    }
+}
@@ -15,6 +15,7 @@
  */
 package org.trustedanalytics.cfbroker.store.hdfs.service;
 
+import org.apache.hadoop.fs.FileStatus;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.trustedanalytics.cfbroker.store.api.BrokerStore;
@@ -24,13 +25,30 @@ import org.trustedanalytics.cfbroker.store.helper.LoggerHelper;
 import org.trustedanalytics.cfbroker.store.serialization.RepositoryDeserializer;
 import org.trustedanalytics.cfbroker.store.serialization.RepositorySerializer;
 
+import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.LinkedHashSet;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
 
+/**
+ * Keeps every object as an extended attribute of its own directory under metadata path. Objects
+ * larger than the inline threshold are written to a data file in that directory instead, see
+ * {@link XAttrsOverflow}.
+ */
 public class XAttrsHdfsStore<T> implements BrokerStore<T> {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(XAttrsHdfsStore.class);
 
+    /**
+     * NameNode rejects attributes larger than dfs.namenode.fs-limits.max-xattr-size, 16 KB by
+     * default, and the attribute name counts towards that limit too.
+     */
+    public static final int DEFAULT_INLINE_THRESHOLD = 15 * 1024;
+
     private final RepositorySerializer<T> serializer;
 
     private final RepositoryDeserializer<T> deserializer;
@@ -41,29 +59,68 @@ public class XAttrsHdfsStore<T> implements BrokerStore<T> {
 
     private final String metadataPath;
 
+    private final MetadataLayout layout;
+
+    private final boolean migratingFromFlat;
+
+    private final int inlineThreshold;
+
+    private final boolean trackModificationTimes;
+
     public XAttrsHdfsStore(HdfsClient hdfsClient, RepositorySerializer<T> serializer,
         RepositoryDeserializer<T> deserializer, String attributeName, String metadataPath) throws IOException {
 
+        this(hdfsClient, serializer, deserializer, attributeName, metadataPath, MetadataLayout.FLAT,
+            false, DEFAULT_INLINE_THRESHOLD, false);
+    }
+
+    /**
+     * See {@link XAttrsHdfsStoreBuilder} for the options.
+     */
+    XAttrsHdfsStore(HdfsClient hdfsClient, RepositorySerializer<T> serializer,
+        RepositoryDeserializer<T> deserializer, String attributeName, String metadataPath,
+        MetadataLayout layout, boolean migratingFromFlat, int inlineThreshold,
+        boolean trackModificationTimes) throws IOException {
+
         this.serializer = serializer;
         this.deserializer = deserializer;
         this.hdfsClient = hdfsClient;
         this.attributeName = attributeName;
         this.metadataPath = metadataPath;
+        this.layout = layout;
+        this.migratingFromFlat = migratingFromFlat && layout != MetadataLayout.FLAT;
+        this.inlineThreshold = inlineThreshold;
+        this.trackModificationTimes = trackModificationTimes;
     }
 
     @Override
     public void save(Location location, T t) throws IOException {
         String path = getPath(location);
         LOGGER.info(LoggerHelper.getParamsAsString("Saving instance in directory", path));
+        if (migratingFromFlat) {
+            moveFromFlat(location);
+        }
         hdfsClient.createDir(path);
-        hdfsClient.addPathAttr(path, attributeName, serializer.serialize(t));
+        XAttrsOverflow.write(hdfsClient, path, attributeName, serializer.serialize(t),
+            inlineThreshold);
+        if (trackModificationTimes) {
+            touchWithParents(hdfsClient, metadataPath, path);
+        }
     }
 
     @Override
     public Optional<T> getById(Location location) throws IOException {
         String path = getPath(location);
         LOGGER.info("getById(" + path + ")");
-        Optional<byte[]> data = hdfsClient.getPathAttr(path, attributeName);
+        Optional<byte[]> data = Optional.empty();
+        if (migratingFromFlat) {
+            // objects are moved only from flat layout, so reading it first can't miss one being moved
+            data = XAttrsOverflow.read(hdfsClient,
+                MetadataLayout.FLAT.getPath(metadataPath, location), attributeName);
+        }
+        if (!data.isPresent()) {
+            data = XAttrsOverflow.read(hdfsClient, path, attributeName);
+        }
         return data.isPresent()
             ? Optional.of(deserializer.deserialize(data.get())) : Optional.empty();
     }
@@ -72,13 +129,89 @@ public class XAttrsHdfsStore<T> implements BrokerStore<T> {
     public Optional<T> deleteById(Location location) throws IOException {
         Optional<T> instance = getById(location);
         if (instance.isPresent()) {
-            hdfsClient.deleteById(getPath(location));
+            if (migratingFromFlat) {
+                moveFromFlat(location);
+            }
+            String path = getPath(location);
+            hdfsClient.deleteById(path);
+            if (trackModificationTimes) {
+                touchWithParents(hdfsClient, metadataPath, path.substring(0, path.lastIndexOf('/')));
+            }
         }
         return instance;
     }
 
+    /**
+     * Removes data files of overflowed objects that are no longer referenced, e.g. left after an
+     * object shrank below the inline threshold, and weren't modified for the given time. Lists the
+     * whole metadata path, so it's meant to be run occasionally, as maintenance.
+     * @return number of removed files
+     */
+    public int sweepDataFiles(long minAge, TimeUnit unit) throws IOException {
+        if (!hdfsClient.isDirectory(metadataPath)) {
+            return 0;
+        }
+        Set<String> directories = new LinkedHashSet<>();
+        try (Stream<FileStatus> files = hdfsClient.streamFiles(metadataPath, true)) {
+            files.filter(file -> file.isFile() && XAttrsOverflow.isDataFile(file.getPath().getName()))
+                .forEach(file -> directories.add(file.getPath().getParent().toUri().getPath()));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        int removed = 0;
+        for (String directory : directories) {
+            removed += XAttrsOverflow.sweep(hdfsClient, directory, attributeName, unit.toMillis(minAge));
+        }
+        LOGGER.info("Removed {} unreferenced data files under {}", removed, metadataPath);
+        return removed;
+    }
+
+    /**
+     * Setting attribute doesn't change modification time of the directory and removing directory
+     * changes it only for its parent, so stores tracking modification times update them explicitly,
+     * up to the metadata path. {@link XAttrsHdfsSnapshot} relies on them to find changed objects.
+     */
+    static void touchWithParents(HdfsClient hdfsClient, String metadataPath, String path)
+        throws IOException {
+
+        String root = DirHelper.removeTrailingSlashes(metadataPath);
+        try {
+            for (String dir = path; dir.length() > root.length() && dir.startsWith(root);
+                dir = dir.substring(0, dir.lastIndexOf('/'))) {
+                hdfsClient.touch(dir);
+            }
+        } catch (FileNotFoundException e) {
+            LOGGER.debug("Path removed before modification time was set", e);
+        }
+    }
+
+    HdfsClient getHdfsClient() {
+        return hdfsClient;
+    }
+
+    String getAttributeName() {
+        return attributeName;
+    }
+
+    String getMetadataPath() {
+        return metadataPath;
+    }
+
+    MetadataLayout getLayout() {
+        return layout;
+    }
+
+    boolean isTrackingModificationTimes() {
+        return trackModificationTimes;
+    }
+
+    private void moveFromFlat(Location location) throws IOException {
+        XAttrsHdfsLayoutMigrator.move(hdfsClient, metadataPath,
+            location.getParentId().orElse(location.getId()), layout);
+    }
+
     private String getPath(Location location) {
-        return DirHelper.concat(metadataPath, location.getPath());
+        return layout.getPath(metadataPath, location);
     }
 
 }
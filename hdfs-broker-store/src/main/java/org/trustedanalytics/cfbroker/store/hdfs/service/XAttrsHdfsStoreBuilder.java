@@ -0,0 +1,85 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.cfbroker.store.hdfs.service;
+
+import com.google.common.base.Preconditions;
+import org.trustedanalytics.cfbroker.store.serialization.RepositoryDeserializer;
+import org.trustedanalytics.cfbroker.store.serialization.RepositorySerializer;
+
+import java.io.IOException;
+
+public class XAttrsHdfsStoreBuilder<T> {
+
+    private final HdfsClient hdfsClient;
+    private final RepositorySerializer<T> serializer;
+    private final RepositoryDeserializer<T> deserializer;
+    private final String attributeName;
+    private final String metadataPath;
+    private MetadataLayout layout = MetadataLayout.FLAT;
+    private boolean migratingFromFlat;
+    private int inlineThreshold = XAttrsHdfsStore.DEFAULT_INLINE_THRESHOLD;
+    private boolean trackModificationTimes;
+
+    public XAttrsHdfsStoreBuilder(HdfsClient hdfsClient, RepositorySerializer<T> serializer,
+        RepositoryDeserializer<T> deserializer, String attributeName, String metadataPath) {
+
+        this.hdfsClient = hdfsClient;
+        this.serializer = serializer;
+        this.deserializer = deserializer;
+        this.attributeName = attributeName;
+        this.metadataPath = metadataPath;
+    }
+
+    public XAttrsHdfsStoreBuilder<T> withLayout(MetadataLayout layout) {
+        this.layout = Preconditions.checkNotNull(layout);
+        return this;
+    }
+
+    /**
+     * Lets objects still be in flat layout, while {@link XAttrsHdfsLayoutMigrator} is moving them;
+     * such objects are read from flat layout and moved before being changed. Has no effect with
+     * flat layout.
+     */
+    public XAttrsHdfsStoreBuilder<T> migratingFromFlat() {
+        this.migratingFromFlat = true;
+        return this;
+    }
+
+    /**
+     * Sets size of the largest serialized object kept in the attribute itself, larger objects are
+     * written to a data file, see {@link XAttrsOverflow}.
+     */
+    public XAttrsHdfsStoreBuilder<T> withInlineThreshold(int inlineThreshold) {
+        Preconditions.checkArgument(inlineThreshold >= 0, "Inline threshold can't be negative");
+        this.inlineThreshold = inlineThreshold;
+        return this;
+    }
+
+    /**
+     * Sets modification times of changed directories up to metadata path, as
+     * {@link XAttrsHdfsSnapshot} requires. Costs one extra NameNode call per directory level on
+     * every change.
+     */
+    public XAttrsHdfsStoreBuilder<T> trackingModificationTimes() {
+        this.trackModificationTimes = true;
+        return this;
+    }
+
+    public XAttrsHdfsStore<T> build() throws IOException {
+        return new XAttrsHdfsStore<>(hdfsClient, serializer, deserializer, attributeName,
+            metadataPath, layout, migratingFromFlat, inlineThreshold, trackModificationTimes);
+    }
+}
@@ -0,0 +1,171 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.cfbroker.store.hdfs.service;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import org.apache.hadoop.fs.Path;
+import org.trustedanalytics.cfbroker.store.api.BrokerStoreScanner;
+import org.trustedanalytics.cfbroker.store.api.Location;
+import org.trustedanalytics.cfbroker.store.hdfs.helper.DirHelper;
+import org.trustedanalytics.cfbroker.store.serialization.RepositoryDeserializer;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.BiConsumer;
+
+/**
+ * Loads all objects saved by {@link XAttrsHdfsStore}. Attributes are read in parallel by a fixed
+ * number of threads, in chunks, so that the NameNode isn't flooded with requests.
+ */
+public class XAttrsHdfsStoreScanner<T> implements BrokerStoreScanner<T> {
+
+    private static final int CHUNK_SIZE_PER_THREAD = 16;
+
+    private final HdfsClient hdfsClient;
+
+    private final RepositoryDeserializer<T> deserializer;
+
+    private final String attributeName;
+
+    private final String metadataPath;
+
+    private final boolean nested;
+
+    private final int parallelism;
+
+    private final MetadataLayout layout;
+
+    private XAttrsHdfsStoreScanner(HdfsClient hdfsClient, RepositoryDeserializer<T> deserializer,
+        String attributeName, String metadataPath, boolean nested, int parallelism,
+        MetadataLayout layout) {
+
+        Preconditions.checkArgument(parallelism > 0, "Parallelism must be positive");
+        this.hdfsClient = hdfsClient;
+        this.deserializer = deserializer;
+        this.attributeName = attributeName;
+        this.metadataPath = metadataPath;
+        this.nested = nested;
+        this.parallelism = parallelism;
+        this.layout = layout;
+    }
+
+    public static <T> XAttrsHdfsStoreScanner<T> forInstances(HdfsClient hdfsClient,
+        RepositoryDeserializer<T> deserializer, String attributeName, String metadataPath,
+        int parallelism) {
+        return forInstances(hdfsClient, deserializer, attributeName, metadataPath, parallelism,
+            MetadataLayout.FLAT);
+    }
+
+    public static <T> XAttrsHdfsStoreScanner<T> forInstances(HdfsClient hdfsClient,
+        RepositoryDeserializer<T> deserializer, String attributeName, String metadataPath,
+        int parallelism, MetadataLayout layout) {
+        return new XAttrsHdfsStoreScanner<>(hdfsClient, deserializer, attributeName, metadataPath,
+            false, parallelism, layout);
+    }
+
+    public static <T> XAttrsHdfsStoreScanner<T> forBindings(HdfsClient hdfsClient,
+        RepositoryDeserializer<T> deserializer, String attributeName, String metadataPath,
+        int parallelism) {
+        return forBindings(hdfsClient, deserializer, attributeName, metadataPath, parallelism,
+            MetadataLayout.FLAT);
+    }
+
+    public static <T> XAttrsHdfsStoreScanner<T> forBindings(HdfsClient hdfsClient,
+        RepositoryDeserializer<T> deserializer, String attributeName, String metadataPath,
+        int parallelism, MetadataLayout layout) {
+        return new XAttrsHdfsStoreScanner<>(hdfsClient, deserializer, attributeName, metadataPath,
+            true, parallelism, layout);
+    }
+
+    @Override
+    public void scan(BiConsumer<Location, T> consumer) throws IOException {
+        if (!hdfsClient.isDirectory(metadataPath)) {
+            return;
+        }
+        List<Location> locations = new ArrayList<>();
+        for (String id : listInstanceIds()) {
+            if (nested) {
+                listNames(layout.getInstancePath(metadataPath, id))
+                    .forEach(childId -> locations.add(Location.newInstance(childId, id)));
+            } else {
+                locations.add(Location.newInstance(id));
+            }
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+        try {
+            for (List<Location> chunk : Lists.partition(locations, parallelism * CHUNK_SIZE_PER_THREAD)) {
+                List<Callable<Void>> tasks = new ArrayList<>(chunk.size());
+                chunk.forEach(location -> tasks.add(() -> load(location, consumer)));
+                for (Future<Void> result : executor.invokeAll(tasks)) {
+                    result.get();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while scanning " + metadataPath, e);
+        } catch (ExecutionException e) {
+            throw new IOException("Error while scanning " + metadataPath, e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private Void load(Location location, BiConsumer<Location, T> consumer) throws IOException {
+        Optional<byte[]> data =
+            XAttrsOverflow.read(hdfsClient, layout.getPath(metadataPath, location), attributeName);
+        if (data.isPresent()) {
+            consumer.accept(location, deserializer.deserialize(data.get()));
+        }
+        return null;
+    }
+
+    private List<String> listInstanceIds() throws IOException {
+        List<String> buckets = Collections.singletonList(metadataPath);
+        for (int level = 0; level < layout.getBucketDepth(); level++) {
+            List<String> nextLevel = new ArrayList<>();
+            for (String bucket : buckets) {
+                listNames(bucket).stream()
+                    .filter(MetadataLayout::isBucketName)
+                    .forEach(name -> nextLevel.add(DirHelper.concat(bucket, name)));
+            }
+            buckets = nextLevel;
+        }
+        List<String> ids = new ArrayList<>();
+        for (String bucket : buckets) {
+            ids.addAll(listNames(bucket));
+        }
+        return ids;
+    }
+
+    private List<String> listNames(String path) throws IOException {
+        List<String> names = new ArrayList<>();
+        hdfsClient.listFiles(path, false).stream()
+            .map(file -> new Path(file).getName())
+            .filter(name -> !name.startsWith("_"))
+            .forEach(names::add);
+        return names;
+    }
+}
@@ -0,0 +1,209 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.cfbroker.store.hdfs.service;
+
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.Path;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.trustedanalytics.cfbroker.store.hdfs.helper.DirHelper;
+import org.trustedanalytics.cfbroker.store.serialization.PayloadFormat;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Keeps payloads of {@link XAttrsHdfsStore} that don't fit into an extended attribute in data files.
+ *
+ * Payloads up to the inline threshold are stored in the attribute itself. Larger ones are written
+ * to a new file in the object's directory and the attribute gets a pointer to it: the
+ * {@link PayloadFormat#OVERFLOW} tag, length and CRC32 of the payload and the file name. Every
+ * write uses a file with a new name, so readers never see a partially written payload. A reader
+ * that finds the file missing or not matching the checksum reads the attribute again, to follow a
+ * pointer replaced meanwhile.
+ *
+ * Writes don't read the attribute they replace, so small objects are saved with a single call.
+ * Data files no longer referenced, left by replaced payloads or by concurrent writers, are removed
+ * by {@link #sweep}, after every overflowing write and by {@link XAttrsHdfsStore#sweepDataFiles}.
+ * Only files older than a grace period are removed, so that a file whose pointer is about to be
+ * set by another writer is kept.
+ */
+final class XAttrsOverflow {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(XAttrsOverflow.class);
+
+    static final String DATA_FILE_PREFIX = "_data-";
+
+    private static final int MAX_READ_ATTEMPTS = 3;
+
+    /**
+     * Covers the time between writing a data file and setting the pointer, and clock differences
+     * between brokers and the NameNode, which sets modification times.
+     */
+    static final long DATA_FILE_GRACE_MILLIS = TimeUnit.MINUTES.toMillis(10);
+
+    private XAttrsOverflow() {
+    }
+
+    /**
+     * Reads payload stored under the attribute, following the pointer when it overflowed.
+     * @return empty when there's no attribute
+     */
+    static Optional<byte[]> read(HdfsClient hdfsClient, String path, String attributeName)
+        throws IOException {
+
+        Optional<byte[]> value = hdfsClient.getPathAttr(path, attributeName);
+        for (int attempt = 1; value.isPresent() && isPointer(value.get()); attempt++) {
+            Pointer pointer = Pointer.decode(value.get());
+            String filePath = DirHelper.concat(path, pointer.fileName);
+            Optional<byte[]> payload = hdfsClient.readFile(filePath);
+            if (payload.isPresent() && pointer.matches(payload.get())) {
+                return payload;
+            }
+            Optional<byte[]> current = hdfsClient.getPathAttr(path, attributeName);
+            if (attempt == MAX_READ_ATTEMPTS
+                || current.isPresent() && Arrays.equals(current.get(), value.get())) {
+                throw new IOException("Overflow file " + filePath
+                    + (payload.isPresent() ? " doesn't match its checksum" : " is missing"));
+            }
+            value = current;
+        }
+        return value;
+    }
+
+    /**
+     * Stores payload inline or in a data file, depending on its size. The directory has to exist.
+     */
+    static void write(HdfsClient hdfsClient, String path, String attributeName, byte[] payload,
+        int inlineThreshold) throws IOException {
+
+        if (payload.length <= inlineThreshold) {
+            hdfsClient.addPathAttr(path, attributeName, payload);
+            return;
+        }
+        Pointer pointer = new Pointer(payload, DATA_FILE_PREFIX + UUID.randomUUID());
+        hdfsClient.writeFile(DirHelper.concat(path, pointer.fileName), payload);
+        hdfsClient.addPathAttr(path, attributeName, pointer.encode());
+        try {
+            sweep(hdfsClient, path, attributeName, DATA_FILE_GRACE_MILLIS);
+        } catch (IOException e) {
+            LOGGER.warn("Unable to remove unreferenced data files in " + path, e);
+        }
+    }
+
+    /**
+     * Removes data files in the directory that its attribute doesn't point to and that weren't
+     * modified for the given time. Directories without the attribute are left alone, their files
+     * may belong to an object of another store.
+     * @return number of removed files
+     */
+    static int sweep(HdfsClient hdfsClient, String path, String attributeName, long minAgeMillis)
+        throws IOException {
+
+        Optional<byte[]> value = hdfsClient.getPathAttr(path, attributeName);
+        if (!value.isPresent()) {
+            return 0;
+        }
+        String referenced = isPointer(value.get()) ? Pointer.decode(value.get()).fileName : null;
+        long modifiedBefore = System.currentTimeMillis() - minAgeMillis;
+        List<Path> unreferenced = new ArrayList<>();
+        try (Stream<FileStatus> files = hdfsClient.streamFiles(path, false)) {
+            files.filter(file -> file.isFile() && isDataFile(file.getPath().getName())
+                && !file.getPath().getName().equals(referenced)
+                && file.getModificationTime() < modifiedBefore)
+                .forEach(file -> unreferenced.add(file.getPath()));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        for (Path file : unreferenced) {
+            hdfsClient.deleteById(DirHelper.concat(path, file.getName()));
+        }
+        return unreferenced.size();
+    }
+
+    static boolean isDataFile(String name) {
+        return name.startsWith(DATA_FILE_PREFIX);
+    }
+
+    static boolean isPointer(byte[] value) {
+        return PayloadFormat.isTagged(value, PayloadFormat.OVERFLOW);
+    }
+
+    private static long checksum(byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(payload, 0, payload.length);
+        return crc.getValue();
+    }
+
+    private static final class Pointer {
+
+        private final int length;
+
+        private final long checksum;
+
+        private final String fileName;
+
+        private Pointer(byte[] payload, String fileName) {
+            this(payload.length, checksum(payload), fileName);
+        }
+
+        private Pointer(int length, long checksum, String fileName) {
+            this.length = length;
+            this.checksum = checksum;
+            this.fileName = fileName;
+        }
+
+        private boolean matches(byte[] payload) {
+            return payload.length == length && checksum(payload) == checksum;
+        }
+
+        private byte[] encode() throws IOException {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(PayloadFormat.OVERFLOW);
+            out.writeInt(length);
+            out.writeLong(checksum);
+            out.writeUTF(fileName);
+            out.flush();
+            return bytes.toByteArray();
+        }
+
+        private static Pointer decode(byte[] value) throws IOException {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(value, 1, value.length - 1));
+            try {
+                Pointer pointer = new Pointer(in.readInt(), in.readLong(), in.readUTF());
+                if (!isDataFile(pointer.fileName) || pointer.fileName.contains("/")) {
+                    throw new IOException("Invalid overflow file name " + pointer.fileName);
+                }
+                return pointer;
+            } catch (IOException e) {
+                throw new IOException("Malformed overflow pointer", e);
+            }
+        }
+    }
+}
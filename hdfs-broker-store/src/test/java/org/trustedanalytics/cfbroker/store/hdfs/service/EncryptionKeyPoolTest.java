@@ -0,0 +1,136 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.cfbroker.store.hdfs.service;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.startsWith;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.crypto.key.KeyProvider;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+@RunWith(MockitoJUnitRunner.class)
+public class EncryptionKeyPoolTest {
+
+    @Mock
+    private KeyProvider keyProvider;
+
+    private EncryptionKeyPool pool;
+
+    @After
+    public void tearDown() {
+        if (pool != null) {
+            pool.close();
+        }
+    }
+
+    @Test
+    public void start_emptyPool_createsKeysUpToSize() throws Exception {
+        pool = newPool(5, 2);
+        pool.start();
+
+        awaitTrue(() -> pool.getDepth() == 5);
+        verify(keyProvider, times(5)).createKey(anyString(), any(KeyProvider.Options.class));
+        assertThat(pool.getCreatedCount(), equalTo(5L));
+    }
+
+    @Test
+    public void take_belowLowWatermark_replenishesInBackground() throws Exception {
+        pool = newPool(4, 2);
+        pool.start();
+        awaitTrue(() -> pool.getDepth() == 4);
+
+        for (int i = 0; i < 3; i++) {
+            assertThat(pool.take(), startsWith("broker-"));
+        }
+        awaitTrue(() -> pool.getDepth() == 4);
+        assertThat(pool.getTakenCount(), equalTo(3L));
+        assertThat(pool.getMissCount(), equalTo(0L));
+        assertThat(pool.getCreatedCount(), equalTo(7L));
+    }
+
+    @Test
+    public void take_emptyPool_createsKeySynchronously() throws Exception {
+        pool = newPool(2, 0);
+
+        assertThat(pool.take(), startsWith("broker-"));
+        assertThat(pool.getMissCount(), equalTo(1L));
+    }
+
+    @Test(expected = IOException.class)
+    public void take_emptyPoolAndProviderFails_throwsIOException() throws Exception {
+        when(keyProvider.createKey(anyString(), any(KeyProvider.Options.class)))
+            .thenThrow(new IOException("KMS unavailable"));
+        pool = newPool(2, 0);
+        pool.take();
+    }
+
+    @Test
+    public void take_emptyPoolAndProviderFails_notCountedAsTaken() throws Exception {
+        when(keyProvider.createKey(anyString(), any(KeyProvider.Options.class)))
+            .thenThrow(new IOException("KMS unavailable"));
+        pool = newPool(2, 0);
+
+        try {
+            pool.take();
+        } catch (IOException e) {
+            // expected
+        }
+
+        assertThat(pool.getTakenCount(), equalTo(0L));
+        assertThat(pool.getMissCount(), equalTo(1L));
+    }
+
+    @Test
+    public void close_unusedKeys_deletesThem() throws Exception {
+        pool = newPool(3, 1);
+        pool.start();
+        awaitTrue(() -> pool.getDepth() == 3);
+        pool.take();
+
+        pool.close();
+        verify(keyProvider, times(2)).deleteKey(anyString());
+        assertThat(pool.getDepth(), equalTo(0));
+    }
+
+    private EncryptionKeyPool newPool(int size, int lowWatermark) {
+        return new EncryptionKeyPool(keyProvider, new Configuration(false), "broker-", size,
+            lowWatermark);
+    }
+
+    private static void awaitTrue(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean() && System.nanoTime() < deadline) {
+            TimeUnit.MILLISECONDS.sleep(10);
+        }
+        assertTrue(condition.getAsBoolean());
+    }
+}
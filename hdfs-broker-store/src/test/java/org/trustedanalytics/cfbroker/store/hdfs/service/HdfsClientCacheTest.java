@@ -0,0 +1,128 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.cfbroker.store.hdfs.service;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.base.Ticker;
+import org.apache.hadoop.fs.FileSystem;
+import org.junit.Before;
+import org.junit.Test;
+
+public class HdfsClientCacheTest {
+
+    private final Map<String, FileSystem> created = new HashMap<>();
+
+    private final AtomicLong time = new AtomicLong();
+
+    private HdfsClientCache cache;
+
+    @Before
+    public void setup() {
+        cache = newCache(2);
+    }
+
+    @Test
+    public void execute_sameUser_reusesClient() throws Exception {
+        HdfsClient first = cache.execute("user", client -> client);
+        HdfsClient second = cache.execute("user", client -> client);
+
+        assertThat(second, sameInstance(first));
+        assertThat(cache.getRequestCount(), equalTo(2L));
+        assertThat(cache.getLoadCount(), equalTo(1L));
+        assertThat(cache.getOpenCount(), equalTo(1));
+    }
+
+    @Test
+    public void execute_moreUsersThanLimit_closesEvictedFileSystem() throws Exception {
+        cache = newCache(1);
+        cache.execute("user1", client -> null);
+        cache.execute("user2", client -> null);
+
+        verify(created.get("user1")).close();
+        verify(created.get("user2"), never()).close();
+        assertThat(cache.getEvictionCount(), equalTo(1L));
+        assertThat(cache.getOpenCount(), equalTo(1));
+    }
+
+    @Test
+    public void execute_evictedWhileInUse_closesFileSystemAfterOperation() throws Exception {
+        cache = newCache(1);
+        cache.execute("user1", client -> {
+            cache.execute("user2", other -> null);
+            verify(created.get("user1"), never()).close();
+            return null;
+        });
+
+        verify(created.get("user1")).close();
+        assertThat(cache.getOpenCount(), equalTo(1));
+    }
+
+    @Test
+    public void cleanUp_idleLongerThanExpiration_closesFileSystem() throws Exception {
+        cache.execute("user", client -> null);
+        time.addAndGet(TimeUnit.MINUTES.toNanos(11));
+        cache.cleanUp();
+
+        verify(created.get("user")).close();
+        assertThat(cache.size(), equalTo(0L));
+        cache.execute("user", client -> null);
+        assertThat(cache.getLoadCount(), equalTo(2L));
+    }
+
+    @Test(expected = IOException.class)
+    public void execute_factoryFails_throwsIOException() throws Exception {
+        cache = new HdfsClientCache(user -> {
+            throw new IOException("authentication failed");
+        }, 2, 10, TimeUnit.MINUTES);
+        cache.execute("user", client -> null);
+    }
+
+    @Test
+    public void close_cachedFileSystems_closesAll() throws Exception {
+        cache.execute("user1", client -> null);
+        cache.execute("user2", client -> null);
+        cache.close();
+
+        verify(created.get("user1")).close();
+        verify(created.get("user2")).close();
+        assertThat(cache.getOpenCount(), equalTo(0));
+    }
+
+    private HdfsClientCache newCache(int size) {
+        return new HdfsClientCache(user -> {
+            FileSystem fs = mock(FileSystem.class);
+            created.put(user, fs);
+            return fs;
+        }, size, 10, TimeUnit.MINUTES, new Ticker() {
+            @Override
+            public long read() {
+                return time.get();
+            }
+        });
+    }
+}
@@ -0,0 +1,119 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.cfbroker.store.hdfs.service;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileUtil;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.DistributedFileSystem;
+import org.apache.hadoop.hdfs.MiniDFSCluster;
+import org.apache.hadoop.hdfs.client.HdfsAdmin;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.trustedanalytics.cfbroker.store.api.Location;
+import org.trustedanalytics.cfbroker.store.cache.InvalidationListener;
+
+public class HdfsInotifyInvalidationSourceTest {
+
+    private static final String ATTR = "user.broker";
+
+    private static final String METADATA_PATH = "/broker/inotify";
+
+    private static final long TIMEOUT_MILLIS = 10000;
+
+    private static final Location INSTANCE = Location.newInstance("instance");
+
+    private static final Location BINDING = Location.newInstance("binding", "instance");
+
+    private static MiniDFSCluster cluster;
+
+    private static Configuration conf;
+
+    private DistributedFileSystem fs;
+
+    private XAttrsHdfsStore<String> store;
+
+    private InvalidationListener listener;
+
+    private HdfsInotifyInvalidationSource source;
+
+    @BeforeClass
+    public static void initialize() throws IOException {
+        File baseDir = new File("./target/hdfs/inotify").getAbsoluteFile();
+        FileUtil.fullyDelete(baseDir);
+        conf = new Configuration(false);
+        conf.set(MiniDFSCluster.HDFS_MINIDFS_BASEDIR, baseDir.getAbsolutePath());
+        cluster = new MiniDFSCluster.Builder(conf).build();
+        cluster.waitClusterUp();
+    }
+
+    @AfterClass
+    public static void shutdown() {
+        cluster.shutdown();
+    }
+
+    @Before
+    public void setup() throws IOException {
+        fs = cluster.getFileSystem();
+        store = new XAttrsHdfsStore<>(new SimpleHdfsClient(fs), String::getBytes, String::new, ATTR,
+            METADATA_PATH);
+        store.save(INSTANCE, "instance");
+        store.save(BINDING, "binding");
+        listener = mock(InvalidationListener.class);
+        source = new HdfsInotifyInvalidationSource(new HdfsAdmin(cluster.getURI(), conf),
+            METADATA_PATH);
+        source.start(listener);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        source.close();
+        fs.delete(new Path(METADATA_PATH), true);
+    }
+
+    @Test
+    public void start_attributeChanged_invalidatesObject() throws Exception {
+        store.save(BINDING, "changed");
+
+        verify(listener, timeout(TIMEOUT_MILLIS)).invalidate(BINDING);
+    }
+
+    @Test
+    public void start_instanceDeleted_invalidatesInstanceAndItsBindings() throws Exception {
+        store.deleteById(INSTANCE);
+
+        verify(listener, timeout(TIMEOUT_MILLIS)).invalidate(INSTANCE);
+        verify(listener, timeout(TIMEOUT_MILLIS)).invalidateChildren(INSTANCE.getId());
+    }
+
+    @Test
+    public void start_instanceRenamed_invalidatesSourceAndDestination() throws Exception {
+        fs.rename(new Path(METADATA_PATH, "instance"), new Path(METADATA_PATH, "renamed"));
+
+        verify(listener, timeout(TIMEOUT_MILLIS)).invalidate(INSTANCE);
+        verify(listener, timeout(TIMEOUT_MILLIS)).invalidate(Location.newInstance("renamed"));
+    }
+}
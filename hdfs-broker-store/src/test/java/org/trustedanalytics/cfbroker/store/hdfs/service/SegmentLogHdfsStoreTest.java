@@ -0,0 +1,251 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.cfbroker.store.hdfs.service;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Optional;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileUtil;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.DistributedFileSystem;
+import org.apache.hadoop.hdfs.MiniDFSCluster;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.trustedanalytics.cfbroker.store.api.Location;
+import org.trustedanalytics.cfbroker.store.serialization.JSONSerDeFactory;
+import org.trustedanalytics.cfbroker.store.serialization.SerDeFactory;
+
+public class SegmentLogHdfsStoreTest {
+
+    private static final String STORE_PATH = "/broker/log";
+
+    private static MiniDFSCluster cluster;
+
+    private DistributedFileSystem fs;
+
+    private SegmentLogHdfsStore<String> store;
+
+    @BeforeClass
+    public static void initialize() throws IOException {
+        File baseDir = new File("./target/hdfs/segmentLog").getAbsoluteFile();
+        FileUtil.fullyDelete(baseDir);
+        Configuration conf = new Configuration(false);
+        conf.set(MiniDFSCluster.HDFS_MINIDFS_BASEDIR, baseDir.getAbsolutePath());
+        cluster = new MiniDFSCluster.Builder(conf).build();
+        cluster.waitClusterUp();
+    }
+
+    @AfterClass
+    public static void shutdown() {
+        cluster.shutdown();
+    }
+
+    @Before
+    public void setup() throws IOException {
+        fs = cluster.getFileSystem();
+        store = newStore(256);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        store.close();
+        fs.delete(new Path(STORE_PATH), true);
+    }
+
+    @Test
+    public void getById_savedAndOverwritten_returnsLastValue() throws Exception {
+        store.save(Location.newInstance("instance"), "first");
+        store.save(Location.newInstance("binding", "instance"), "binding");
+        store.save(Location.newInstance("instance"), "second");
+
+        assertThat(store.getById(Location.newInstance("instance")), equalTo(Optional.of("second")));
+        assertThat(store.getById(Location.newInstance("binding", "instance")),
+            equalTo(Optional.of("binding")));
+        assertThat(store.getById(Location.newInstance("other")), equalTo(Optional.empty()));
+    }
+
+    @Test
+    public void deleteById_saved_returnsValueAndRemovesIt() throws Exception {
+        store.save(Location.newInstance("instance"), "value");
+
+        assertThat(store.deleteById(Location.newInstance("instance")), equalTo(Optional.of("value")));
+        assertThat(store.getById(Location.newInstance("instance")), equalTo(Optional.empty()));
+        assertThat(store.deleteById(Location.newInstance("instance")), equalTo(Optional.empty()));
+    }
+
+    @Test
+    public void init_afterClose_rebuildsIndexFromIndexFiles() throws Exception {
+        saveMany(100);
+        store.deleteById(Location.newInstance("id7"));
+        store.close();
+
+        store = newStore(256);
+        assertLoaded(100, 7);
+    }
+
+    @Test
+    public void init_afterCrash_rebuildsIndexByScanningSegments() throws Exception {
+        saveMany(100);
+        store.deleteById(Location.newInstance("id7"));
+        // store isn't closed, so its active segment has no index, like after a crash
+        for (FileStatus status : fs.listStatus(new Path(STORE_PATH))) {
+            if (status.getPath().getName().endsWith(".idx")) {
+                fs.delete(status.getPath(), false);
+            }
+        }
+
+        SegmentLogHdfsStore<String> crashed = store;
+        store = newStore(256);
+        try {
+            assertLoaded(100, 7);
+        } finally {
+            closeRecovered(crashed);
+        }
+    }
+
+    private static void closeRecovered(SegmentLogHdfsStore<String> crashed) {
+        try {
+            crashed.close();
+        } catch (IOException e) {
+            // lease of its active segment has been recovered by the new store, so close can fail
+        }
+    }
+
+    @Test
+    public void init_segmentWithIncompleteRecord_ignoresIt() throws Exception {
+        store.close();
+        fs.delete(new Path(STORE_PATH), true);
+        try (FSDataOutputStream out = fs.create(new Path(STORE_PATH, String.format("%016d.log", 1)))) {
+            out.write(LogRecords.encode(LogRecords.PUT, Location.newInstance("complete").getPath(),
+                "value".getBytes()));
+            byte[] incomplete = LogRecords.encode(LogRecords.PUT,
+                Location.newInstance("incomplete").getPath(), "value".getBytes());
+            out.write(incomplete, 0, incomplete.length - 3);
+        }
+
+        store = newStore(256);
+        assertThat(store.getById(Location.newInstance("complete")), equalTo(Optional.of("value")));
+        assertThat(store.getById(Location.newInstance("incomplete")), equalTo(Optional.empty()));
+    }
+
+    @Test
+    public void compact_manySegments_leavesOneSealedSegmentWithLiveRecords() throws Exception {
+        for (int round = 0; round < 5; round++) {
+            saveMany(50);
+        }
+        store.deleteById(Location.newInstance("id7"));
+        assertTrue(store.getSegmentCount() > SegmentLogHdfsStore.DEFAULT_MAX_SEALED_SEGMENTS);
+
+        assertTrue(store.compact());
+        assertThat(store.getSegmentCount(), equalTo(2));
+        assertFalse(store.compact());
+        assertLoaded(50, 7);
+
+        store.close();
+        store = newStore(256);
+        assertLoaded(50, 7);
+        assertThat(fs.listStatus(new Path(STORE_PATH)).length, equalTo(5));
+    }
+
+    @Test
+    public void init_unfinishedCompaction_removesItsOutput() throws Exception {
+        saveMany(50);
+        store.close();
+        fs.createNewFile(new Path(STORE_PATH, String.format("%016d.log.compacting", 1)));
+
+        store = newStore(256);
+        assertLoaded(50, -1);
+        assertFalse(fs.exists(new Path(STORE_PATH, String.format("%016d.log.compacting", 1))));
+    }
+
+    @Test
+    public void init_compactionInterruptedBeforeIndexRename_finishesIt() throws Exception {
+        for (int round = 0; round < 5; round++) {
+            saveMany(50);
+        }
+        assertTrue(store.compact());
+        store.close();
+        // compacted log is already in place, its index still has the compacting suffix
+        Path compactedIndex = null;
+        for (FileStatus status : fs.listStatus(new Path(STORE_PATH))) {
+            if (status.getPath().getName().endsWith(".idx")) {
+                compactedIndex = status.getPath();
+                break;
+            }
+        }
+        fs.rename(compactedIndex, compactedIndex.suffix(".compacting"));
+
+        store = newStore(256);
+        assertLoaded(50, -1);
+        assertTrue(fs.exists(compactedIndex));
+        store.close();
+        store = newStore(256);
+        assertLoaded(50, -1);
+    }
+
+    @Test
+    public void init_savedWithBufferSerializer_readsValuesOfDifferentSizes() throws Exception {
+        store.close();
+        SerDeFactory factory = JSONSerDeFactory.getInstance();
+        store = SegmentLogHdfsStore.withBufferSerializer(fs, factory.getBufferSerializer(),
+            factory.getDeserializer(String.class), STORE_PATH, 256,
+            SegmentLogHdfsStore.DEFAULT_MAX_SEALED_SEGMENTS);
+        store.init();
+        String large = new String(new char[100 * 1024]).replace('\0', 'x');
+        store.save(Location.newInstance("large"), large);
+        store.save(Location.newInstance("small"), "small");
+        store.close();
+
+        store = SegmentLogHdfsStore.withBufferSerializer(fs, factory.getBufferSerializer(),
+            factory.getDeserializer(String.class), STORE_PATH, 256,
+            SegmentLogHdfsStore.DEFAULT_MAX_SEALED_SEGMENTS);
+        store.init();
+        assertThat(store.getById(Location.newInstance("large")), equalTo(Optional.of(large)));
+        assertThat(store.getById(Location.newInstance("small")), equalTo(Optional.of("small")));
+    }
+
+    private SegmentLogHdfsStore<String> newStore(long segmentSize) throws IOException {
+        SegmentLogHdfsStore<String> newStore = new SegmentLogHdfsStore<>(fs, String::getBytes,
+            String::new, STORE_PATH, segmentSize, SegmentLogHdfsStore.DEFAULT_MAX_SEALED_SEGMENTS);
+        newStore.init();
+        return newStore;
+    }
+
+    private void saveMany(int count) throws IOException {
+        for (int i = 0; i < count; i++) {
+            store.save(Location.newInstance("id" + i), "value" + i);
+        }
+    }
+
+    private void assertLoaded(int count, int deleted) throws IOException {
+        for (int i = 0; i < count; i++) {
+            Optional<String> expected = i == deleted ? Optional.empty() : Optional.of("value" + i);
+            assertThat(store.getById(Location.newInstance("id" + i)), equalTo(expected));
+        }
+    }
+}
@@ -16,23 +16,47 @@
 package org.trustedanalytics.cfbroker.store.hdfs.service;
 
 
+import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.containsInAnyOrder;
 import static org.hamcrest.Matchers.equalTo;
 import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 import java.io.File;
+import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import org.apache.hadoop.HadoopIllegalArgumentException;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.crypto.key.KeyProvider;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.FileUtil;
 import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.permission.AclEntry;
+import org.apache.hadoop.fs.permission.AclEntryScope;
+import org.apache.hadoop.fs.permission.AclEntryType;
 import org.apache.hadoop.fs.permission.FsAction;
 import org.apache.hadoop.fs.permission.FsPermission;
 import org.apache.hadoop.hdfs.DFSConfigKeys;
 import org.apache.hadoop.hdfs.DistributedFileSystem;
 import org.apache.hadoop.hdfs.MiniDFSCluster;
+import org.apache.hadoop.hdfs.protocol.EncryptionZone;
 import org.junit.*;
 
 
@@ -252,6 +276,47 @@ public class SimpleHdfsClientTest {
         assertTrue(attrs.isEmpty());
     }
 
+    @Test
+    public void testGetDirectSubPathsAttrs_parallelReads_returnsValuesInListingOrder()
+            throws Exception {
+        List<byte[]> expected = createDirsWithAttrs("/parallel", 50);
+
+        List<byte[]> attrs = new SimpleHdfsClient(fs, 4).getDirectSubPathsAttrs("/parallel", "user.attr");
+        assertThat(attrs.size(), equalTo(expected.size()));
+        for (int i = 0; i < expected.size(); i++) {
+            assertArrayEquals(expected.get(i), attrs.get(i));
+        }
+    }
+
+    @Test
+    public void testForEachDirectSubPathAttr_unorderedParallelReads_passesAllValues()
+            throws Exception {
+        List<byte[]> expected = createDirsWithAttrs("/unordered", 50);
+        fs.mkdirs(new Path("/unordered/noattr"));
+
+        Map<String, byte[]> attrs = new ConcurrentHashMap<>();
+        new SimpleHdfsClient(fs, 4).forEachDirectSubPathAttr("/unordered", "user.attr", false,
+            attrs::put);
+        assertThat(attrs.size(), equalTo(50));
+        assertThat(attrs.values(), containsInAnyOrder(expected.toArray()));
+        assertFalse(attrs.keySet().stream().anyMatch(path -> path.endsWith("/noattr")));
+    }
+
+    @Test
+    public void testGetDirectSubPathsAttrs_overflowedValues_returnsPayloads() throws Exception {
+        fs.mkdirs(new Path("/overflow/1"));
+        fs.mkdirs(new Path("/overflow/2"));
+        byte[] large = new byte[64];
+        Arrays.fill(large, (byte) 'x');
+        XAttrsOverflow.write(hdfs, "/overflow/1", "user.attr", large, 16);
+        XAttrsOverflow.write(hdfs, "/overflow/2", "user.attr", "small".getBytes(), 16);
+
+        assertThat(hdfs.getDirectSubPathsAttrs("/overflow", "user.attr"),
+            contains(large, "small".getBytes()));
+        assertThat(new SimpleHdfsClient(fs, 4).getDirectSubPathsAttrs("/overflow", "user.attr"),
+            contains(large, "small".getBytes()));
+    }
+
     @Test(expected = IllegalArgumentException.class)
     public void testGetDirectSubPathsAttrs_pathIsNotDirectory_throwsException() throws Exception {
         fs.createNewFile(new Path("/newFile"));
@@ -259,6 +324,173 @@ public class SimpleHdfsClientTest {
         assertTrue(attrs.isEmpty());
     }
 
+    @Test
+    public void testListFiles_recursive_returnsParentsBeforeChildren() throws Exception {
+        createTree();
+
+        List<String> files = hdfs.listFiles("/tree", true);
+        assertThat(relative(files.stream()), equalTo(Arrays.asList(
+            "/tree/a", "/tree/a/1", "/tree/a/2", "/tree/a/2/x", "/tree/b", "/tree/c")));
+    }
+
+    @Test
+    public void testListFiles_notRecursive_returnsDirectChildren() throws Exception {
+        createTree();
+
+        List<String> files = hdfs.listFiles("/tree", false);
+        assertThat(relative(files.stream()), equalTo(Arrays.asList("/tree/a", "/tree/b", "/tree/c")));
+    }
+
+    @Test
+    public void testStreamFiles_partiallyConsumed_returnsFirstEntries() throws Exception {
+        createTree();
+
+        try (Stream<FileStatus> statuses = hdfs.streamFiles("/tree", true)) {
+            List<String> first = relative(statuses.limit(2).map(status -> status.getPath().toString()));
+            assertThat(first, equalTo(Arrays.asList("/tree/a", "/tree/a/1")));
+        }
+    }
+
+    @Test
+    public void testWalkFiles_parallel_visitsWholeTree() throws Exception {
+        createTree();
+
+        Queue<String> files = new ConcurrentLinkedQueue<>();
+        hdfs.walkFiles("/tree", 3, status -> files.add(status.getPath().toString()));
+        assertThat(relative(files.stream()), containsInAnyOrder(
+            "/tree/a", "/tree/a/1", "/tree/a/2", "/tree/a/2/x", "/tree/b", "/tree/c"));
+    }
+
+    @Test(expected = FileNotFoundException.class)
+    public void testWalkFiles_pathNotExists_throwsFileNotFoundException() throws Exception {
+        hdfs.walkFiles("/notexisting", 2, status -> {});
+    }
+
+    @Test
+    public void testProvision_newDirectories_createdWithOwnerPermissionAndAcl() throws Exception {
+        FsPermission permission = new FsPermission(FsAction.ALL, FsAction.READ_EXECUTE, FsAction.NONE);
+        AclEntry tenantEntry = new AclEntry.Builder().setScope(AclEntryScope.ACCESS)
+            .setType(AclEntryType.USER).setName("tenant").setPermission(FsAction.ALL).build();
+        AclEntry defaultEntry = new AclEntry.Builder().setScope(AclEntryScope.DEFAULT)
+            .setType(AclEntryType.USER).setName("tenant").setPermission(FsAction.ALL).build();
+        ProvisioningPlan plan = new ProvisioningPlan()
+            .withDirectory(new ProvisioningPlan.Directory("/org/tenant/data")
+                .withPermission(permission))
+            .withDirectory(new ProvisioningPlan.Directory("/org/tenant")
+                .withOwner("tenant", "tenants")
+                .withPermission(permission)
+                .withAclEntries(Arrays.asList(tenantEntry, defaultEntry)))
+            .withDirectory(new ProvisioningPlan.Directory("/org/other")
+                .withPermission(permission))
+            .withParallelism(2);
+
+        hdfs.provision(plan);
+
+        FileStatus tenant = fs.getFileStatus(new Path("/org/tenant"));
+        assertThat(tenant.getOwner(), equalTo("tenant"));
+        assertThat(tenant.getGroup(), equalTo("tenants"));
+        assertThat(tenant.getPermission().getUserAction(), equalTo(FsAction.ALL));
+        assertThat(tenant.getPermission().getOtherAction(), equalTo(FsAction.NONE));
+        assertTrue(fs.getAclStatus(new Path("/org/tenant")).getEntries().contains(tenantEntry));
+        // created after its parent, so it inherits parent's default ACL
+        assertTrue(fs.getAclStatus(new Path("/org/tenant/data")).getEntries().contains(tenantEntry));
+        assertThat(fs.getFileStatus(new Path("/org/other")).getPermission(), equalTo(permission));
+    }
+
+    @Test
+    public void testProvision_existingDirectory_permissionChanged() throws Exception {
+        fs.mkdirs(new Path("/existing"));
+        FsPermission permission = new FsPermission(FsAction.ALL, FsAction.ALL, FsAction.NONE);
+
+        hdfs.provision(new ProvisioningPlan()
+            .withDirectory(new ProvisioningPlan.Directory("/existing").withPermission(permission)));
+        assertThat(fs.getFileStatus(new Path("/existing")).getPermission(), equalTo(permission));
+    }
+
+    @Test
+    public void testProvision_directoryWithAclOnly_mergesAclWithoutCheckingExistence()
+        throws Exception {
+        FileSystem mockFs = mock(FileSystem.class);
+        when(mockFs.mkdirs(any(Path.class))).thenReturn(true);
+        AclEntry entry = new AclEntry.Builder().setScope(AclEntryScope.ACCESS)
+            .setType(AclEntryType.GROUP).setName("tenants").setPermission(FsAction.READ).build();
+
+        new SimpleHdfsClient(mockFs).provision(new ProvisioningPlan()
+            .withDirectory(new ProvisioningPlan.Directory("/dir").withAclEntries(Arrays.asList(entry))));
+
+        verify(mockFs).mkdirs(new Path("/dir"));
+        verify(mockFs).modifyAclEntries(new Path("/dir"), Arrays.asList(entry));
+        verify(mockFs, never()).exists(any(Path.class));
+        verify(mockFs, never()).setOwner(any(Path.class), anyString(), anyString());
+    }
+
+    @Test
+    public void testCreateEncryptedZone_failedAndNoZoneExists_keyReturnedToPool() throws Exception {
+        DistributedFileSystem mockFs = mock(DistributedFileSystem.class);
+        doThrow(new IOException("failed")).when(mockFs)
+            .createEncryptionZone(any(Path.class), anyString());
+        EncryptionKeyPool keyPool = newKeyPool();
+
+        try {
+            new SimpleHdfsClient(mockFs, 1, keyPool).createEncryptedZone(new Path("/zone"));
+            fail("Zone creation didn't fail");
+        } catch (IOException e) {
+            // expected
+        }
+
+        assertThat(keyPool.getDepth(), equalTo(1));
+        keyPool.close();
+    }
+
+    @Test
+    public void testCreateEncryptedZone_failedAfterZoneCreated_keyNotReturnedToPool()
+        throws Exception {
+        DistributedFileSystem mockFs = mock(DistributedFileSystem.class);
+        doThrow(new IOException("timed out")).when(mockFs)
+            .createEncryptionZone(any(Path.class), anyString());
+        when(mockFs.getEZForPath(new Path("/zone"))).thenReturn(mock(EncryptionZone.class));
+        EncryptionKeyPool keyPool = newKeyPool();
+
+        try {
+            new SimpleHdfsClient(mockFs, 1, keyPool).createEncryptedZone(new Path("/zone"));
+            fail("Zone creation didn't fail");
+        } catch (IOException e) {
+            // expected
+        }
+
+        assertThat(keyPool.getDepth(), equalTo(0));
+        keyPool.close();
+    }
+
+    private static EncryptionKeyPool newKeyPool() {
+        return new EncryptionKeyPool(mock(KeyProvider.class), new Configuration(false), "broker-",
+            1, 0);
+    }
+
+    private void createTree() throws IOException {
+        fs.mkdirs(new Path("/tree/a/2"));
+        fs.createNewFile(new Path("/tree/a/1"));
+        fs.createNewFile(new Path("/tree/a/2/x"));
+        fs.mkdirs(new Path("/tree/b"));
+        fs.createNewFile(new Path("/tree/c"));
+    }
+
+    private static List<String> relative(Stream<String> paths) {
+        return paths.map(path -> new Path(path).toUri().getPath()).collect(Collectors.toList());
+    }
+
+    private List<byte[]> createDirsWithAttrs(String parent, int count) throws IOException {
+        List<byte[]> values = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Path child = new Path(String.format("%s/%03d", parent, i));
+            fs.mkdirs(child);
+            byte[] value = ("junit" + i).getBytes();
+            fs.setXAttr(child, "user.attr", value);
+            values.add(value);
+        }
+        return values;
+    }
+
     @Test
     public void testSetPermission_directoryCreated_PermissionsChanged() throws Exception {
         hdfs.createDir("/testDir");
@@ -0,0 +1,157 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.cfbroker.store.hdfs.service;
+
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileUtil;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.DistributedFileSystem;
+import org.apache.hadoop.hdfs.MiniDFSCluster;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.trustedanalytics.cfbroker.store.api.Location;
+
+public class XAttrsHdfsLayoutMigratorTest {
+
+    private static final String ATTR = "user.broker";
+
+    private static final String METADATA_PATH = "/broker/metadata";
+
+    private static MiniDFSCluster cluster;
+
+    private DistributedFileSystem fs;
+
+    private SimpleHdfsClient hdfs;
+
+    @BeforeClass
+    public static void initialize() throws IOException {
+        File baseDir = new File("./target/hdfs/layoutMigration").getAbsoluteFile();
+        FileUtil.fullyDelete(baseDir);
+        Configuration conf = new Configuration(false);
+        conf.set(MiniDFSCluster.HDFS_MINIDFS_BASEDIR, baseDir.getAbsolutePath());
+        cluster = new MiniDFSCluster.Builder(conf).build();
+        cluster.waitClusterUp();
+    }
+
+    @AfterClass
+    public static void shutdown() {
+        cluster.shutdown();
+    }
+
+    @Before
+    public void setup() throws IOException {
+        fs = cluster.getFileSystem();
+        hdfs = new SimpleHdfsClient(fs);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        fs.delete(new Path(METADATA_PATH), true);
+    }
+
+    @Test
+    public void migrate_flatLayout_movesInstancesWithBindings() throws Exception {
+        XAttrsHdfsStore<String> flat = newStore(MetadataLayout.FLAT, false);
+        for (int i = 0; i < 20; i++) {
+            flat.save(Location.newInstance("instance" + i), "instance" + i);
+            flat.save(Location.newInstance("binding" + i, "instance" + i), "binding" + i);
+        }
+
+        int moved = new XAttrsHdfsLayoutMigrator(hdfs, METADATA_PATH, MetadataLayout.HASHED).migrate();
+        assertThat(moved, equalTo(20));
+
+        XAttrsHdfsStore<String> hashed = newStore(MetadataLayout.HASHED, false);
+        for (int i = 0; i < 20; i++) {
+            assertFalse(fs.exists(new Path(METADATA_PATH, "instance" + i)));
+            assertThat(hashed.getById(Location.newInstance("instance" + i)),
+                equalTo(Optional.of("instance" + i)));
+            assertThat(hashed.getById(Location.newInstance("binding" + i, "instance" + i)),
+                equalTo(Optional.of("binding" + i)));
+        }
+        assertThat(new XAttrsHdfsLayoutMigrator(hdfs, METADATA_PATH, MetadataLayout.HASHED).migrate(),
+            equalTo(0));
+    }
+
+    @Test
+    public void migrate_storeWritingDuringMigration_keepsAllObjects() throws Exception {
+        newStore(MetadataLayout.FLAT, false).save(Location.newInstance("old"), "old");
+        newStore(MetadataLayout.FLAT, false).save(Location.newInstance("moved"), "moved");
+        XAttrsHdfsStore<String> migrating = newStore(MetadataLayout.HASHED, true);
+
+        assertThat(migrating.getById(Location.newInstance("old")), equalTo(Optional.of("old")));
+        migrating.save(Location.newInstance("binding", "moved"), "binding");
+        migrating.save(Location.newInstance("new"), "new");
+        new XAttrsHdfsLayoutMigrator(hdfs, METADATA_PATH, MetadataLayout.HASHED).migrate();
+
+        XAttrsHdfsStore<String> hashed = newStore(MetadataLayout.HASHED, false);
+        for (String id : new String[] {"old", "moved", "new"}) {
+            assertThat(hashed.getById(Location.newInstance(id)), equalTo(Optional.of(id)));
+        }
+        assertThat(hashed.getById(Location.newInstance("binding", "moved")),
+            equalTo(Optional.of("binding")));
+    }
+
+    @Test
+    public void scan_hashedLayout_returnsAllObjects() throws Exception {
+        XAttrsHdfsStore<String> hashed = newStore(MetadataLayout.HASHED, false);
+        for (int i = 0; i < 10; i++) {
+            hashed.save(Location.newInstance("instance" + i), "instance" + i);
+            hashed.save(Location.newInstance("binding" + i, "instance" + i), "binding" + i);
+        }
+
+        List<String> instances = new ArrayList<>();
+        XAttrsHdfsStoreScanner.forInstances(hdfs, String::new, ATTR, METADATA_PATH, 2,
+            MetadataLayout.HASHED).scan((location, value) -> addSynchronized(instances, value));
+        List<String> bindings = new ArrayList<>();
+        XAttrsHdfsStoreScanner.forBindings(hdfs, String::new, ATTR, METADATA_PATH, 2,
+            MetadataLayout.HASHED).scan((location, value) -> addSynchronized(bindings, value));
+
+        assertThat(instances, containsInAnyOrder("instance0", "instance1", "instance2", "instance3",
+            "instance4", "instance5", "instance6", "instance7", "instance8", "instance9"));
+        assertThat(bindings, containsInAnyOrder("binding0", "binding1", "binding2", "binding3",
+            "binding4", "binding5", "binding6", "binding7", "binding8", "binding9"));
+    }
+
+    private XAttrsHdfsStore<String> newStore(MetadataLayout layout, boolean migrating)
+        throws IOException {
+        XAttrsHdfsStoreBuilder<String> builder = new XAttrsHdfsStoreBuilder<>(hdfs,
+            String::getBytes, String::new, ATTR, METADATA_PATH).withLayout(layout);
+        if (migrating) {
+            builder.migratingFromFlat();
+        }
+        return builder.build();
+    }
+
+    private static void addSynchronized(List<String> values, String value) {
+        synchronized (values) {
+            values.add(value);
+        }
+    }
+}
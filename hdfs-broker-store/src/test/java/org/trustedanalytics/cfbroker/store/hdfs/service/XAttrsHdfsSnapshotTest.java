@@ -0,0 +1,225 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.cfbroker.store.hdfs.service;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.reset;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileUtil;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.DistributedFileSystem;
+import org.apache.hadoop.hdfs.MiniDFSCluster;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.trustedanalytics.cfbroker.store.api.Location;
+
+public class XAttrsHdfsSnapshotTest {
+
+    private static final String ATTR = "user.broker";
+
+    private static final String METADATA_PATH = "/broker/snapshot";
+
+    private static MiniDFSCluster cluster;
+
+    private DistributedFileSystem fs;
+
+    private HdfsClient hdfs;
+
+    @BeforeClass
+    public static void initialize() throws IOException {
+        File baseDir = new File("./target/hdfs/snapshot").getAbsoluteFile();
+        FileUtil.fullyDelete(baseDir);
+        Configuration conf = new Configuration(false);
+        conf.set(MiniDFSCluster.HDFS_MINIDFS_BASEDIR, baseDir.getAbsolutePath());
+        cluster = new MiniDFSCluster.Builder(conf).build();
+        cluster.waitClusterUp();
+    }
+
+    @AfterClass
+    public static void shutdown() {
+        cluster.shutdown();
+    }
+
+    @Before
+    public void setup() throws IOException {
+        fs = cluster.getFileSystem();
+        hdfs = spy(new SimpleHdfsClient(fs));
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        fs.delete(new Path(METADATA_PATH), true);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_storeNotTrackingModificationTimes_throwsException() throws Exception {
+        new XAttrsHdfsSnapshot(new XAttrsHdfsStore<>(hdfs, String::getBytes, String::new, ATTR,
+            METADATA_PATH), 0, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void load_noSnapshot_readsAllObjects() throws Exception {
+        Map<Location, String> expected = saveObjects(MetadataLayout.FLAT, 5);
+
+        reset(hdfs);
+        assertThat(load(MetadataLayout.FLAT), equalTo(expected));
+        verify(hdfs, times(10)).getPathAttr(anyString(), eq(ATTR));
+    }
+
+    @Test
+    public void load_objectsChangedAfterSnapshot_readsOnlyChangedObjects() throws Exception {
+        Map<Location, String> expected = saveObjects(MetadataLayout.FLAT, 5);
+        TimeUnit.MILLISECONDS.sleep(10);
+        snapshot(MetadataLayout.FLAT).write();
+        TimeUnit.MILLISECONDS.sleep(10);
+
+        XAttrsHdfsStore<String> store = store(MetadataLayout.FLAT);
+        store.save(Location.newInstance("instance1"), "changed");
+        expected.put(Location.newInstance("instance1"), "changed");
+        store.deleteById(Location.newInstance("instance2"));
+        expected.remove(Location.newInstance("instance2"));
+        expected.remove(Location.newInstance("binding2", "instance2"));
+        store.deleteById(Location.newInstance("binding3", "instance3"));
+        expected.remove(Location.newInstance("binding3", "instance3"));
+        store.save(Location.newInstance("new", "instance4"), "new");
+        expected.put(Location.newInstance("new", "instance4"), "new");
+
+        reset(hdfs);
+        assertThat(load(MetadataLayout.FLAT), equalTo(expected));
+        verify(hdfs, times(4)).getPathAttr(anyString(), eq(ATTR));
+    }
+
+    @Test
+    public void load_hashedLayoutChangedAfterSnapshot_returnsCurrentObjects() throws Exception {
+        Map<Location, String> expected = saveObjects(MetadataLayout.HASHED, 5);
+        TimeUnit.MILLISECONDS.sleep(10);
+        snapshot(MetadataLayout.HASHED).write();
+        TimeUnit.MILLISECONDS.sleep(10);
+
+        XAttrsHdfsStore<String> store = store(MetadataLayout.HASHED);
+        store.save(Location.newInstance("binding0", "instance0"), "changed");
+        expected.put(Location.newInstance("binding0", "instance0"), "changed");
+        store.deleteById(Location.newInstance("instance4"));
+        expected.remove(Location.newInstance("instance4"));
+        expected.remove(Location.newInstance("binding4", "instance4"));
+
+        reset(hdfs);
+        assertThat(load(MetadataLayout.HASHED), equalTo(expected));
+        verify(hdfs, times(2)).getPathAttr(anyString(), eq(ATTR));
+    }
+
+    @Test
+    public void load_corruptedSnapshot_readsAllObjects() throws Exception {
+        Map<Location, String> expected = saveObjects(MetadataLayout.FLAT, 5);
+        snapshot(MetadataLayout.FLAT).write();
+        byte[] content = hdfs.readFile(METADATA_PATH + "/" + XAttrsHdfsSnapshot.SNAPSHOT_FILE).get();
+        content[content.length / 2] ^= 1;
+        hdfs.writeFile(METADATA_PATH + "/" + XAttrsHdfsSnapshot.SNAPSHOT_FILE, content);
+
+        reset(hdfs);
+        assertThat(load(MetadataLayout.FLAT), equalTo(expected));
+        verify(hdfs, times(10)).getPathAttr(anyString(), eq(ATTR));
+    }
+
+    @Test
+    public void scan_snapshotScanners_returnInstancesAndBindingsSeparately() throws Exception {
+        saveObjects(MetadataLayout.FLAT, 3);
+        XAttrsHdfsSnapshot snapshot = snapshot(MetadataLayout.FLAT);
+        snapshot.write();
+
+        Map<Location, String> instances = new HashMap<>();
+        XAttrsHdfsSnapshotScanner.forInstances(snapshot, String::new).scan(instances::put);
+        Map<Location, String> bindings = new HashMap<>();
+        XAttrsHdfsSnapshotScanner.forBindings(snapshot, String::new).scan(bindings::put);
+
+        assertThat(instances.keySet().size(), equalTo(3));
+        assertThat(bindings.get(Location.newInstance("binding1", "instance1")), equalTo("binding1"));
+        assertThat(bindings.keySet().size(), equalTo(3));
+    }
+
+    @Test
+    public void load_overflowedObjects_readsThemFromDataFiles() throws Exception {
+        XAttrsHdfsStore<String> store = new XAttrsHdfsStoreBuilder<>(hdfs, String::getBytes,
+            String::new, ATTR, METADATA_PATH)
+            .withInlineThreshold(8)
+            .trackingModificationTimes()
+            .build();
+        Map<Location, String> expected = new HashMap<>();
+        expected.put(Location.newInstance("instance0"), "small");
+        expected.put(Location.newInstance("binding0", "instance0"), "over the threshold");
+        expected.put(Location.newInstance("instance1"), "over the threshold");
+        for (Map.Entry<Location, String> object : expected.entrySet()) {
+            store.save(object.getKey(), object.getValue());
+        }
+        store.save(Location.newInstance("instance1"), "replaced, still over the threshold");
+        expected.put(Location.newInstance("instance1"), "replaced, still over the threshold");
+
+        assertThat(load(MetadataLayout.FLAT), equalTo(expected));
+        assertThat(store.getById(Location.newInstance("instance1")).get(),
+            equalTo("replaced, still over the threshold"));
+        assertThat(fs.listStatus(new Path(METADATA_PATH + "/instance1")).length, equalTo(2));
+        assertThat(store.sweepDataFiles(0, TimeUnit.SECONDS), equalTo(1));
+        assertThat(fs.listStatus(new Path(METADATA_PATH + "/instance1")).length, equalTo(1));
+    }
+
+    private Map<Location, String> saveObjects(MetadataLayout layout, int count) throws IOException {
+        XAttrsHdfsStore<String> store = store(layout);
+        Map<Location, String> saved = new HashMap<>();
+        for (int i = 0; i < count; i++) {
+            Location instance = Location.newInstance("instance" + i);
+            Location binding = Location.newInstance("binding" + i, "instance" + i);
+            store.save(instance, "instance" + i);
+            store.save(binding, "binding" + i);
+            saved.put(instance, "instance" + i);
+            saved.put(binding, "binding" + i);
+        }
+        return saved;
+    }
+
+    private Map<Location, String> load(MetadataLayout layout) throws IOException {
+        Map<Location, String> loaded = new HashMap<>();
+        snapshot(layout).load().forEach((location, value) -> loaded.put(location, new String(value)));
+        return loaded;
+    }
+
+    private XAttrsHdfsStore<String> store(MetadataLayout layout) throws IOException {
+        return new XAttrsHdfsStoreBuilder<>(hdfs, String::getBytes, String::new, ATTR,
+            METADATA_PATH)
+            .withLayout(layout)
+            .trackingModificationTimes()
+            .build();
+    }
+
+    private XAttrsHdfsSnapshot snapshot(MetadataLayout layout) throws IOException {
+        return new XAttrsHdfsSnapshot(store(layout), 0, TimeUnit.SECONDS);
+    }
+}
@@ -17,20 +17,31 @@ package org.trustedanalytics.cfbroker.store.hdfs.service;
 
 import org.trustedanalytics.cfbroker.store.api.BrokerStore;
 import org.trustedanalytics.cfbroker.store.api.Location;
+import org.trustedanalytics.cfbroker.store.serialization.PayloadFormat;
 import org.trustedanalytics.cfbroker.store.serialization.RepositoryDeserializer;
 import org.trustedanalytics.cfbroker.store.serialization.RepositorySerializer;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 
 import java.io.IOException;
 import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
 
 import static org.hamcrest.Matchers.equalTo;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -55,6 +66,8 @@ public class XAttrsHdfsStoreTest {
     @Before
     public void setup() throws IOException {
         store = new XAttrsHdfsStore<>(hdfs, serializer, deserializer, ATTR, METADATA_PATH);
+        when(hdfs.getPathAttr(anyString(), anyString())).thenReturn(Optional.empty());
+        when(hdfs.streamFiles(anyString(), anyBoolean())).thenAnswer(invocation -> Stream.empty());
     }
 
     @Test
@@ -138,4 +151,129 @@ public class XAttrsHdfsStoreTest {
         when(hdfs.getPathAttr(METADATA_PATH + "/nonexistent", ATTR)).thenThrow(new IOException());
         store.deleteById(Location.newInstance("/nonexistent"));
     }
+
+    @Test
+    public void testSave_hashedLayout_savesInBucketedDirectory() throws Exception {
+        store = new XAttrsHdfsStoreBuilder<>(hdfs, serializer, deserializer, ATTR, METADATA_PATH)
+            .withLayout(MetadataLayout.HASHED)
+            .build();
+        when(serializer.serialize("junit")).thenReturn("junit".getBytes());
+        store.save(Location.newInstance("binding", "id"), "junit");
+
+        String path = MetadataLayout.HASHED.getInstancePath(METADATA_PATH, "id") + "/binding";
+        assertTrue(path.matches(METADATA_PATH + "/[0-9a-f]{2}/[0-9a-f]{2}/id/binding"));
+        verify(hdfs).createDir(path);
+        verify(hdfs).addPathAttr(path, ATTR, "junit".getBytes());
+        verify(hdfs, never()).isDirectory(anyString());
+    }
+
+    @Test
+    public void testGetById_migratingFromFlat_readsFlatPathWhenMissingInHashed() throws Exception {
+        store = new XAttrsHdfsStoreBuilder<>(hdfs, serializer, deserializer, ATTR, METADATA_PATH)
+            .withLayout(MetadataLayout.HASHED)
+            .migratingFromFlat()
+            .build();
+        when(hdfs.getPathAttr(MetadataLayout.HASHED.getInstancePath(METADATA_PATH, "id"), ATTR))
+            .thenReturn(Optional.empty());
+        when(hdfs.getPathAttr(METADATA_PATH + "/id", ATTR)).thenReturn(Optional.of("junit".getBytes()));
+        when(deserializer.deserialize("junit".getBytes())).thenReturn("junit");
+
+        assertThat(store.getById(Location.newInstance("id")).get(), equalTo("junit"));
+    }
+
+    @Test
+    public void testGetById_migratingFromFlat_movedByMigratorDuringRead_returnsObject()
+        throws Exception {
+        store = new XAttrsHdfsStoreBuilder<>(hdfs, serializer, deserializer, ATTR, METADATA_PATH)
+            .withLayout(MetadataLayout.HASHED)
+            .migratingFromFlat()
+            .build();
+        String hashedPath = MetadataLayout.HASHED.getInstancePath(METADATA_PATH, "id");
+        AtomicBoolean moved = new AtomicBoolean();
+        // migrator renames the directory right after the first read, whichever path it was
+        when(hdfs.getPathAttr(anyString(), eq(ATTR))).thenAnswer(invocation -> {
+            String path = (String) invocation.getArguments()[0];
+            boolean present = moved.getAndSet(true) ? path.equals(hashedPath)
+                : path.equals(METADATA_PATH + "/id");
+            return present ? Optional.of("junit".getBytes()) : Optional.empty();
+        });
+        when(deserializer.deserialize("junit".getBytes())).thenReturn("junit");
+
+        assertThat(store.getById(Location.newInstance("id")).get(), equalTo("junit"));
+    }
+
+    @Test
+    public void testSave_migratingFromFlat_movesInstanceDirectoryFirst() throws Exception {
+        store = new XAttrsHdfsStoreBuilder<>(hdfs, serializer, deserializer, ATTR, METADATA_PATH)
+            .withLayout(MetadataLayout.HASHED)
+            .migratingFromFlat()
+            .build();
+        String path = MetadataLayout.HASHED.getInstancePath(METADATA_PATH, "id");
+        when(hdfs.isDirectory(METADATA_PATH + "/id")).thenReturn(true);
+        when(hdfs.rename(METADATA_PATH + "/id", path)).thenReturn(true);
+        when(serializer.serialize("junit")).thenReturn("junit".getBytes());
+
+        store.save(Location.newInstance("binding", "id"), "junit");
+        InOrder inOrder = inOrder(hdfs);
+        inOrder.verify(hdfs).rename(METADATA_PATH + "/id", path);
+        inOrder.verify(hdfs).addPathAttr(path + "/binding", ATTR, "junit".getBytes());
+    }
+
+    @Test
+    public void testSave_payloadOverThreshold_writesDataFileAndPointer() throws Exception {
+        store = new XAttrsHdfsStoreBuilder<>(hdfs, serializer, deserializer, ATTR, METADATA_PATH)
+            .withInlineThreshold(4)
+            .build();
+        when(serializer.serialize("junit")).thenReturn("junit".getBytes());
+        store.save(Location.newInstance("id"), "junit");
+
+        ArgumentCaptor<String> file = ArgumentCaptor.forClass(String.class);
+        ArgumentCaptor<byte[]> pointer = ArgumentCaptor.forClass(byte[].class);
+        InOrder inOrder = inOrder(hdfs);
+        inOrder.verify(hdfs).writeFile(file.capture(), eq("junit".getBytes()));
+        inOrder.verify(hdfs).addPathAttr(eq(METADATA_PATH + "/id"), eq(ATTR), pointer.capture());
+        assertTrue(file.getValue().startsWith(METADATA_PATH + "/id/" + XAttrsOverflow.DATA_FILE_PREFIX));
+        assertThat(pointer.getValue()[0], equalTo(PayloadFormat.OVERFLOW));
+    }
+
+    @Test
+    public void testGetById_overflowedPayload_readsDataFile() throws Exception {
+        store = new XAttrsHdfsStoreBuilder<>(hdfs, serializer, deserializer, ATTR, METADATA_PATH)
+            .withInlineThreshold(4)
+            .build();
+        when(serializer.serialize("junit")).thenReturn("junit".getBytes());
+        store.save(Location.newInstance("id"), "junit");
+        ArgumentCaptor<String> file = ArgumentCaptor.forClass(String.class);
+        ArgumentCaptor<byte[]> pointer = ArgumentCaptor.forClass(byte[].class);
+        verify(hdfs).writeFile(file.capture(), eq("junit".getBytes()));
+        verify(hdfs).addPathAttr(eq(METADATA_PATH + "/id"), eq(ATTR), pointer.capture());
+
+        when(hdfs.getPathAttr(METADATA_PATH + "/id", ATTR)).thenReturn(Optional.of(pointer.getValue()));
+        when(hdfs.readFile(file.getValue())).thenReturn(Optional.of("junit".getBytes()));
+        when(deserializer.deserialize("junit".getBytes())).thenReturn("junit");
+
+        assertThat(store.getById(Location.newInstance("id")).get(), equalTo("junit"));
+    }
+
+    @Test
+    public void testSave_defaultStore_doesNotTouchDirectories() throws Exception {
+        when(serializer.serialize("junit")).thenReturn("junit".getBytes());
+        store.save(Location.newInstance("binding", "id"), "junit");
+
+        verify(hdfs, never()).touch(anyString());
+    }
+
+    @Test
+    public void testSave_trackingModificationTimes_touchesDirectoriesUpToMetadataPath()
+        throws Exception {
+        store = new XAttrsHdfsStoreBuilder<>(hdfs, serializer, deserializer, ATTR, METADATA_PATH)
+            .trackingModificationTimes()
+            .build();
+        when(serializer.serialize("junit")).thenReturn("junit".getBytes());
+        store.save(Location.newInstance("binding", "id"), "junit");
+
+        verify(hdfs).touch(METADATA_PATH + "/id/binding");
+        verify(hdfs).touch(METADATA_PATH + "/id");
+        verify(hdfs, never()).touch(METADATA_PATH);
+    }
 }
@@ -0,0 +1,145 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.cfbroker.store.hdfs.service;
+
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.Path;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.reset;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class XAttrsOverflowTest {
+
+    private static final String PATH = "/metadata/id";
+    private static final String ATTR = "user.String";
+    private static final long GRACE = 60000;
+
+    @Mock
+    private HdfsClient hdfs;
+
+    @Test
+    public void read_inlinePayload_returnsItWithoutReadingFiles() throws Exception {
+        when(hdfs.getPathAttr(PATH, ATTR)).thenReturn(Optional.of("{}".getBytes()));
+
+        assertArrayEquals("{}".getBytes(), XAttrsOverflow.read(hdfs, PATH, ATTR).get());
+        verify(hdfs, never()).readFile(anyString());
+    }
+
+    @Test
+    public void read_pointerReplacedWhileReading_followsNewPointer() throws Exception {
+        Overflowed first = overflow("first".getBytes());
+        Overflowed second = overflow("second".getBytes());
+        when(hdfs.getPathAttr(PATH, ATTR))
+            .thenReturn(Optional.of(first.pointer), Optional.of(second.pointer));
+        when(hdfs.readFile(first.file)).thenReturn(Optional.empty());
+        when(hdfs.readFile(second.file)).thenReturn(Optional.of("second".getBytes()));
+
+        assertArrayEquals("second".getBytes(), XAttrsOverflow.read(hdfs, PATH, ATTR).get());
+    }
+
+    @Test(expected = IOException.class)
+    public void read_dataFileNotMatchingUnchangedPointer_throwsIOException() throws Exception {
+        Overflowed overflowed = overflow("payload".getBytes());
+        when(hdfs.getPathAttr(PATH, ATTR)).thenReturn(Optional.of(overflowed.pointer));
+        when(hdfs.readFile(overflowed.file)).thenReturn(Optional.of("payloaX".getBytes()));
+
+        XAttrsOverflow.read(hdfs, PATH, ATTR);
+    }
+
+    @Test
+    public void write_smallPayload_storesItInlineWithSingleCall() throws Exception {
+        XAttrsOverflow.write(hdfs, PATH, ATTR, "{}".getBytes(), 16);
+
+        verify(hdfs).addPathAttr(PATH, ATTR, "{}".getBytes());
+        verifyNoMoreInteractions(hdfs);
+    }
+
+    @Test
+    public void sweep_dataFiles_removesOnlyOldUnreferencedOnes() throws Exception {
+        Overflowed overflowed = overflow("payload".getBytes());
+        when(hdfs.getPathAttr(PATH, ATTR)).thenReturn(Optional.of(overflowed.pointer));
+        long now = System.currentTimeMillis();
+        List<FileStatus> files = Arrays.asList(
+            dataFile(overflowed.file, now - 2 * GRACE),
+            dataFile(PATH + "/_data-old", now - 2 * GRACE),
+            dataFile(PATH + "/_data-recent", now),
+            new FileStatus(0, true, 1, 0, now - 2 * GRACE, new Path(PATH + "/_data-directory")));
+        when(hdfs.streamFiles(PATH, false)).thenAnswer(invocation -> files.stream());
+
+        assertThat(XAttrsOverflow.sweep(hdfs, PATH, ATTR, GRACE), equalTo(1));
+        verify(hdfs).deleteById(PATH + "/_data-old");
+        verify(hdfs, never()).deleteById(overflowed.file);
+        verify(hdfs, never()).deleteById(PATH + "/_data-recent");
+    }
+
+    @Test
+    public void sweep_directoryWithoutAttribute_leavesFiles() throws Exception {
+        when(hdfs.getPathAttr(PATH, ATTR)).thenReturn(Optional.empty());
+
+        assertThat(XAttrsOverflow.sweep(hdfs, PATH, ATTR, GRACE), equalTo(0));
+        verify(hdfs, never()).streamFiles(anyString(), anyBoolean());
+    }
+
+    private Overflowed overflow(byte[] payload) throws IOException {
+        when(hdfs.getPathAttr(PATH, ATTR)).thenReturn(Optional.empty());
+        when(hdfs.streamFiles(PATH, false)).thenAnswer(invocation -> Stream.empty());
+        XAttrsOverflow.write(hdfs, PATH, ATTR, payload, 0);
+
+        ArgumentCaptor<String> file = ArgumentCaptor.forClass(String.class);
+        ArgumentCaptor<byte[]> pointer = ArgumentCaptor.forClass(byte[].class);
+        verify(hdfs).writeFile(file.capture(), eq(payload));
+        verify(hdfs).addPathAttr(eq(PATH), eq(ATTR), pointer.capture());
+        reset(hdfs);
+        return new Overflowed(file.getValue(), pointer.getValue());
+    }
+
+    private static FileStatus dataFile(String path, long modificationTime) {
+        return new FileStatus(1, false, 1, 1, modificationTime, new Path(path));
+    }
+
+    private static final class Overflowed {
+
+        private final String file;
+
+        private final byte[] pointer;
+
+        private Overflowed(String file, byte[] pointer) {
+            this.file = file;
+            this.pointer = pointer;
+        }
+    }
+}
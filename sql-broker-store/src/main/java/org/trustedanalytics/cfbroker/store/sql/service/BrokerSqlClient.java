@@ -15,8 +15,12 @@
  */
 package org.trustedanalytics.cfbroker.store.sql.service;
 
+import org.trustedanalytics.cfbroker.store.api.Location;
+
+import java.nio.ByteBuffer;
 import java.sql.SQLException;
 import java.util.Optional;
+import java.util.function.BiConsumer;
 
 public interface BrokerSqlClient {
 
@@ -30,6 +34,13 @@ public interface BrokerSqlClient {
 
   void insertBinding(String id, String instanceId, byte[] data) throws SQLException;
 
+  /**
+   * Inserts data read from the buffer's position to its limit; the buffer isn't modified.
+   */
+  void insertInstance(String id, ByteBuffer data) throws SQLException;
+
+  void insertBinding(String id, String instanceId, ByteBuffer data) throws SQLException;
+
   void deleteMetadata(String id) throws SQLException;
 
   void deleteInstance(String id) throws SQLException;
@@ -42,6 +53,20 @@ public interface BrokerSqlClient {
 
   Optional<byte[]> selectBinding(String id, String instanceId) throws SQLException;
 
+  void scanInstances(int fetchSize, BiConsumer<Location, byte[]> consumer) throws SQLException;
+
+  void scanBindings(int fetchSize, BiConsumer<Location, byte[]> consumer) throws SQLException;
+
+  /**
+   * Passes location and hex-encoded MD5 digest of the data of every service instance, computed by
+   * the database, so that data itself isn't transferred.
+   */
+  void scanInstanceDigests(int fetchSize, BiConsumer<Location, String> consumer)
+      throws SQLException;
+
+  void scanBindingDigests(int fetchSize, BiConsumer<Location, String> consumer)
+      throws SQLException;
+
   void createDatabase(String name) throws SQLException;
 
   void dropDatabase(String name) throws SQLException;
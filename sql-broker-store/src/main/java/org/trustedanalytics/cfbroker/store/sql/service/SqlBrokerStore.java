@@ -19,10 +19,12 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.trustedanalytics.cfbroker.store.api.BrokerStore;
 import org.trustedanalytics.cfbroker.store.api.Location;
+import org.trustedanalytics.cfbroker.store.serialization.BufferSerializer;
 import org.trustedanalytics.cfbroker.store.serialization.RepositoryDeserializer;
 import org.trustedanalytics.cfbroker.store.serialization.RepositorySerializer;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.sql.SQLException;
 import java.util.Optional;
 
@@ -34,15 +36,33 @@ public class SqlBrokerStore<T> implements BrokerStore<T> {
 
   private final RepositorySerializer<T> serializer;
 
+  private final BufferSerializer<T> bufferSerializer;
+
   private final RepositoryDeserializer<T> deserializer;
 
   public SqlBrokerStore(BrokerSqlClient client, RepositorySerializer<T> serializer,
       RepositoryDeserializer<T> deserializer) {
+    this(client, serializer, null, deserializer);
+  }
+
+  private SqlBrokerStore(BrokerSqlClient client, RepositorySerializer<T> serializer,
+      BufferSerializer<T> bufferSerializer, RepositoryDeserializer<T> deserializer) {
     this.brokerSqlClient = client;
     this.serializer = serializer;
+    this.bufferSerializer = bufferSerializer;
     this.deserializer = deserializer;
   }
 
+  /**
+   * Creates store streaming objects serialized into reused buffers, e.g. by
+   * {@link org.trustedanalytics.cfbroker.store.serialization.SerDeFactory#getBufferSerializer},
+   * to the database, so that saves don't allocate arrays for serialized objects.
+   */
+  public static <T> SqlBrokerStore<T> withBufferSerializer(BrokerSqlClient client,
+      BufferSerializer<T> serializer, RepositoryDeserializer<T> deserializer) {
+    return new SqlBrokerStore<>(client, null, serializer, deserializer);
+  }
+
   @Override
   public Optional<T> getById(Location location) throws IOException {
     LOGGER.info("getById(" + location.getId() + ")");
@@ -64,7 +84,9 @@ public class SqlBrokerStore<T> implements BrokerStore<T> {
   public void save(Location location, T o) throws IOException {
     LOGGER.info("save(" + location.getId() + ")");
     try {
-      if (location.getParentId().isPresent()) {
+      if (bufferSerializer != null) {
+        saveBuffer(location, bufferSerializer.serialize(o));
+      } else if (location.getParentId().isPresent()) {
         brokerSqlClient.insertBinding(location.getId(), location.getParentId().get(),
             serializer.serialize(o));
       } else {
@@ -75,6 +97,14 @@ public class SqlBrokerStore<T> implements BrokerStore<T> {
     }
   }
 
+  private void saveBuffer(Location location, ByteBuffer data) throws SQLException {
+    if (location.getParentId().isPresent()) {
+      brokerSqlClient.insertBinding(location.getId(), location.getParentId().get(), data);
+    } else {
+      brokerSqlClient.insertInstance(location.getId(), data);
+    }
+  }
+
   @Override
   public Optional<T> deleteById(Location location) throws IOException {
     LOGGER.info("deleteById(" + location.getId() + ")");
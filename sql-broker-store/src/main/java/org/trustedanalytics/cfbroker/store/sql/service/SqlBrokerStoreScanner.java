@@ -0,0 +1,84 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.cfbroker.store.sql.service;
+
+import org.trustedanalytics.cfbroker.store.api.BrokerStoreScanner;
+import org.trustedanalytics.cfbroker.store.api.Location;
+import org.trustedanalytics.cfbroker.store.serialization.RepositoryDeserializer;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.sql.SQLException;
+import java.util.function.BiConsumer;
+
+/**
+ * Loads all objects saved by {@link SqlBrokerStore} with a single streaming select over service or
+ * binding table.
+ */
+public class SqlBrokerStoreScanner<T> implements BrokerStoreScanner<T> {
+
+  private final BrokerSqlClient brokerSqlClient;
+
+  private final RepositoryDeserializer<T> deserializer;
+
+  private final boolean bindings;
+
+  private final int fetchSize;
+
+  private SqlBrokerStoreScanner(BrokerSqlClient client, RepositoryDeserializer<T> deserializer,
+      boolean bindings, int fetchSize) {
+    this.brokerSqlClient = client;
+    this.deserializer = deserializer;
+    this.bindings = bindings;
+    this.fetchSize = fetchSize;
+  }
+
+  public static <T> SqlBrokerStoreScanner<T> forInstances(BrokerSqlClient client,
+      RepositoryDeserializer<T> deserializer, int fetchSize) {
+    return new SqlBrokerStoreScanner<>(client, deserializer, false, fetchSize);
+  }
+
+  public static <T> SqlBrokerStoreScanner<T> forBindings(BrokerSqlClient client,
+      RepositoryDeserializer<T> deserializer, int fetchSize) {
+    return new SqlBrokerStoreScanner<>(client, deserializer, true, fetchSize);
+  }
+
+  @Override
+  public void scan(BiConsumer<Location, T> consumer) throws IOException {
+    BiConsumer<Location, byte[]> deserializing = (location, data) -> {
+      if (data == null) {
+        return;
+      }
+      try {
+        consumer.accept(location, deserializer.deserialize(data));
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    };
+
+    try {
+      if (bindings) {
+        brokerSqlClient.scanBindings(fetchSize, deserializing);
+      } else {
+        brokerSqlClient.scanInstances(fetchSize, deserializing);
+      }
+    } catch (SQLException e) {
+      throw new IOException("Unable to scan " + (bindings ? "binding" : "service") + " table", e);
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    }
+  }
+}
@@ -15,6 +15,8 @@
  */
 package org.trustedanalytics.cfbroker.store.sql.service;
 
+import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.sql.PreparedStatement;
 import java.sql.Connection;
 import java.sql.DriverManager;
@@ -22,32 +24,28 @@ import java.sql.SQLException;
 import java.sql.Statement;
 import java.sql.ResultSet;
 
-import java.util.EnumMap;
 import java.util.List;
-import java.util.Map;
-import java.util.Objects;
 
 public class SqlConnectionUtils {
 
   private static final String DATA_COLUMN = "data";
 
-  private final Map<SqlQueries, PreparedStatement> statementMap;
-
   private final String connectionString;
 
   public SqlConnectionUtils(String connectionString) throws SQLException {
     this.connectionString = connectionString;
-    this.statementMap = createStatementMap();
   }
 
   public void execStatement(String query) throws SQLException {
-    try (Statement statement = getConnection().createStatement()) {
+    try (Connection connection = getConnection();
+        Statement statement = connection.createStatement()) {
       statement.execute(query);
     }
   }
 
   public void execInsertService(SqlQueries statement, String id, byte[] data) throws SQLException {
-    try (PreparedStatement preparedStatement = resolveStatement(statement)) {
+    try (Connection connection = getConnection();
+        PreparedStatement preparedStatement = connection.prepareStatement(statement.getQuery())) {
       preparedStatement.setString(1, id);
       preparedStatement.setBytes(2, data);
       preparedStatement.executeUpdate();
@@ -56,7 +54,8 @@ public class SqlConnectionUtils {
 
   public void execInsertBinding(SqlQueries statement, String serviceId, String bindingId,
       byte[] data) throws SQLException {
-    try (PreparedStatement preparedStatement = resolveStatement(statement)) {
+    try (Connection connection = getConnection();
+        PreparedStatement preparedStatement = connection.prepareStatement(statement.getQuery())) {
       preparedStatement.setString(1, serviceId);
       preparedStatement.setString(2, bindingId);
       preparedStatement.setBytes(3, data);
@@ -64,9 +63,34 @@ public class SqlConnectionUtils {
     }
   }
 
+  /**
+   * Inserts data streamed from the buffer, without copying it into an array first.
+   */
+  public void execInsertService(SqlQueries statement, String id, ByteBuffer data)
+      throws SQLException {
+    try (Connection connection = getConnection();
+        PreparedStatement preparedStatement = connection.prepareStatement(statement.getQuery())) {
+      preparedStatement.setString(1, id);
+      preparedStatement.setBinaryStream(2, new ByteBufferInputStream(data), data.remaining());
+      preparedStatement.executeUpdate();
+    }
+  }
+
+  public void execInsertBinding(SqlQueries statement, String serviceId, String bindingId,
+      ByteBuffer data) throws SQLException {
+    try (Connection connection = getConnection();
+        PreparedStatement preparedStatement = connection.prepareStatement(statement.getQuery())) {
+      preparedStatement.setString(1, serviceId);
+      preparedStatement.setString(2, bindingId);
+      preparedStatement.setBinaryStream(3, new ByteBufferInputStream(data), data.remaining());
+      preparedStatement.executeUpdate();
+    }
+  }
+
   public byte[] execSelectObject(SqlQueries statement, List<String> parameters)
       throws SQLException {
-    try (PreparedStatement preparedStatement = resolveStatement(statement)) {
+    try (Connection connection = getConnection();
+        PreparedStatement preparedStatement = connection.prepareStatement(statement.getQuery())) {
       setStatementParameters(preparedStatement, parameters);
       try (ResultSet result = preparedStatement.executeQuery()) {
         byte[] data = null;
@@ -78,9 +102,35 @@ public class SqlConnectionUtils {
     }
   }
 
+  /**
+   * Streams all rows returned by the query to the handler. Fetch size is only a hint for the JDBC
+   * driver; MySQL streams rows for Integer.MIN_VALUE, PostgreSQL uses a cursor only for
+   * forward-only statements with auto-commit off. The scan therefore gets its own connection, with
+   * a read-only transaction that is rolled back when the scan ends.
+   */
+  public void execScan(SqlQueries statement, int fetchSize, SqlRowHandler handler)
+      throws SQLException {
+    try (Connection connection = DriverManager.getConnection(connectionString)) {
+      connection.setAutoCommit(false);
+      connection.setReadOnly(true);
+      try (PreparedStatement preparedStatement = connection.prepareStatement(
+          statement.getQuery(), ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+        preparedStatement.setFetchSize(fetchSize);
+        try (ResultSet result = preparedStatement.executeQuery()) {
+          while (result.next()) {
+            handler.handle(result);
+          }
+        }
+      } finally {
+        connection.rollback();
+      }
+    }
+  }
+
   public void execDeleteStatement(SqlQueries statement, List<String> parameters)
       throws SQLException {
-    try (PreparedStatement preparedStatement = resolveStatement(statement)) {
+    try (Connection connection = getConnection();
+        PreparedStatement preparedStatement = connection.prepareStatement(statement.getQuery())) {
       setStatementParameters(preparedStatement, parameters);
       preparedStatement.executeUpdate();
     }
@@ -97,22 +147,46 @@ public class SqlConnectionUtils {
     }
   }
 
-  private Map<SqlQueries, PreparedStatement> createStatementMap() throws SQLException {
-    Map<SqlQueries, PreparedStatement> map = new EnumMap<>(SqlQueries.class);
-    for (SqlQueries query : SqlQueries.values()) {
-      map.put(query, getConnection().prepareStatement(query.getQuery()));
+  private Connection getConnection() throws SQLException {
+    Connection connection = DriverManager.getConnection(connectionString);
+    try {
+      connection.setAutoCommit(true);
+      return connection;
+    } catch (SQLException e) {
+      connection.close();
+      throw e;
     }
-    return map;
   }
 
-  private PreparedStatement resolveStatement(SqlQueries statement) {
-    return Objects.requireNonNull(statementMap.get(statement), "Statement returns null: " + statement);
-  }
+  private static final class ByteBufferInputStream extends InputStream {
 
-  private Connection getConnection() throws SQLException {
-    try (Connection connection = DriverManager.getConnection(connectionString)) {
-      connection.setAutoCommit(true);
-      return connection;
+    private final ByteBuffer buffer;
+
+    private ByteBufferInputStream(ByteBuffer buffer) {
+      this.buffer = buffer.duplicate();
+    }
+
+    @Override
+    public int read() {
+      return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) {
+      if (len == 0) {
+        return 0;
+      }
+      if (!buffer.hasRemaining()) {
+        return -1;
+      }
+      int length = Math.min(len, buffer.remaining());
+      buffer.get(b, off, length);
+      return length;
+    }
+
+    @Override
+    public int available() {
+      return buffer.remaining();
     }
   }
 }
@@ -15,14 +15,22 @@
  */
 package org.trustedanalytics.cfbroker.store.sql.service;
 
+import org.trustedanalytics.cfbroker.store.api.Location;
+
+import java.nio.ByteBuffer;
 import java.sql.SQLException;
 import java.util.Arrays;
 import java.util.Optional;
+import java.util.function.BiConsumer;
 
 public abstract class SqlDatabaseClient implements BrokerSqlClient {
 
   private static final String CREATE_DATABASE = "CREATE DATABASE %s";
   private static final String DROP_DATABASE = "DROP DATABASE %s";
+  private static final String INSTANCE_ID_COLUMN = "serviceinstanceid";
+  private static final String BINDING_ID_COLUMN = "bindingid";
+  private static final String DATA_COLUMN = "data";
+  private static final String DIGEST_COLUMN = "digest";
 
   protected final SqlConnectionUtils sqlConnectionUtils;
 
@@ -63,6 +71,16 @@ public abstract class SqlDatabaseClient implements BrokerSqlClient {
     sqlConnectionUtils.execInsertBinding(SqlQueries.INSERT_BINDING, instanceId, id, data);
   }
 
+  @Override
+  public void insertInstance(String id, ByteBuffer data) throws SQLException {
+    sqlConnectionUtils.execInsertService(SqlQueries.INSERT_INSTANCE, id, data);
+  }
+
+  @Override
+  public void insertBinding(String id, String instanceId, ByteBuffer data) throws SQLException {
+    sqlConnectionUtils.execInsertBinding(SqlQueries.INSERT_BINDING, instanceId, id, data);
+  }
+
   @Override
   public void deleteInstance(String id) throws SQLException {
     sqlConnectionUtils.execDeleteStatement(SqlQueries.DELETE_INSTANCE, Arrays.asList(id));
@@ -79,6 +97,38 @@ public abstract class SqlDatabaseClient implements BrokerSqlClient {
     sqlConnectionUtils.execDeleteStatement(SqlQueries.DELETE_METADATA, Arrays.asList(id));
   }
 
+  @Override
+  public void scanInstances(int fetchSize, BiConsumer<Location, byte[]> consumer)
+      throws SQLException {
+    sqlConnectionUtils.execScan(SqlQueries.SCAN_INSTANCES, fetchSize,
+        row -> consumer.accept(Location.newInstance(row.getString(INSTANCE_ID_COLUMN)),
+            row.getBytes(DATA_COLUMN)));
+  }
+
+  @Override
+  public void scanBindings(int fetchSize, BiConsumer<Location, byte[]> consumer)
+      throws SQLException {
+    sqlConnectionUtils.execScan(SqlQueries.SCAN_BINDINGS, fetchSize,
+        row -> consumer.accept(Location.newInstance(row.getString(BINDING_ID_COLUMN),
+            row.getString(INSTANCE_ID_COLUMN)), row.getBytes(DATA_COLUMN)));
+  }
+
+  @Override
+  public void scanInstanceDigests(int fetchSize, BiConsumer<Location, String> consumer)
+      throws SQLException {
+    sqlConnectionUtils.execScan(SqlQueries.SCAN_INSTANCE_DIGESTS, fetchSize,
+        row -> consumer.accept(Location.newInstance(row.getString(INSTANCE_ID_COLUMN)),
+            row.getString(DIGEST_COLUMN)));
+  }
+
+  @Override
+  public void scanBindingDigests(int fetchSize, BiConsumer<Location, String> consumer)
+      throws SQLException {
+    sqlConnectionUtils.execScan(SqlQueries.SCAN_BINDING_DIGESTS, fetchSize,
+        row -> consumer.accept(Location.newInstance(row.getString(BINDING_ID_COLUMN),
+            row.getString(INSTANCE_ID_COLUMN)), row.getString(DIGEST_COLUMN)));
+  }
+
   @Override
   public void createDatabase(String name) throws SQLException {
     sqlConnectionUtils.execStatement(
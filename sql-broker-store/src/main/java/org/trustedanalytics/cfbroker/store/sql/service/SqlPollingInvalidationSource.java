@@ -0,0 +1,109 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.cfbroker.store.sql.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.trustedanalytics.cfbroker.store.api.Location;
+import org.trustedanalytics.cfbroker.store.cache.InvalidationListener;
+import org.trustedanalytics.cfbroker.store.cache.InvalidationSource;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Invalidates cached objects of {@link SqlBrokerStore} by polling service and binding tables. The
+ * tables have no version column, so an MD5 digest of stored data, computed by the database, serves
+ * as the record version; only digests are transferred. Every location whose digest differs from
+ * the previous poll is invalidated.
+ */
+public class SqlPollingInvalidationSource implements InvalidationSource {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(SqlPollingInvalidationSource.class);
+
+  private final BrokerSqlClient brokerSqlClient;
+
+  private final long periodMillis;
+
+  private final int fetchSize;
+
+  private Map<Location, String> versions = new HashMap<>();
+
+  private ScheduledExecutorService executor;
+
+  public SqlPollingInvalidationSource(BrokerSqlClient client, long period, TimeUnit unit,
+      int fetchSize) {
+    this.brokerSqlClient = client;
+    this.periodMillis = unit.toMillis(period);
+    this.fetchSize = fetchSize;
+  }
+
+  @Override
+  public synchronized void start(InvalidationListener listener) throws IOException {
+    try {
+      versions = readVersions();
+    } catch (SQLException e) {
+      throw new IOException("Unable to read record versions", e);
+    }
+    executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "broker-store-sql-invalidation");
+      thread.setDaemon(true);
+      return thread;
+    });
+    executor.scheduleWithFixedDelay(() -> poll(listener), periodMillis, periodMillis,
+        TimeUnit.MILLISECONDS);
+  }
+
+  @Override
+  public synchronized void close() {
+    if (executor != null) {
+      executor.shutdownNow();
+    }
+  }
+
+  void poll(InvalidationListener listener) {
+    Map<Location, String> current;
+    try {
+      current = readVersions();
+    } catch (SQLException e) {
+      LOGGER.warn("Unable to poll record versions", e);
+      return;
+    }
+    Set<Location> locations = new HashSet<>(versions.keySet());
+    locations.addAll(current.keySet());
+    for (Location location : locations) {
+      if (!Objects.equals(versions.get(location), current.get(location))) {
+        listener.invalidate(location);
+      }
+    }
+    versions = current;
+  }
+
+  private Map<Location, String> readVersions() throws SQLException {
+    Map<Location, String> current = new HashMap<>();
+    brokerSqlClient.scanInstanceDigests(fetchSize, current::put);
+    brokerSqlClient.scanBindingDigests(fetchSize, current::put);
+    return current;
+  }
+}
@@ -20,10 +20,14 @@ public enum SqlQueries {
     SELECT_INSTANCE("SELECT * FROM service WHERE serviceinstanceid = ?"),
     INSERT_INSTANCE("INSERT INTO service (serviceinstanceid, data) VALUES (?, ?)"),
     DELETE_INSTANCE("DELETE FROM service WHERE serviceinstanceid = ?"),
+    SCAN_INSTANCES("SELECT serviceinstanceid, data FROM service"),
+    SCAN_INSTANCE_DIGESTS("SELECT serviceinstanceid, MD5(data) AS digest FROM service"),
 
     SELECT_BINDING("SELECT * FROM binding WHERE serviceinstanceid = ? AND bindingid = ?"),
     INSERT_BINDING("INSERT INTO binding (serviceinstanceid, bindingid, data) VALUES (?, ?, ?)"),
     DELETE_BINDING("DELETE FROM binding WHERE serviceinstanceid = ? AND bindingid = ?"),
+    SCAN_BINDINGS("SELECT serviceinstanceid, bindingid, data FROM binding"),
+    SCAN_BINDING_DIGESTS("SELECT serviceinstanceid, bindingid, MD5(data) AS digest FROM binding"),
 
     SELECT_METADATA("SELECT * FROM metadata WHERE serviceinstanceid = ?"),
     INSERT_METADATA("INSERT INTO metadata (serviceinstanceid, data) VALUES (?, ?)"),
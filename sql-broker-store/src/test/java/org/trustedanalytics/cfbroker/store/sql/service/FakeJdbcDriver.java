@@ -0,0 +1,308 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.cfbroker.store.sql.service;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.DriverManager;
+import java.sql.DriverPropertyInfo;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+/**
+ * In-memory JDBC driver for tests. Rows returned by queries are set per query text. Like real
+ * drivers it fails on use of closed connections, statements and result sets, and it records
+ * transaction-related calls, so tests can check how connections are used.
+ */
+class FakeJdbcDriver implements Driver {
+
+  static final String URL = "jdbc:brokerstorefake:db";
+
+  private final Map<String, List<Map<String, Object>>> results = new HashMap<>();
+
+  private final List<String> calls = Collections.synchronizedList(new ArrayList<>());
+
+  private final AtomicInteger openConnections = new AtomicInteger();
+
+  static FakeJdbcDriver register() throws SQLException {
+    FakeJdbcDriver driver = new FakeJdbcDriver();
+    DriverManager.registerDriver(driver);
+    return driver;
+  }
+
+  void deregister() throws SQLException {
+    DriverManager.deregisterDriver(this);
+  }
+
+  void setResult(SqlQueries query, List<Map<String, Object>> rows) {
+    results.put(query.getQuery(), rows);
+  }
+
+  static Map<String, Object> row(Object... columnsAndValues) {
+    Map<String, Object> row = new HashMap<>();
+    for (int i = 0; i < columnsAndValues.length; i += 2) {
+      row.put((String) columnsAndValues[i], columnsAndValues[i + 1]);
+    }
+    return row;
+  }
+
+  List<String> getCalls() {
+    return calls;
+  }
+
+  int getOpenConnections() {
+    return openConnections.get();
+  }
+
+  @Override
+  public Connection connect(String url, Properties info) {
+    if (!acceptsURL(url)) {
+      return null;
+    }
+    openConnections.incrementAndGet();
+    return proxy(Connection.class, new ConnectionHandler());
+  }
+
+  @Override
+  public boolean acceptsURL(String url) {
+    return URL.equals(url);
+  }
+
+  @Override
+  public DriverPropertyInfo[] getPropertyInfo(String url, Properties info) {
+    return new DriverPropertyInfo[0];
+  }
+
+  @Override
+  public int getMajorVersion() {
+    return 1;
+  }
+
+  @Override
+  public int getMinorVersion() {
+    return 0;
+  }
+
+  @Override
+  public boolean jdbcCompliant() {
+    return false;
+  }
+
+  @Override
+  public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+    throw new SQLFeatureNotSupportedException();
+  }
+
+  private static byte[] readFully(InputStream in, int length) {
+    try {
+      byte[] data = new byte[length];
+      new DataInputStream(in).readFully(data);
+      if (in.read() != -1) {
+        throw new IllegalStateException("Stream longer than " + length);
+      }
+      return data;
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+    return type.cast(Proxy.newProxyInstance(FakeJdbcDriver.class.getClassLoader(),
+        new Class<?>[] {type}, handler));
+  }
+
+  /**
+   * Fails calls made after close, the way real drivers do.
+   */
+  private abstract static class Closeable implements InvocationHandler {
+
+    private boolean closed;
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+      switch (method.getName()) {
+        case "close":
+          if (!closed) {
+            closed = true;
+            closed();
+          }
+          return null;
+        case "isClosed":
+          return isClosed();
+        case "hashCode":
+          return System.identityHashCode(proxy);
+        case "equals":
+          return proxy == args[0];
+        case "toString":
+          return getClass().getSimpleName();
+        default:
+          if (isClosed()) {
+            throw new SQLException(method.getName() + " called on closed "
+                + method.getDeclaringClass().getSimpleName());
+          }
+          try {
+            return handle(method.getName(), args);
+          } catch (InvocationTargetException e) {
+            throw e.getCause();
+          }
+      }
+    }
+
+    boolean isClosed() {
+      return closed;
+    }
+
+    void closed() {
+    }
+
+    abstract Object handle(String method, Object[] args) throws Exception;
+  }
+
+  private class ConnectionHandler extends Closeable {
+
+    private boolean autoCommit = true;
+
+    @Override
+    void closed() {
+      openConnections.decrementAndGet();
+    }
+
+    @Override
+    Object handle(String method, Object[] args) {
+      switch (method) {
+        case "getAutoCommit":
+          return autoCommit;
+        case "setAutoCommit":
+          autoCommit = (Boolean) args[0];
+          calls.add("setAutoCommit(" + autoCommit + ")");
+          return null;
+        case "setReadOnly":
+        case "commit":
+        case "rollback":
+          calls.add(method);
+          return null;
+        case "prepareStatement":
+          if (args.length == 3) {
+            calls.add("prepareStatement(" + (args[1].equals(ResultSet.TYPE_FORWARD_ONLY)
+                && args[2].equals(ResultSet.CONCUR_READ_ONLY) ? "forward-only, read-only)" : ")"));
+          }
+          return proxy(PreparedStatement.class, new StatementHandler(this, (String) args[0]));
+        case "createStatement":
+          return proxy(PreparedStatement.class, new StatementHandler(this, null));
+        default:
+          throw new UnsupportedOperationException(method);
+      }
+    }
+  }
+
+  private class StatementHandler extends Closeable {
+
+    private final ConnectionHandler connection;
+
+    private final String query;
+
+    private StatementHandler(ConnectionHandler connection, String query) {
+      this.connection = connection;
+      this.query = query;
+    }
+
+    @Override
+    boolean isClosed() {
+      return super.isClosed() || connection.isClosed();
+    }
+
+    @Override
+    Object handle(String method, Object[] args) {
+      switch (method) {
+        case "setFetchSize":
+          calls.add("setFetchSize(" + args[0] + ")");
+          return null;
+        case "setString":
+        case "setBytes":
+          return null;
+        case "setBinaryStream":
+          calls.add("setBinaryStream(" + new String(readFully((InputStream) args[1],
+              ((Number) args[2]).intValue()), StandardCharsets.UTF_8) + ")");
+          return null;
+        case "executeQuery":
+          if (connection.autoCommit) {
+            calls.add("executeQuery in auto-commit");
+          }
+          List<Map<String, Object>> rows = results.getOrDefault(query, Collections.emptyList());
+          return proxy(ResultSet.class, new ResultSetHandler(this, rows.iterator()));
+        case "executeUpdate":
+          return 0;
+        case "execute":
+          return false;
+        default:
+          throw new UnsupportedOperationException(method);
+      }
+    }
+  }
+
+  private static class ResultSetHandler extends Closeable {
+
+    private final StatementHandler statement;
+
+    private final Iterator<Map<String, Object>> rows;
+
+    private Map<String, Object> current;
+
+    private ResultSetHandler(StatementHandler statement, Iterator<Map<String, Object>> rows) {
+      this.statement = statement;
+      this.rows = rows;
+    }
+
+    @Override
+    boolean isClosed() {
+      return super.isClosed() || statement.isClosed();
+    }
+
+    @Override
+    Object handle(String method, Object[] args) {
+      switch (method) {
+        case "next":
+          current = rows.hasNext() ? rows.next() : null;
+          return current != null;
+        case "getString":
+        case "getBytes":
+          return current.get((String) args[0]);
+        default:
+          throw new UnsupportedOperationException(method);
+      }
+    }
+  }
+}
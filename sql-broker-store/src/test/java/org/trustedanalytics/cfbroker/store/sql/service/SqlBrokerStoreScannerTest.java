@@ -0,0 +1,103 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.cfbroker.store.sql.service;
+
+import org.trustedanalytics.cfbroker.store.api.Location;
+import org.trustedanalytics.cfbroker.store.serialization.RepositoryDeserializer;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class SqlBrokerStoreScannerTest {
+
+  @Mock
+  private BrokerSqlClient brokerSqlClient;
+
+  @Mock
+  private RepositoryDeserializer<String> deserializer;
+
+  @Test
+  public void scan_instances_passesDeserializedRowsAndSkipsEmptyOnes() throws Exception {
+    Location instance = Location.newInstance("instanceId");
+    doAnswer(invocation -> {
+      BiConsumer<Location, byte[]> consumer = consumer(invocation.getArguments()[1]);
+      consumer.accept(instance, "instance".getBytes());
+      consumer.accept(Location.newInstance("emptyId"), null);
+      return null;
+    }).when(brokerSqlClient).scanInstances(eq(100), any());
+    when(deserializer.deserialize("instance".getBytes())).thenReturn("instance");
+
+    Map<Location, String> scanned = new HashMap<>();
+    SqlBrokerStoreScanner.forInstances(brokerSqlClient, deserializer, 100).scan(scanned::put);
+
+    assertThat(scanned.size(), equalTo(1));
+    assertThat(scanned.get(instance), equalTo("instance"));
+  }
+
+  @Test
+  public void scan_bindings_readsBindingTable() throws Exception {
+    Location binding = Location.newInstance("bindingId", "instanceId");
+    doAnswer(invocation -> {
+      consumer(invocation.getArguments()[1]).accept(binding, "binding".getBytes());
+      return null;
+    }).when(brokerSqlClient).scanBindings(eq(100), any());
+    when(deserializer.deserialize("binding".getBytes())).thenReturn("binding");
+
+    Map<Location, String> scanned = new HashMap<>();
+    SqlBrokerStoreScanner.forBindings(brokerSqlClient, deserializer, 100).scan(scanned::put);
+
+    assertThat(scanned.get(binding), equalTo("binding"));
+  }
+
+  @Test(expected = IOException.class)
+  public void scan_deserializationFails_rethrowsIOException() throws Exception {
+    doAnswer(invocation -> {
+      consumer(invocation.getArguments()[1]).accept(Location.newInstance("id"), "x".getBytes());
+      return null;
+    }).when(brokerSqlClient).scanInstances(eq(100), any());
+    when(deserializer.deserialize("x".getBytes())).thenThrow(new IOException());
+
+    SqlBrokerStoreScanner.forInstances(brokerSqlClient, deserializer, 100).scan((l, t) -> { });
+  }
+
+  @Test(expected = IOException.class)
+  public void scan_sqlFails_wrapsInIOException() throws Exception {
+    doThrow(new SQLException()).when(brokerSqlClient).scanBindings(eq(100), any());
+
+    SqlBrokerStoreScanner.forBindings(brokerSqlClient, deserializer, 100).scan((l, t) -> { });
+  }
+
+  @SuppressWarnings("unchecked")
+  private static BiConsumer<Location, byte[]> consumer(Object argument) {
+    return (BiConsumer<Location, byte[]>) argument;
+  }
+}
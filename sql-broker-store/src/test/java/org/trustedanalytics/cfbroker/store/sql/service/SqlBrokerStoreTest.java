@@ -26,6 +26,7 @@ import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.sql.SQLException;
 import java.util.Optional;
 
@@ -78,6 +79,20 @@ public class SqlBrokerStoreTest {
         bindingInstance.getParentId().get(), testedObject.getBytes());
   }
 
+  @Test
+  public void testSave_bufferSerializer_insertsBuffer() throws Exception {
+    ByteBuffer buffer = ByteBuffer.wrap("serviceInstance".getBytes()).asReadOnlyBuffer();
+    BrokerStore<String> bufferStore =
+        SqlBrokerStore.withBufferSerializer(brokerSqlClient, t -> buffer, deserializer);
+
+    bufferStore.save(serviceInstance, "serviceInstance");
+    bufferStore.save(bindingInstance, "serviceInstance");
+
+    verify(brokerSqlClient).insertInstance(serviceInstance.getId(), buffer);
+    verify(brokerSqlClient).insertBinding(bindingInstance.getId(),
+        bindingInstance.getParentId().get(), buffer);
+  }
+
   @Test
   public void testGetById_ServiceWitchObjectExists_returnsDeserializedObject() throws Exception {
     String testedObject = "serviceInstance";
@@ -0,0 +1,106 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.cfbroker.store.sql.service;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class SqlConnectionUtilsTest {
+
+  private FakeJdbcDriver driver;
+
+  private SqlConnectionUtils sqlConnectionUtils;
+
+  @Before
+  public void setup() throws SQLException {
+    driver = FakeJdbcDriver.register();
+    driver.setResult(SqlQueries.SCAN_INSTANCES, Arrays.asList(
+        FakeJdbcDriver.row("serviceinstanceid", "id1"),
+        FakeJdbcDriver.row("serviceinstanceid", "id2")));
+    sqlConnectionUtils = new SqlConnectionUtils(FakeJdbcDriver.URL);
+    driver.getCalls().clear();
+  }
+
+  @After
+  public void tearDown() throws SQLException {
+    driver.deregister();
+  }
+
+  @Test
+  public void execScan_calledRepeatedly_streamsRowsOnOwnConnectionEveryTime() throws Exception {
+    for (int i = 0; i < 3; i++) {
+      List<String> ids = new ArrayList<>();
+      sqlConnectionUtils.execScan(SqlQueries.SCAN_INSTANCES, 100,
+          row -> ids.add(row.getString("serviceinstanceid")));
+      assertThat(ids, contains("id1", "id2"));
+    }
+
+    assertThat(driver.getOpenConnections(), equalTo(0));
+    assertThat(driver.getCalls().subList(0, 5), contains("setAutoCommit(false)", "setReadOnly",
+        "prepareStatement(forward-only, read-only)", "setFetchSize(100)", "rollback"));
+  }
+
+  @Test
+  public void execSelectObject_calledRepeatedly_closesEachConnection() throws Exception {
+    driver.setResult(SqlQueries.SELECT_INSTANCE,
+        Arrays.asList(FakeJdbcDriver.row("data", new byte[] {1})));
+
+    for (int i = 0; i < 3; i++) {
+      assertThat(sqlConnectionUtils.execSelectObject(SqlQueries.SELECT_INSTANCE,
+          Arrays.asList("id1")), equalTo(new byte[] {1}));
+    }
+
+    assertThat(driver.getOpenConnections(), equalTo(0));
+  }
+
+  @Test
+  public void execInsertService_buffer_streamsItsRemainingBytes() throws Exception {
+    ByteBuffer data = ByteBuffer.wrap("__data__".getBytes(StandardCharsets.UTF_8), 2, 4);
+
+    sqlConnectionUtils.execInsertService(SqlQueries.INSERT_INSTANCE, "id1", data.asReadOnlyBuffer());
+
+    assertThat(driver.getCalls(), contains("setAutoCommit(true)", "setBinaryStream(data)"));
+    assertThat(data.remaining(), equalTo(4));
+  }
+
+  @Test
+  public void execScan_handlerFails_closesConnection() throws Exception {
+    try {
+      sqlConnectionUtils.execScan(SqlQueries.SCAN_INSTANCES, 100, row -> {
+        throw new SQLException("handler failed");
+      });
+      fail("Handler exception not propagated");
+    } catch (SQLException e) {
+      assertThat(e.getMessage(), equalTo("handler failed"));
+    }
+
+    assertThat(driver.getOpenConnections(), equalTo(0));
+    assertThat(driver.getCalls().contains("rollback"), equalTo(true));
+  }
+}
@@ -0,0 +1,155 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.cfbroker.store.sql.service;
+
+import org.trustedanalytics.cfbroker.store.api.Location;
+import org.trustedanalytics.cfbroker.store.cache.InvalidationListener;
+import org.trustedanalytics.cfbroker.store.sql.service.postgres.PostgreSqlClient;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+
+@RunWith(MockitoJUnitRunner.class)
+public class SqlPollingInvalidationSourceTest {
+
+  private static final Location INSTANCE = Location.newInstance("instanceId");
+  private static final Location BINDING = Location.newInstance("bindingId", "instanceId");
+
+  @Mock
+  private BrokerSqlClient brokerSqlClient;
+
+  @Mock
+  private InvalidationListener listener;
+
+  private final Map<Location, String> instanceDigests = new HashMap<>();
+
+  private final Map<Location, String> bindingDigests = new HashMap<>();
+
+  private SqlPollingInvalidationSource source;
+
+  @Before
+  public void setup() throws Exception {
+    doAnswer(invocation -> feed(invocation.getArguments()[1], instanceDigests))
+        .when(brokerSqlClient).scanInstanceDigests(anyInt(), any());
+    doAnswer(invocation -> feed(invocation.getArguments()[1], bindingDigests))
+        .when(brokerSqlClient).scanBindingDigests(anyInt(), any());
+    instanceDigests.put(INSTANCE, "digest1");
+    bindingDigests.put(BINDING, "digest2");
+
+    source = new SqlPollingInvalidationSource(brokerSqlClient, 1, TimeUnit.HOURS, 100);
+    source.start(listener);
+  }
+
+  @After
+  public void tearDown() {
+    source.close();
+  }
+
+  @Test
+  public void poll_nothingChanged_invalidatesNothing() throws Exception {
+    source.poll(listener);
+
+    verifyZeroInteractions(listener);
+  }
+
+  @Test
+  public void poll_digestChanged_invalidatesOnlyChangedLocation() throws Exception {
+    bindingDigests.put(BINDING, "changed");
+
+    source.poll(listener);
+
+    verify(listener).invalidate(BINDING);
+    verify(listener, never()).invalidate(INSTANCE);
+  }
+
+  @Test
+  public void poll_recordsAddedAndRemoved_invalidatesBoth() throws Exception {
+    Location added = Location.newInstance("otherId");
+    instanceDigests.remove(INSTANCE);
+    instanceDigests.put(added, "digest3");
+
+    source.poll(listener);
+
+    verify(listener).invalidate(INSTANCE);
+    verify(listener).invalidate(added);
+  }
+
+  @Test
+  public void poll_scanFails_keepsPreviousVersions() throws Exception {
+    doThrow(new SQLException()).when(brokerSqlClient).scanInstanceDigests(anyInt(), any());
+    source.poll(listener);
+    verifyZeroInteractions(listener);
+
+    doAnswer(invocation -> feed(invocation.getArguments()[1], instanceDigests))
+        .when(brokerSqlClient).scanInstanceDigests(anyInt(), any());
+    instanceDigests.put(INSTANCE, "changed");
+    source.poll(listener);
+    verify(listener).invalidate(INSTANCE);
+  }
+
+  @Test
+  public void poll_throughJdbcDriver_readsDigestsOnEveryPoll() throws Exception {
+    FakeJdbcDriver driver = FakeJdbcDriver.register();
+    try {
+      driver.setResult(SqlQueries.SCAN_INSTANCE_DIGESTS, Collections.singletonList(
+          FakeJdbcDriver.row("serviceinstanceid", "instanceId", "digest", "digest1")));
+      BrokerSqlClient client = new PostgreSqlClient(new SqlConnectionUtils(FakeJdbcDriver.URL));
+      try (SqlPollingInvalidationSource jdbcSource =
+          new SqlPollingInvalidationSource(client, 1, TimeUnit.HOURS, 100)) {
+        jdbcSource.start(listener);
+
+        driver.setResult(SqlQueries.SCAN_INSTANCE_DIGESTS, Collections.singletonList(
+            FakeJdbcDriver.row("serviceinstanceid", "instanceId", "digest", "digest2")));
+        jdbcSource.poll(listener);
+        driver.setResult(SqlQueries.SCAN_INSTANCE_DIGESTS, Collections.singletonList(
+            FakeJdbcDriver.row("serviceinstanceid", "instanceId", "digest", "digest3")));
+        jdbcSource.poll(listener);
+      }
+
+      verify(listener, times(2)).invalidate(INSTANCE);
+      assertThat(driver.getOpenConnections(), equalTo(0));
+    } finally {
+      driver.deregister();
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private static Void feed(Object consumer, Map<Location, String> digests) {
+    digests.forEach((BiConsumer<Location, String>) consumer);
+    return null;
+  }
+}
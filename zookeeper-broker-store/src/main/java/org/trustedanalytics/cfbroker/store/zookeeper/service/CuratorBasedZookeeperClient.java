@@ -16,12 +16,20 @@
 package org.trustedanalytics.cfbroker.store.zookeeper.service;
 
 import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.recipes.cache.TreeCache;
+import org.apache.zookeeper.KeeperException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.Closeable;
 import java.io.IOException;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
 
 import static org.trustedanalytics.cfbroker.store.helper.PathHelper.normalizePath;
 import static org.trustedanalytics.cfbroker.store.zookeeper.service.CuratorExceptionHandler.propagateAsIOException;
@@ -81,6 +89,70 @@ public class CuratorBasedZookeeperClient implements ZookeeperClient {
                 LOGGER::error, "Error while getting children of znode: " + rootDirectory);
     }
 
+    @Override public List<String> getChildrenNames(String path) throws IOException {
+        String effectivePath = makePath(path);
+        return propagateAsIOException(() -> client.getChildren().forPath(effectivePath),
+                LOGGER::error, "Error while getting children of znode: " + effectivePath);
+    }
+
+    @Override public Map<String, byte[]> getZNodes(List<String> paths) throws IOException {
+        Map<String, byte[]> result = new ConcurrentHashMap<>();
+        AtomicReference<KeeperException.Code> failure = new AtomicReference<>();
+        CountDownLatch pending = new CountDownLatch(paths.size());
+
+        for (String path : paths) {
+            String effectivePath = makePath(path);
+            propagateAsIOException(() -> client.getData().inBackground((curator, event) -> {
+                KeeperException.Code code = KeeperException.Code.get(event.getResultCode());
+                if (code == KeeperException.Code.OK && event.getData() != null) {
+                    result.put(path, event.getData());
+                } else if (code != KeeperException.Code.OK && code != KeeperException.Code.NONODE) {
+                    failure.compareAndSet(null, code);
+                }
+                pending.countDown();
+            }).forPath(effectivePath), LOGGER::error, "Error while reading znode: " + effectivePath);
+        }
+
+        try {
+            pending.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while reading znodes", e);
+        }
+        if (failure.get() != null) {
+            throw new IOException("Error while reading znodes: " + failure.get());
+        }
+        return result;
+    }
+
+    @Override public Closeable watchChanges(Consumer<String> onChange, Runnable onConnectionLoss)
+        throws IOException {
+
+        TreeCache treeCache = TreeCache.newBuilder(client, rootDirectory).setCacheData(false).build();
+        treeCache.getListenable().addListener((curator, event) -> {
+            switch (event.getType()) {
+                case NODE_UPDATED:
+                case NODE_REMOVED:
+                    String path = event.getData().getPath();
+                    if (path.startsWith(rootDirectory + "/")) {
+                        onChange.accept(path.substring(rootDirectory.length()));
+                    }
+                    break;
+                case CONNECTION_SUSPENDED:
+                case CONNECTION_LOST:
+                case CONNECTION_RECONNECTED:
+                    LOGGER.warn("Connection state changed: " + event.getType());
+                    onConnectionLoss.run();
+                    break;
+                default:
+                    break;
+            }
+        });
+        propagateAsIOException(treeCache::start, LOGGER::error,
+            "Error while watching znode: " + rootDirectory);
+        return treeCache;
+    }
+
     private String makePath(String path) {
         return rootDirectory + normalizePath(path);
     }
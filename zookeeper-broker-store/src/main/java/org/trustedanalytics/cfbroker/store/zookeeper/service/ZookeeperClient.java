@@ -15,8 +15,11 @@
  */
 package org.trustedanalytics.cfbroker.store.zookeeper.service;
 
+import java.io.Closeable;
 import java.io.IOException;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
 
 public interface ZookeeperClient {
 
@@ -35,4 +38,23 @@ public interface ZookeeperClient {
     void deleteZNode(String path) throws IOException;
 
     List<String> getChildrenNames() throws IOException;
+
+    List<String> getChildrenNames(String path) throws IOException;
+
+    /**
+     * Reads given znodes asynchronously and waits for all the results.
+     * @param paths - paths relative to the root directory
+     * @return content of the znodes keyed by path, nonexistent znodes are omitted
+     * @throws IOException
+     */
+    Map<String, byte[]> getZNodes(List<String> paths) throws IOException;
+
+    /**
+     * Watches all znodes under the root directory.
+     * @param onChange - receives path, relative to the root directory, of every updated or removed znode
+     * @param onConnectionLoss - called when changes could have been missed
+     * @return handle that stops watching when closed
+     * @throws IOException
+     */
+    Closeable watchChanges(Consumer<String> onChange, Runnable onConnectionLoss) throws IOException;
 }
@@ -0,0 +1,70 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.cfbroker.store.zookeeper.service;
+
+import org.trustedanalytics.cfbroker.store.api.Location;
+import org.trustedanalytics.cfbroker.store.cache.InvalidationListener;
+import org.trustedanalytics.cfbroker.store.cache.InvalidationSource;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Optional;
+
+import static org.trustedanalytics.cfbroker.store.helper.PathHelper.normalizePath;
+
+/**
+ * Invalidates cached objects of {@link ZookeeperStore} using ZooKeeper watches set on every znode
+ * under the root directory.
+ */
+public class ZookeeperInvalidationSource implements InvalidationSource {
+
+    private final ZookeeperClient zookeeperClient;
+
+    private Closeable watch;
+
+    public ZookeeperInvalidationSource(ZookeeperClient zookeeperClient) {
+        this.zookeeperClient = zookeeperClient;
+    }
+
+    @Override
+    public void start(InvalidationListener listener) throws IOException {
+        watch = zookeeperClient.watchChanges(
+            path -> toLocation(path).ifPresent(listener::invalidate),
+            listener::invalidateAll);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (watch != null) {
+            watch.close();
+        }
+    }
+
+    static Optional<Location> toLocation(String path) {
+        String normalized = normalizePath(path);
+        if (normalized.isEmpty()) {
+            return Optional.empty();
+        }
+        String[] parts = normalized.substring(1).split("/");
+        if (parts.length == 1) {
+            return Optional.of(Location.newInstance(parts[0]));
+        }
+        if (parts.length == 2) {
+            return Optional.of(Location.newInstance(parts[1], parts[0]));
+        }
+        return Optional.empty();
+    }
+}
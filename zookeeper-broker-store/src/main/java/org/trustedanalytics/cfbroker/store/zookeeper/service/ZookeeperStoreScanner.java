@@ -0,0 +1,99 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.cfbroker.store.zookeeper.service;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import org.trustedanalytics.cfbroker.store.api.BrokerStoreScanner;
+import org.trustedanalytics.cfbroker.store.api.Location;
+import org.trustedanalytics.cfbroker.store.serialization.RepositoryDeserializer;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+/**
+ * Loads all objects saved by {@link ZookeeperStore}. Znodes are listed with getChildren and read with
+ * asynchronous getData calls, issued in chunks to bound the number of outstanding requests.
+ */
+public class ZookeeperStoreScanner<T> implements BrokerStoreScanner<T> {
+
+    private final ZookeeperClient zookeeperClient;
+
+    private final RepositoryDeserializer<T> deserializer;
+
+    private final boolean nested;
+
+    private final int chunkSize;
+
+    private ZookeeperStoreScanner(ZookeeperClient zookeeperClient,
+        RepositoryDeserializer<T> deserializer, boolean nested, int chunkSize) {
+
+        Preconditions.checkArgument(chunkSize > 0, "Chunk size must be positive");
+        this.zookeeperClient = zookeeperClient;
+        this.deserializer = deserializer;
+        this.nested = nested;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Scanner for objects saved under locations without parent, e.g. service instances.
+     */
+    public static <T> ZookeeperStoreScanner<T> forInstances(ZookeeperClient zookeeperClient,
+        RepositoryDeserializer<T> deserializer, int chunkSize) {
+        return new ZookeeperStoreScanner<>(zookeeperClient, deserializer, false, chunkSize);
+    }
+
+    /**
+     * Scanner for objects saved under locations with parent, e.g. service instance bindings.
+     */
+    public static <T> ZookeeperStoreScanner<T> forBindings(ZookeeperClient zookeeperClient,
+        RepositoryDeserializer<T> deserializer, int chunkSize) {
+        return new ZookeeperStoreScanner<>(zookeeperClient, deserializer, true, chunkSize);
+    }
+
+    @Override
+    public void scan(BiConsumer<Location, T> consumer) throws IOException {
+        List<Location> locations = new ArrayList<>();
+        for (String id : zookeeperClient.getChildrenNames()) {
+            if (nested) {
+                zookeeperClient.getChildrenNames(id)
+                    .forEach(childId -> locations.add(Location.newInstance(childId, id)));
+            } else {
+                locations.add(Location.newInstance(id));
+            }
+        }
+        load(locations, consumer);
+    }
+
+    private void load(List<Location> locations, BiConsumer<Location, T> consumer)
+        throws IOException {
+
+        for (List<Location> chunk : Lists.partition(locations, chunkSize)) {
+            List<String> paths = new ArrayList<>(chunk.size());
+            chunk.forEach(location -> paths.add(location.getPath()));
+            Map<String, byte[]> data = zookeeperClient.getZNodes(paths);
+            for (Location location : chunk) {
+                byte[] bytes = data.get(location.getPath());
+                if (bytes != null && bytes.length > 0) {
+                    consumer.accept(location, deserializer.deserialize(bytes));
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,44 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.cfbroker.store.zookeeper.service;
+
+import org.junit.Test;
+import org.trustedanalytics.cfbroker.store.api.Location;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+
+public class ZookeeperInvalidationSourceTest {
+
+    @Test
+    public void toLocation_instancePath_returnsLocationWithoutParent() {
+        assertThat(ZookeeperInvalidationSource.toLocation("/1").get(),
+            equalTo(Location.newInstance("1")));
+    }
+
+    @Test
+    public void toLocation_bindingPath_returnsLocationWithParent() {
+        assertThat(ZookeeperInvalidationSource.toLocation("/1/a").get(),
+            equalTo(Location.newInstance("a", "1")));
+    }
+
+    @Test
+    public void toLocation_rootPath_returnsEmpty() {
+        assertFalse(ZookeeperInvalidationSource.toLocation("/").isPresent());
+        assertFalse(ZookeeperInvalidationSource.toLocation("").isPresent());
+    }
+}
@@ -0,0 +1,81 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.cfbroker.store.zookeeper.service;
+
+import com.google.common.collect.ImmutableMap;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.trustedanalytics.cfbroker.store.api.Location;
+import org.trustedanalytics.cfbroker.store.serialization.RepositoryDeserializer;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ZookeeperStoreScannerTest {
+
+    @Mock
+    private ZookeeperClient zookeeper;
+
+    @Mock
+    private RepositoryDeserializer<String> deserializer;
+
+    @Before
+    public void setup() throws IOException {
+        when(deserializer.deserialize("first".getBytes())).thenReturn("first");
+        when(deserializer.deserialize("second".getBytes())).thenReturn("second");
+    }
+
+    @Test
+    public void scanInstances_twoZNodesInOneChunk_returnsDeserializedObjects() throws Exception {
+        when(zookeeper.getChildrenNames()).thenReturn(Arrays.asList("1", "2", "3"));
+        when(zookeeper.getZNodes(Arrays.asList("/1", "/2"))).thenReturn(
+            ImmutableMap.of("/1", "first".getBytes(), "/2", "second".getBytes()));
+        when(zookeeper.getZNodes(Arrays.asList("/3"))).thenReturn(ImmutableMap.of());
+
+        Map<Location, String> actual = new HashMap<>();
+        ZookeeperStoreScanner.forInstances(zookeeper, deserializer, 2).scan(actual::put);
+
+        assertThat(actual, equalTo(ImmutableMap.of(
+            Location.newInstance("1"), "first",
+            Location.newInstance("2"), "second")));
+    }
+
+    @Test
+    public void scanBindings_zNodesUnderInstances_returnsDeserializedObjects() throws Exception {
+        when(zookeeper.getChildrenNames()).thenReturn(Arrays.asList("1", "2"));
+        when(zookeeper.getChildrenNames("1")).thenReturn(Arrays.asList("a"));
+        when(zookeeper.getChildrenNames("2")).thenReturn(Arrays.asList("b"));
+        when(zookeeper.getZNodes(Arrays.asList("/1/a", "/2/b"))).thenReturn(
+            ImmutableMap.of("/1/a", "first".getBytes(), "/2/b", "second".getBytes()));
+
+        Map<Location, String> actual = new HashMap<>();
+        ZookeeperStoreScanner.forBindings(zookeeper, deserializer, 10).scan(actual::put);
+
+        assertThat(actual, equalTo(ImmutableMap.of(
+            Location.newInstance("a", "1"), "first",
+            Location.newInstance("b", "2"), "second")));
+    }
+}